@@ -0,0 +1,109 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Formats the current date and time, but only once per minute. Meant for
+ * patterns that do not show seconds, so the formatted text is the same for
+ * every request in the same minute. Uses an immutable (and so thread-safe)
+ * {@link DateTimeFormatter} instead of creating a new
+ * {@link java.text.SimpleDateFormat} for every call.
+ */
+public class CachedDateFormat {
+
+	/** The long format used by the servlet examples. */
+	public static final String LONG_FORMAT = "hh:mm a 'on' EEEE, MMMM dd yyyy";
+
+	/**
+	 * Shared formatter for the long format. For example: "12:00 AM on Saturday,
+	 * January 01 2000".
+	 */
+	public static final CachedDateFormat LONG = new CachedDateFormat(LONG_FORMAT);
+
+	/** Milliseconds per minute. */
+	private static final long MINUTE = 60 * 1000;
+
+	/** Formats the date and time. */
+	private final DateTimeFormatter formatter;
+
+	/** Provides the current time and time zone. */
+	private final Clock clock;
+
+	/** The formatted text for the most recent minute. */
+	private final AtomicReference<Formatted> cached;
+
+	/**
+	 * Initializes a formatter using the system clock and time zone.
+	 *
+	 * @param pattern the date and time pattern (with at most minute resolution)
+	 *
+	 * @see DateTimeFormatter#ofPattern(String)
+	 */
+	public CachedDateFormat(String pattern) {
+		this(pattern, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Initializes a formatter using the provided clock.
+	 *
+	 * @param pattern the date and time pattern (with at most minute resolution)
+	 * @param clock provides the current time and time zone
+	 *
+	 * @see DateTimeFormatter#ofPattern(String)
+	 */
+	public CachedDateFormat(String pattern, Clock clock) {
+		this.formatter = DateTimeFormatter.ofPattern(pattern);
+		this.clock = clock;
+		this.cached = new AtomicReference<>(new Formatted(Long.MIN_VALUE, null));
+	}
+
+	/**
+	 * Returns the current date and time as formatted text. Only formats the
+	 * time again once a new minute starts.
+	 *
+	 * @return the formatted current date and time
+	 */
+	public String format() {
+		long now = clock.millis();
+		long minute = Math.floorDiv(now, MINUTE);
+		Formatted current = cached.get();
+
+		if (current.minute == minute) {
+			return current.text;
+		}
+
+		String text = formatter.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), clock.getZone()));
+
+		// only one thread needs to win; the others still return the same text
+		if (current.minute < minute) {
+			cached.compareAndSet(current, new Formatted(minute, text));
+		}
+
+		return text;
+	}
+
+	/**
+	 * Formatted text and the minute it was formatted for.
+	 */
+	private static class Formatted {
+
+		/** Minutes since the epoch. */
+		private final long minute;
+
+		/** The formatted text. */
+		private final String text;
+
+		/**
+		 * Initializes the formatted text.
+		 *
+		 * @param minute minutes since the epoch
+		 * @param text the formatted text
+		 */
+		private Formatted(long minute, String text) {
+			this.minute = minute;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A template with {@code ${name}} style variables that is parsed only once.
+ * The template text is split into literal segments and variable slots, so
+ * rendering just appends segments and values in order instead of searching the
+ * template text for variables every time (like {@code StringSubstitutor}).
+ *
+ * <p>
+ * Each unique variable name is assigned an index in the order it first appears
+ * in the template. Values may be provided as an array using these indices,
+ * which avoids creating a new map for every render.
+ *
+ * <p>
+ * Output may be appended to a reusable buffer or written straight to a
+ * {@link Writer} such as the servlet response writer.
+ *
+ * @see TemplateFile
+ */
+public class CompiledTemplate {
+
+	/** The literal text between variables. Always one more than slots. */
+	private final String[] literals;
+
+	/** The variable index for each slot in the template. */
+	private final int[] slots;
+
+	/** The unique variable names, in the order they first appear. */
+	private final String[] names;
+
+	/** Approximate length of rendered output, used to size buffers. */
+	private final int length;
+
+	/**
+	 * Parses the template text into segments.
+	 *
+	 * @param template the template text
+	 */
+	public CompiledTemplate(String template) {
+		List<String> literalList = new ArrayList<>();
+		List<Integer> slotList = new ArrayList<>();
+		List<String> nameList = new ArrayList<>();
+
+		int start = 0;
+		int open = template.indexOf("${");
+
+		while (open >= 0) {
+			int close = template.indexOf('}', open + 2);
+
+			if (close < 0) {
+				break;
+			}
+
+			String name = template.substring(open + 2, close);
+			int index = nameList.indexOf(name);
+
+			if (index < 0) {
+				index = nameList.size();
+				nameList.add(name);
+			}
+
+			literalList.add(template.substring(start, open));
+			slotList.add(index);
+
+			start = close + 1;
+			open = template.indexOf("${", start);
+		}
+
+		literalList.add(template.substring(start));
+
+		this.literals = literalList.toArray(String[]::new);
+		this.slots = slotList.stream().mapToInt(Integer::intValue).toArray();
+		this.names = nameList.toArray(String[]::new);
+		this.length = template.length();
+	}
+
+	/**
+	 * Reads and parses a UTF-8 template file.
+	 *
+	 * @param path the path to the template file
+	 * @return the compiled template
+	 * @throws IOException if unable to read the file
+	 */
+	public static CompiledTemplate load(Path path) throws IOException {
+		return new CompiledTemplate(Files.readString(path, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the index of the variable name, for use with
+	 * {@link #render(StringBuilder, String[])}.
+	 *
+	 * @param name the variable name
+	 * @return the variable index or -1 if the name does not appear
+	 */
+	public int index(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Sets the value of a variable by index, ignoring variables that do not
+	 * appear in this template. Lets callers look up indexes once and keep
+	 * working if a variable is removed from the template file.
+	 *
+	 * @param values the values by variable index
+	 * @param index the variable index from {@link #index(String)}
+	 * @param value the value to set
+	 */
+	public static void set(String[] values, int index, String value) {
+		if (index >= 0) {
+			values[index] = value;
+		}
+	}
+
+	/**
+	 * Returns the number of unique variables in this template.
+	 *
+	 * @return number of unique variables
+	 */
+	public int variables() {
+		return names.length;
+	}
+
+	/**
+	 * Returns the approximate length of the rendered output.
+	 *
+	 * @return the length of the original template text
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Renders the template by appending the literal segments and values in
+	 * order. Variables with a null value are left as-is in the output.
+	 *
+	 * @param out the buffer to append the output
+	 * @param values the variable values by index
+	 *
+	 * @see #index(String)
+	 */
+	public void render(StringBuilder out, String[] values) {
+		for (int i = 0; i < slots.length; i++) {
+			out.append(literals[i]);
+			String value = values[slots[i]];
+
+			if (value != null) {
+				out.append(value);
+			}
+			else {
+				out.append("${").append(names[slots[i]]).append('}');
+			}
+		}
+
+		out.append(literals[slots.length]);
+	}
+
+	/**
+	 * Renders the template using values from a map. Variables without a value
+	 * are left as-is in the output.
+	 *
+	 * @param out the buffer to append the output
+	 * @param values map of variable name to value
+	 */
+	public void render(StringBuilder out, Map<String, String> values) {
+		render(out, lookup(values));
+	}
+
+	/**
+	 * Renders the template straight to a writer by writing the literal segments
+	 * and values in order. Variables with a null value are left as-is.
+	 *
+	 * @param out the writer for the output
+	 * @param values the variable values by index
+	 * @throws IOException if unable to write
+	 *
+	 * @see #index(String)
+	 */
+	public void render(Writer out, String[] values) throws IOException {
+		for (int i = 0; i < slots.length; i++) {
+			out.write(literals[i]);
+			String value = values[slots[i]];
+
+			if (value != null) {
+				out.write(value);
+			}
+			else {
+				out.write("${");
+				out.write(names[slots[i]]);
+				out.write('}');
+			}
+		}
+
+		out.write(literals[slots.length]);
+	}
+
+	/**
+	 * Renders the template straight to a writer using values from a map.
+	 * Variables without a value are left as-is in the output.
+	 *
+	 * @param out the writer for the output
+	 * @param values map of variable name to value
+	 * @throws IOException if unable to write
+	 */
+	public void render(Writer out, Map<String, String> values) throws IOException {
+		render(out, lookup(values));
+	}
+
+	/**
+	 * Renders the template using values from a map and returns the result.
+	 *
+	 * @param values map of variable name to value
+	 * @return the rendered text
+	 */
+	public String render(Map<String, String> values) {
+		StringBuilder out = new StringBuilder(length * 2);
+		render(out, values);
+		return out.toString();
+	}
+
+	/**
+	 * Renders the template in pieces, stopping at each variable to split on
+	 * instead of filling it in. Lets callers render everything else once and
+	 * fill in those variables later. Variables without a value are left as-is.
+	 *
+	 * @param values map of variable name to value
+	 * @param split the names of the variables to split on
+	 * @return the rendered text and split variable names, alternating, so the
+	 *         text is at even indexes and the names at odd indexes
+	 */
+	public List<String> split(Map<String, String> values, Set<String> split) {
+		String[] array = lookup(values);
+		List<String> pieces = new ArrayList<>();
+		StringBuilder out = new StringBuilder(length * 2);
+
+		for (int i = 0; i < slots.length; i++) {
+			out.append(literals[i]);
+			String name = names[slots[i]];
+
+			if (split.contains(name)) {
+				pieces.add(out.toString());
+				pieces.add(name);
+				out.setLength(0);
+			}
+			else if (array[slots[i]] != null) {
+				out.append(array[slots[i]]);
+			}
+			else {
+				out.append("${").append(name).append('}');
+			}
+		}
+
+		out.append(literals[slots.length]);
+		pieces.add(out.toString());
+		return pieces;
+	}
+
+	/**
+	 * Looks up the value of each variable in the map.
+	 *
+	 * @param values map of variable name to value
+	 * @return the variable values by index
+	 */
+	private String[] lookup(Map<String, String> values) {
+		String[] array = new String[names.length];
+
+		for (int i = 0; i < names.length; i++) {
+			array[i] = values.get(names[i]);
+		}
+
+		return array;
+	}
+}
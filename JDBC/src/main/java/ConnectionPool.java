@@ -0,0 +1,729 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * A simple bounded pool of database connections. Opening a new connection
+ * requires a full network and authentication handshake with the database
+ * server, so connections are kept open and reused across requests instead.
+ *
+ * <p>
+ * Connections handed out by this pool look like normal {@link Connection}
+ * objects, except calling {@link Connection#close()} returns the connection to
+ * the pool instead of closing it. Each pooled connection also caches its
+ * prepared statements, so preparing the same SQL again on the same connection
+ * will reuse the statement already prepared by the database server. A cached
+ * statement is only handed out once it has been closed, and closing it resets
+ * it for the next use.
+ *
+ * <p>
+ * Works with any JDBC driver, including embedded in-memory databases like H2.
+ *
+ * @see DatabaseConnector
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	/** Logger (from Jetty server) */
+	private static final Logger log = Log.getLog();
+
+	/** The default maximum number of open connections. */
+	public static final int DEFAULT_SIZE = 10;
+
+	/** The default number of milliseconds to wait for a free connection. */
+	public static final long DEFAULT_TIMEOUT = 5000;
+
+	/**
+	 * The default number of milliseconds a connection may sit idle before it is
+	 * validated again.
+	 */
+	public static final long DEFAULT_IDLE = 30 * 1000;
+
+	/** The default number of milliseconds before a connection is recycled. */
+	public static final long DEFAULT_LIFETIME = 30 * 60 * 1000;
+
+	/** The default number of prepared statements cached per connection. */
+	public static final int DEFAULT_STATEMENTS = 25;
+
+	/** Number of seconds to wait when validating a connection. */
+	private static final int VALIDATE_SECONDS = 2;
+
+	/** URI to use when connecting to database. */
+	private final String uri;
+
+	/** Properties with username and password for connecting to database. */
+	private final Properties login;
+
+	/** Maximum number of connections (active and idle) at once. */
+	private final int size;
+
+	/** Milliseconds to wait for a free connection before giving up. */
+	private final long timeout;
+
+	/** Milliseconds a connection may be idle before being validated again. */
+	private final long idleValidation;
+
+	/** Milliseconds a connection may stay open before being recycled. */
+	private final long maxLifetime;
+
+	/** Number of prepared statements to cache per connection. */
+	private final int statements;
+
+	/** Limits the number of connections handed out at once. */
+	private final Semaphore permits;
+
+	/** Connections that are open but not currently in use. */
+	private final ConcurrentLinkedDeque<PooledConnection> idle;
+
+	/** Number of connections currently handed out. */
+	private final AtomicInteger active;
+
+	/** Total number of successful connection requests. */
+	private final LongAdder acquired;
+
+	/** Total nanoseconds spent waiting for connections. */
+	private final LongAdder waited;
+
+	/** Total number of connection requests that timed out. */
+	private final LongAdder timeouts;
+
+	/** Total number of physical connections opened. */
+	private final LongAdder opened;
+
+	/** Whether this pool has been closed. */
+	private volatile boolean closed;
+
+	/**
+	 * Initializes a connection pool with the default settings.
+	 *
+	 * @param uri the database uri in jdbc:subprotocol://hostname/database format
+	 * @param login the properties with user and password
+	 */
+	public ConnectionPool(String uri, Properties login) {
+		this(uri, login, DEFAULT_SIZE, DEFAULT_TIMEOUT, DEFAULT_IDLE, DEFAULT_LIFETIME, DEFAULT_STATEMENTS);
+	}
+
+	/**
+	 * Initializes a connection pool. Connections are opened lazily as needed.
+	 *
+	 * @param uri the database uri in jdbc:subprotocol://hostname/database format
+	 * @param login the properties with user and password
+	 * @param size the maximum number of open connections
+	 * @param timeout milliseconds to wait for a free connection
+	 * @param idleValidation milliseconds a connection may be idle before it is
+	 *        validated again
+	 * @param maxLifetime milliseconds before a connection is closed and replaced
+	 * @param statements number of prepared statements to cache per connection
+	 */
+	public ConnectionPool(String uri, Properties login, int size, long timeout, long idleValidation,
+			long maxLifetime, int statements) {
+		if (size < 1) {
+			throw new IllegalArgumentException("The pool size must be 1 or greater.");
+		}
+
+		this.uri = uri;
+		this.login = login;
+		this.size = size;
+		this.timeout = timeout;
+		this.idleValidation = idleValidation;
+		this.maxLifetime = maxLifetime;
+		this.statements = statements;
+
+		this.permits = new Semaphore(size, true);
+		this.idle = new ConcurrentLinkedDeque<>();
+		this.active = new AtomicInteger();
+
+		this.acquired = new LongAdder();
+		this.waited = new LongAdder();
+		this.timeouts = new LongAdder();
+		this.opened = new LongAdder();
+
+		this.closed = false;
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if there are no idle
+	 * connections available. Waits for a connection to be returned if the pool
+	 * is at capacity. Closing the returned connection returns it to the pool.
+	 *
+	 * @return a pooled database connection
+	 * @throws SQLTimeoutException if no connection became available in time
+	 * @throws SQLException if unable to establish database connection
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed.");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				throw new SQLTimeoutException("Timed out waiting for a database connection after " + timeout + "ms.");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection.", e);
+		}
+		finally {
+			waited.add(System.nanoTime() - start);
+		}
+
+		try {
+			PooledConnection pooled = takeIdle();
+
+			if (pooled == null) {
+				pooled = new PooledConnection(open());
+			}
+
+			active.incrementAndGet();
+			acquired.increment();
+			return pooled.lease();
+		}
+		catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes the most recently used idle connection that is still usable. Any
+	 * connections that are too old or fail validation are closed along the way.
+	 *
+	 * @return a usable idle connection or null if none are available
+	 */
+	private PooledConnection takeIdle() {
+		PooledConnection pooled;
+
+		// most recently used first, since those are most likely still valid
+		while ((pooled = idle.pollFirst()) != null) {
+			long now = System.currentTimeMillis();
+
+			if (now - pooled.created > maxLifetime) {
+				log.debug("Recycling connection opened {}ms ago.", now - pooled.created);
+				pooled.destroy();
+			}
+			else if (now - pooled.released > idleValidation && !pooled.isValid()) {
+				log.debug("Discarding connection that failed validation.");
+				pooled.destroy();
+			}
+			else {
+				return pooled;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Opens a new physical connection to the database.
+	 *
+	 * @return a new database connection
+	 * @throws SQLException if unable to establish database connection
+	 */
+	private Connection open() throws SQLException {
+		Connection connection = DriverManager.getConnection(uri, login);
+		connection.setAutoCommit(true);
+		opened.increment();
+		return connection;
+	}
+
+	/**
+	 * Returns a connection to the pool, or closes it if it is broken, too old, or
+	 * the pool is closed.
+	 *
+	 * @param pooled the connection to return
+	 */
+	private void release(PooledConnection pooled) {
+		pooled.released = System.currentTimeMillis();
+		active.decrementAndGet();
+
+		try {
+			if (closed || pooled.released - pooled.created > maxLifetime || pooled.connection.isClosed()) {
+				pooled.destroy();
+			}
+			else {
+				// undo any changes the last user made to the connection
+				if (!pooled.connection.getAutoCommit()) {
+					pooled.connection.rollback();
+					pooled.connection.setAutoCommit(true);
+				}
+
+				idle.offerFirst(pooled);
+			}
+		}
+		catch (SQLException e) {
+			log.debug(e);
+			pooled.destroy();
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Returns the URI used to connect to the database.
+	 *
+	 * @return the database uri
+	 */
+	public String getURI() {
+		return uri;
+	}
+
+	/**
+	 * Returns the login properties used to connect to the database.
+	 *
+	 * @return the login properties
+	 */
+	Properties getLogin() {
+		return login;
+	}
+
+	/**
+	 * Returns the number of connections currently handed out.
+	 *
+	 * @return number of active connections
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Returns the number of open connections waiting to be reused.
+	 *
+	 * @return number of idle connections
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * Returns the maximum number of open connections.
+	 *
+	 * @return the pool size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of prepared statements cached per connection.
+	 *
+	 * @return the statement cache size
+	 */
+	public int getStatements() {
+		return statements;
+	}
+
+	/**
+	 * Returns the number of physical connections opened so far.
+	 *
+	 * @return number of connections opened
+	 */
+	public long getOpened() {
+		return opened.sum();
+	}
+
+	/**
+	 * Returns the number of connection requests that timed out.
+	 *
+	 * @return number of timeouts
+	 */
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * Returns the average number of milliseconds spent waiting for a connection.
+	 *
+	 * @return average wait time in milliseconds
+	 */
+	public double getAverageWait() {
+		long count = acquired.sum() + timeouts.sum();
+		return count == 0 ? 0 : (double) waited.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Closes all idle connections. Active connections are closed as they are
+	 * returned to the pool.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		PooledConnection pooled;
+
+		while ((pooled = idle.pollFirst()) != null) {
+			pooled.destroy();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d active, %d idle, %d opened, %d timeouts, %.3fms average wait",
+				getActive(), getIdle(), getOpened(), getTimeouts(), getAverageWait());
+	}
+
+	/**
+	 * Wraps a physical database connection and its cache of prepared statements.
+	 */
+	private class PooledConnection {
+
+		/** The physical database connection. */
+		private final Connection connection;
+
+		/** Prepared statements by SQL, least recently used first. */
+		private final Map<String, CachedStatement> cache;
+
+		/** When this connection was opened. */
+		private final long created;
+
+		/** When this connection was last returned to the pool. */
+		private long released;
+
+		/**
+		 * Initializes a pooled connection.
+		 *
+		 * @param connection the physical database connection to wrap
+		 */
+		@SuppressWarnings("serial")
+		public PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.created = System.currentTimeMillis();
+			this.released = created;
+
+			// evicts the least recently used statement when full
+			this.cache = new LinkedHashMap<>(statements, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+					if (size() > statements) {
+						eldest.getValue().evict();
+						return true;
+					}
+
+					return false;
+				}
+			};
+		}
+
+		/**
+		 * Creates a new proxy for this connection to hand out. Each borrower gets
+		 * their own proxy, so closing a proxy twice cannot return a connection
+		 * that has since been handed to someone else.
+		 *
+		 * @return the proxy connection
+		 */
+		public Connection lease() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Lease(this));
+		}
+
+		/**
+		 * Returns a cached prepared statement for the SQL, preparing a new one if
+		 * necessary. Closing the returned statement keeps it open in the cache.
+		 * If the cached statement is still in use by an earlier caller, a
+		 * separate statement is prepared instead and closed when done.
+		 *
+		 * @param sql the sql to prepare
+		 * @param owner the proxy connection preparing this statement
+		 * @return the prepared statement
+		 * @throws SQLException if unable to prepare the statement
+		 */
+		public PreparedStatement prepareCached(String sql, Connection owner) throws SQLException {
+			CachedStatement cached = cache.get(sql);
+
+			if (cached == null || cached.statement.isClosed()) {
+				cached = new CachedStatement(connection.prepareStatement(sql));
+				cache.put(sql, cached);
+			}
+			else if (cached.busy) {
+				cached = new CachedStatement(connection.prepareStatement(sql));
+				cached.evicted = true;
+			}
+
+			cached.busy = true;
+
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, new StatementLease(cached, owner));
+		}
+
+		/**
+		 * Tests whether the physical connection still works.
+		 *
+		 * @return true if the connection is valid
+		 */
+		public boolean isValid() {
+			try {
+				return connection.isValid(VALIDATE_SECONDS);
+			}
+			catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Closes all cached statements and the physical connection.
+		 */
+		public void destroy() {
+			for (CachedStatement cached : cache.values()) {
+				closeQuietly(cached.statement);
+			}
+
+			cache.clear();
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * Handles calls made on a borrowed connection. Closing returns the
+	 * connection to the pool, and single-argument calls to prepareStatement use
+	 * the statement cache.
+	 */
+	private class Lease implements InvocationHandler {
+
+		/** The pooled connection being borrowed. */
+		private final PooledConnection pooled;
+
+		/** Whether this lease has been returned to the pool. */
+		private boolean returned;
+
+		/**
+		 * Initializes a lease for a pooled connection.
+		 *
+		 * @param pooled the pooled connection being borrowed
+		 */
+		public Lease(PooledConnection pooled) {
+			this.pooled = pooled;
+			this.returned = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (!returned) {
+						returned = true;
+						release(pooled);
+					}
+
+					return null;
+				case "isClosed":
+					return returned || pooled.connection.isClosed();
+				default:
+					break;
+			}
+
+			if (returned) {
+				throw new SQLException("Connection has already been returned to the pool.");
+			}
+
+			if (method.getName().equals("prepareStatement") && args.length == 1 && statements > 0) {
+				return pooled.prepareCached((String) args[0], (Connection) proxy);
+			}
+
+			return forward(pooled.connection, method, args);
+		}
+	}
+
+	/**
+	 * A prepared statement kept open for reuse, and the settings to restore
+	 * after each use.
+	 */
+	private static class CachedStatement {
+
+		/** The physical prepared statement. */
+		private final PreparedStatement statement;
+
+		/** The original number of rows to fetch at a time. */
+		private final int fetchSize;
+
+		/** The original maximum number of rows. */
+		private final int maxRows;
+
+		/** The original query timeout in seconds. */
+		private final int queryTimeout;
+
+		/** Whether a caller is currently using this statement. */
+		private boolean busy;
+
+		/** Whether this statement is no longer cached and should be closed. */
+		private boolean evicted;
+
+		/**
+		 * Initializes a cached statement, saving its original settings.
+		 *
+		 * @param statement the physical prepared statement
+		 * @throws SQLException if unable to read the statement settings
+		 */
+		public CachedStatement(PreparedStatement statement) throws SQLException {
+			this.statement = statement;
+			this.fetchSize = statement.getFetchSize();
+			this.maxRows = statement.getMaxRows();
+			this.queryTimeout = statement.getQueryTimeout();
+			this.busy = false;
+			this.evicted = false;
+		}
+
+		/**
+		 * Removes this statement from the cache, closing it now if unused or
+		 * otherwise once the current caller is done with it.
+		 */
+		public void evict() {
+			evicted = true;
+
+			if (!busy) {
+				closeQuietly(statement);
+			}
+		}
+
+		/**
+		 * Makes this statement available again, restoring its original settings,
+		 * or closes it if it is no longer cached or could not be reset.
+		 */
+		public void release() {
+			busy = false;
+
+			if (evicted) {
+				closeQuietly(statement);
+				return;
+			}
+
+			try {
+				statement.clearParameters();
+				statement.clearBatch();
+				statement.clearWarnings();
+				statement.setFetchSize(fetchSize);
+				statement.setMaxRows(maxRows);
+				statement.setQueryTimeout(queryTimeout);
+			}
+			catch (SQLException e) {
+				// closed statements are prepared again the next time
+				log.debug(e);
+				closeQuietly(statement);
+			}
+		}
+	}
+
+	/**
+	 * Handles calls made on a borrowed prepared statement. Closing closes any
+	 * result sets it returned and releases the statement back to the cache.
+	 */
+	private static class StatementLease implements InvocationHandler {
+
+		/** The cached statement being borrowed. */
+		private final CachedStatement cached;
+
+		/** The proxy connection that prepared this statement. */
+		private final Connection owner;
+
+		/** The result sets returned so far. */
+		private final List<ResultSet> results;
+
+		/** Whether this statement has been closed. */
+		private boolean closed;
+
+		/**
+		 * Initializes a lease for a cached statement.
+		 *
+		 * @param cached the cached statement being borrowed
+		 * @param owner the proxy connection that prepared the statement
+		 */
+		public StatementLease(CachedStatement cached, Connection owner) {
+			this.cached = cached;
+			this.owner = owner;
+			this.results = new ArrayList<>();
+			this.closed = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (!closed) {
+						closed = true;
+
+						for (ResultSet result : results) {
+							closeQuietly(result);
+						}
+
+						results.clear();
+						cached.release();
+					}
+
+					return null;
+				case "isClosed":
+					return closed || cached.statement.isClosed();
+				default:
+					break;
+			}
+
+			if (closed) {
+				throw new SQLException("Statement has already been closed.");
+			}
+
+			if (method.getName().equals("getConnection")) {
+				return owner;
+			}
+
+			Object result = forward(cached.statement, method, args);
+
+			if (result instanceof ResultSet) {
+				results.add((ResultSet) result);
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * Calls a method on the target object, unwrapping any exception thrown.
+	 *
+	 * @param target the object to call the method on
+	 * @param method the method to call
+	 * @param args the method arguments
+	 * @return the method result
+	 * @throws Throwable the exception thrown by the method
+	 */
+	private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Closes a resource, logging instead of throwing any exceptions.
+	 *
+	 * @param resource the resource to close
+	 */
+	private static void closeQuietly(AutoCloseable resource) {
+		try {
+			resource.close();
+		}
+		catch (Exception e) {
+			log.debug(e);
+		}
+	}
+}
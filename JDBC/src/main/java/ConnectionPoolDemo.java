@@ -0,0 +1,155 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Demonstrates the {@link ConnectionPool} class using an embedded in-memory H2
+ * database, so no MariaDB server or SSH tunnel is required.
+ *
+ * @see ConnectionPool
+ * @see DatabaseConnector
+ */
+public class ConnectionPoolDemo {
+
+	/** URI for an in-memory database that stays open until the JVM exits. */
+	public static final String URI = "jdbc:h2:mem:demo;DB_CLOSE_DELAY=-1";
+
+	/** Number of worker threads making requests. */
+	public static final int THREADS = 20;
+
+	/** Number of queries each worker thread makes. */
+	public static final int QUERIES = 500;
+
+	/** Query used by each worker. */
+	private static final String SELECT = "SELECT name FROM demo WHERE id = ?";
+
+	/**
+	 * Creates and populates a simple table in the in-memory database.
+	 *
+	 * @param connector the database connector
+	 * @throws SQLException if unable to create the table
+	 */
+	public static void setup(DatabaseConnector connector) throws SQLException {
+		try (Connection db = connector.getConnection(); Statement sql = db.createStatement();) {
+			sql.execute("CREATE TABLE demo (id INT PRIMARY KEY, name VARCHAR(50))");
+
+			for (int i = 0; i < 100; i++) {
+				sql.execute("INSERT INTO demo VALUES (" + i + ", 'name" + i + "')");
+			}
+		}
+	}
+
+	/**
+	 * Interface for anything that can provide a connection.
+	 */
+	@FunctionalInterface
+	private static interface ConnectionSource {
+
+		/**
+		 * Returns a connection.
+		 *
+		 * @return a database connection
+		 * @throws SQLException if unable to connect
+		 */
+		public Connection getConnection() throws SQLException;
+	}
+
+	/**
+	 * Runs queries from several threads at once using connections from the
+	 * provided source, and outputs how long it took.
+	 *
+	 * @param name the name to output
+	 * @param source where to get connections
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void benchmark(String name, ConnectionSource source) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		LongAdder found = new LongAdder();
+		Instant start = Instant.now();
+
+		for (int i = 0; i < THREADS; i++) {
+			executor.execute(() -> {
+				for (int j = 0; j < QUERIES; j++) {
+					try (
+							Connection db = source.getConnection();
+							PreparedStatement statement = db.prepareStatement(SELECT);
+					) {
+						statement.setInt(1, j % 100);
+
+						try (ResultSet results = statement.executeQuery()) {
+							while (results.next()) {
+								found.increment();
+							}
+						}
+					}
+					catch (SQLException e) {
+						System.err.println(e.getMessage());
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		Duration elapsed = Duration.between(start, Instant.now());
+		System.out.printf("%9s: %d rows in %d ms%n", name, found.sum(), elapsed.toMillis());
+	}
+
+	/**
+	 * Compares pooled and unpooled connections, outputs the pool metrics, and
+	 * demonstrates what happens when the pool runs out of connections.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to connect to the database
+	 */
+	public static void main(String[] args) throws Exception {
+		Properties login = new Properties();
+		login.put("user", "sa");
+		login.put("password", "");
+
+		DatabaseConnector connector = new DatabaseConnector(URI, login);
+		System.out.println("Connecting to " + connector.uri);
+		setup(connector);
+
+		benchmark("Unpooled", () -> DriverManager.getConnection(URI, login));
+		benchmark("Pooled", connector::getConnection);
+		benchmark("Unpooled", () -> DriverManager.getConnection(URI, login));
+		benchmark("Pooled", connector::getConnection);
+
+		System.out.println();
+		System.out.println("Pool: " + connector.getPool());
+
+		// a small pool with a short timeout to show what happens when it runs out
+		try (ConnectionPool small = new ConnectionPool(URI, login, 1, 100, 0, 1000, 5)) {
+			Connection first = small.getConnection();
+
+			try {
+				// the only connection is still held by first
+				small.getConnection().close();
+				System.out.println("Unexpected: got two connections from a pool of size one.");
+			}
+			catch (SQLTimeoutException e) {
+				System.out.println("Expected: " + e.getMessage());
+			}
+			finally {
+				first.close();
+			}
+
+			System.out.println("Pool: " + small);
+		}
+
+		connector.getPool().close();
+	}
+}
@@ -5,7 +5,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -31,6 +30,9 @@ public class DatabaseConnector {
 	/** Properties with username and password for connecting to database. */
 	private final Properties login;
 
+	/** Pool of open connections reused across calls to getConnection(). */
+	private final ConnectionPool pool;
+
 	/**
 	 * Creates a connector from a "database.properties" file located in the
 	 * current working directory.
@@ -50,6 +52,19 @@ public class DatabaseConnector {
 	 * @throws FileNotFoundException if properties file not found
 	 */
 	public DatabaseConnector(String configPath) throws FileNotFoundException, IOException {
+		this(configPath, ConnectionPool.DEFAULT_STATEMENTS);
+	}
+
+	/**
+	 * Creates a connector from the provided database properties file, caching
+	 * up to the provided number of prepared statements per connection.
+	 *
+	 * @param configPath path to the database properties file
+	 * @param statements number of prepared statements to cache per connection
+	 * @throws IOException if unable to properly parse properties file
+	 * @throws FileNotFoundException if properties file not found
+	 */
+	public DatabaseConnector(String configPath, int statements) throws FileNotFoundException, IOException {
 
 		// Try to load the configuration from file
 		Properties config = loadConfig(configPath);
@@ -61,6 +76,37 @@ public class DatabaseConnector {
 		login = new Properties();
 		login.put("user", config.getProperty("username"));
 		login.put("password", config.getProperty("password"));
+
+		// Prepare statements on the database server so pooled connections can
+		// reuse them instead of having the server parse the sql every time
+		login.put("useServerPrepStmts", "true");
+
+		// Create connection pool (connections are opened as needed)
+		pool = new ConnectionPool(uri, login, ConnectionPool.DEFAULT_SIZE, ConnectionPool.DEFAULT_TIMEOUT,
+				ConnectionPool.DEFAULT_IDLE, ConnectionPool.DEFAULT_LIFETIME, statements);
+	}
+
+	/**
+	 * Creates a connector for the provided database URI and login properties.
+	 * Useful for connecting to other databases, such as an embedded in-memory
+	 * database for testing.
+	 *
+	 * @param uri the database uri in jdbc:subprotocol://hostname/database format
+	 * @param login the properties with user and password
+	 */
+	public DatabaseConnector(String uri, Properties login) {
+		this(new ConnectionPool(uri, login));
+	}
+
+	/**
+	 * Creates a connector that uses the provided connection pool.
+	 *
+	 * @param pool the connection pool to use
+	 */
+	public DatabaseConnector(ConnectionPool pool) {
+		this.uri = pool.getURI();
+		this.login = pool.getLogin();
+		this.pool = pool;
 	}
 
 	/**
@@ -95,15 +141,27 @@ public class DatabaseConnector {
 	}
 
 	/**
-	 * Attempts to connect to database using loaded configuration.
+	 * Attempts to connect to database using loaded configuration. Connections
+	 * come from a pool, so make sure to close the connection when done to return
+	 * it to the pool.
 	 *
 	 * @return database connection
 	 * @throws SQLException if unable to establish database connection
+	 *
+	 * @see ConnectionPool#getConnection()
 	 */
 	public Connection getConnection() throws SQLException {
-		Connection dbConnection = DriverManager.getConnection(uri, login);
-		dbConnection.setAutoCommit(true);
-		return dbConnection;
+		return pool.getConnection();
+	}
+
+	/**
+	 * Returns the connection pool used by this connector, for example to output
+	 * the pool metrics.
+	 *
+	 * @return the connection pool
+	 */
+	public ConnectionPool getPool() {
+		return pool;
 	}
 
 	/**
@@ -31,14 +31,17 @@ public class FacultyServer {
 		}
 
 		// Attempt to connect to database and create servlet
-		DatabaseConnector connector = new DatabaseConnector(properties);
+		// big enough to keep a prepared statement for every query plan
+		DatabaseConnector connector = new DatabaseConnector(properties, FacultyServlet.PLAN_COUNT);
 
 		// Do not continue if unable to connect to database
 		if (!connector.testConnection()) {
 			return;
 		}
 
-		FacultyServlet servlet = new FacultyServlet(connector);
+		// database queries run on their own threads instead of Jetty threads
+		AsyncExecutor async = new AsyncExecutor();
+		FacultyServlet servlet = new FacultyServlet(connector, async);
 
 		// Default handler for favicon.ico requests
 		ContextHandler defaultHandler = new ContextHandler("/favicon.ico");
@@ -46,7 +49,9 @@ public class FacultyServer {
 
 		// Main servlet handler
 		ServletHandler servletHandler = new ServletHandler();
-		servletHandler.addServletWithMapping(new ServletHolder(servlet), "/");
+		ServletHolder holder = new ServletHolder(servlet);
+		holder.setAsyncSupported(true);
+		servletHandler.addServletWithMapping(holder, "/");
 
 		HandlerList handlers = new HandlerList();
 		handlers.addHandler(defaultHandler);
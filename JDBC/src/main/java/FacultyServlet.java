@@ -10,19 +10,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -45,26 +45,71 @@ public class FacultyServlet extends HttpServlet {
 	/** Database connector */
 	private final DatabaseConnector connector;
 
+	/** Runs requests asynchronously, or null to run on the Jetty thread. */
+	private final AsyncExecutor async;
+
 	/** Template for SQL statements. */
 	private final String sqlSelect;
 
+	/** Every possible query, built once and reused for every request. */
+	private final Map<String, QueryPlan> plans;
+
 	/** Template for HTML header. */
-	private final String htmlHeader;
+	private final TemplateFile htmlHeader;
 
 	/** Template for HTML table row. */
-	private final String htmlRow;
+	private final TemplateFile htmlRow;
 
 	/** Template for HTML footer. */
-	private final String htmlFooter;
+	private final TemplateFile htmlFooter;
 
 	/**
 	 * Valid/whitelisted column names; used to prevent XSS/SQL injection issues.
 	 */
 	private static final Set<String> COLUMNS = Set.of("last", "first", "email", "twitter", "courses");
 
+	/**
+	 * The number of query plans: with and without twitter, each filter column
+	 * or none, each sort column, both directions, and with and without a seek.
+	 * The statement cache must be at least this large to keep every plan.
+	 */
+	public static final int PLAN_COUNT = 2 * (COLUMNS.size() + 1) * COLUMNS.size() * 2 * 2;
+
+	/**
+	 * The expression to sort and seek by for each column. Each is unique when
+	 * combined with the usfid, which allows for keyset pagination.
+	 */
+	private static final Map<String, String> SORT_KEYS = Map.of(
+			"last", "last",
+			"first", "first",
+			"email", "faculty_names.usfid",
+			"twitter", "IFNULL(twitterid, '')",
+			"courses", "courses");
+
+	/** The result column with the sort value of each row, per sort column. */
+	private static final Map<String, String> SORT_COLUMNS = Map.of(
+			"last", "last",
+			"first", "first",
+			"email", "usfid",
+			"twitter", "twitter",
+			"courses", "courses");
+
+	/** Default number of rows per page. */
+	public static final int DEFAULT_PAGE_SIZE = 25;
+
+	/** Maximum number of rows per page. */
+	public static final int MAX_PAGE_SIZE = 500;
+
 	/** Standard charset to use. */
 	private static final Charset UTF_8 = StandardCharsets.UTF_8;
 
+	/** Number of characters to buffer before sending output to the client. */
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	/** Reusable output buffer per thread, so rows do not create new strings. */
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal
+			.withInitial(() -> new StringBuilder(CHUNK_SIZE * 2));
+
 	/**
 	 * Initializes this servlet. Requires an already established database
 	 * connector. Will fail to initialize if template files are not found.
@@ -73,20 +118,65 @@ public class FacultyServlet extends HttpServlet {
 	 * @throws IOException if unable to connect
 	 */
 	public FacultyServlet(DatabaseConnector connector) throws IOException {
+		this(connector, null);
+	}
+
+	/**
+	 * Initializes this servlet. Requests are handed off to the async executor
+	 * so the Jetty thread is not blocked while waiting on the database. The
+	 * servlet must be added to Jetty with async support turned on.
+	 *
+	 * @param connector the database connector to use (one per server)
+	 * @param async the executor for async requests, or null to run requests on
+	 *        the Jetty thread
+	 * @throws IOException if unable to connect
+	 */
+	public FacultyServlet(DatabaseConnector connector, AsyncExecutor async) throws IOException {
 		this.connector = connector;
+		this.async = async;
 
 		// load all of the SQL and HTML templates.
 		Path sql = Path.of("src", "main", "resources", "sql");
 		Path html = Path.of("src", "main", "resources", "html");
 		
 		sqlSelect = Files.readString(sql.resolve("SELECT.sql"), UTF_8);
-		htmlHeader = Files.readString(html.resolve("header.html"), UTF_8);
-		htmlRow = Files.readString(html.resolve("row.html"), UTF_8);
-		htmlFooter = Files.readString(html.resolve("footer.html"), UTF_8);
+		plans = buildPlans();
+		assert plans.size() == PLAN_COUNT;
+
+		if (connector.getPool().getStatements() < PLAN_COUNT) {
+			log.warn("Statement cache of {} is smaller than the {} query plans.",
+					connector.getPool().getStatements(), PLAN_COUNT);
+		}
+
+		htmlHeader = new TemplateFile(html.resolve("header.html"));
+		htmlRow = new TemplateFile(html.resolve("row.html"));
+		htmlFooter = new TemplateFile(html.resolve("footer.html"));
+
+		// fail now instead of on the first request if the templates are missing
+		htmlHeader.get();
+		htmlRow.get();
+		htmlFooter.get();
 	}
 
 	@Override
-	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		if (async == null) {
+			showFaculty(request, response);
+		}
+		else {
+			async.execute(request, response, this::showFaculty);
+		}
+	}
+
+	/**
+	 * Queries the database and outputs one page of faculty as HTML.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @throws IOException if an IO error occurs
+	 */
+	private void showFaculty(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		log.info(request.getQueryString());
 
 		// (safely) get sort parameters
@@ -100,43 +190,23 @@ public class FacultyServlet extends HttpServlet {
 		boolean onTwitter = isEqual(request, "twitter", "on");
 		boolean hasFilter = query != null && !query.isBlank();
 
-		// begin building sql query
-		StringBuilder sql = new StringBuilder(sqlSelect);
-
-		// handle filters that must occur BEFORE group by clause
-		if (onTwitter) {
-			sql.append(System.lineSeparator());
-			sql.append("WHERE twitterid IS NOT NULL");
-		}
-
-		if (hasFilter && !field.equals("courses")) {
-			sql.append(System.lineSeparator());
-			sql.append("WHERE ");
-			sql.append(field);
-			sql.append(" LIKE ?");
-		}
-
-		// add group by clause
-		sql.append(System.lineSeparator());
-		sql.append("GROUP BY faculty_names.usfid");
+		// (safely) get paging parameters
+		int size = getPageSize(request);
+		String before = request.getParameter("before");
+		String beforeId = request.getParameter("beforeid");
 
-		// add filters that must come AFTER group by clause
-		if (hasFilter && field.equals("courses")) {
-			sql.append(System.lineSeparator());
-			sql.append("HAVING ");
-			sql.append(field);
-			sql.append(" LIKE ?");
-		}
+		// paging backwards if given the first row of the next page
+		boolean forward = before == null || beforeId == null;
+		String seekKey = forward ? request.getParameter("after") : before;
+		String seekId = forward ? request.getParameter("afterid") : beforeId;
+		boolean hasSeek = seekKey != null && seekId != null;
 
-		// add sort order to sql query
-		sql.append(System.lineSeparator());
-		sql.append("ORDER BY ");
-		sql.append(sort);
-		sql.append(asc ? " ASC" : " DESC");
+		// when paging backwards, query in reverse order and flip rows afterwards
+		boolean ascending = forward == asc;
 
-		// end of sql query
-		sql.append(";");
-		log.info("SQL: {}", sql);
+		// look up the already built sql for these settings
+		QueryPlan plan = plans.get(getKey(onTwitter, hasFilter ? field : null, sort, ascending, hasSeek));
+		log.info("SQL: {}", plan.sql);
 
 		// prepare action to use for links (keeps form settings)
 		StringBuffer action = new StringBuffer();
@@ -159,47 +229,116 @@ public class FacultyServlet extends HttpServlet {
 			}
 		}
 
-		// prepare html output
+		if (size != DEFAULT_PAGE_SIZE) {
+			action.append("&size=");
+			action.append(size);
+		}
+
+		// prepare html output, sending the header before the query runs
+		response.setContentType("text/html; charset=utf-8");
+		response.setBufferSize(CHUNK_SIZE);
+		response.setStatus(HttpServletResponse.SC_OK);
+
 		PrintWriter out = response.getWriter();
-		out.println(getHeader(action.toString(), sort, asc));
+		StringBuilder buffer = BUFFER.get();
+		buffer.setLength(0);
+
+		getHeader(buffer, action.toString(), sort, asc);
+		flush(buffer, out, response);
+
+		// keys of the first and last rows fetched, used for the page links
+		String[] firstKey = null;
+		String[] lastKey = null;
+		boolean hasMore = false;
 
 		try (
 				Connection db = connector.getConnection();
-				PreparedStatement statement = db.prepareStatement(sql.toString());
+				PreparedStatement statement = db.prepareStatement(plan.sql);
 		) {
-			// add filter query if necessary
-			if (hasFilter) {
-				statement.setString(1, query);
+			// add parameters in the same order as the sql
+			for (int i = 0; i < plan.parameters.length; i++) {
+				switch (plan.parameters[i]) {
+					case FILTER:
+						statement.setString(i + 1, query);
+						break;
+					case SEEK_KEY:
+						statement.setString(i + 1, seekKey);
+						break;
+					case SEEK_ID:
+						statement.setString(i + 1, seekId);
+						break;
+					case LIMIT:
+						statement.setInt(i + 1, size + 1);
+						break;
+					default:
+						assert false;
+				}
 			}
 
+			// hint the driver to stream rows instead of fetching all at once
+			statement.setFetchSize(size + 1);
+
 			try (ResultSet results = statement.executeQuery()) {
+				// same template for every row, even if the file changes meanwhile,
+				// and variables missing from a reloaded file are skipped
+				CompiledTemplate template = htmlRow.get();
+				int rowName = template.index("name");
+				int rowEmail = template.index("email");
+				int rowTwitter = template.index("twitter");
+				int rowCourses = template.index("courses");
+
+				// reused for every row instead of creating a new map per row
+				String[] values = new String[template.variables()];
+
+				// rows must be held back and reversed when paging backwards
+				ArrayDeque<String> reversed = new ArrayDeque<>();
+				int count = 0;
+
 				while (results.next()) {
+					if (++count > size) {
+						hasMore = true;
+						break;
+					}
+
+					String[] key = { results.getString(SORT_COLUMNS.get(sort)), results.getString("usfid") };
+					firstKey = firstKey == null ? key : firstKey;
+					lastKey = key;
+
 					// do not assume data stored in database is safe!
-					Map<String, String> values = new HashMap<>();
-					values.put("name", escape(results, "name"));
-					values.put("email", escape(results, "email"));
+					CompiledTemplate.set(values, rowName, escape(results, "name"));
+					CompiledTemplate.set(values, rowEmail, escape(results, "email"));
 
 					String courses = escape(results, "courses");
+					CompiledTemplate.set(values, rowCourses, courses != null && !courses.isBlank() ? courses : "&nbsp;");
+
+					String twitter = escape(results, "twitter");
 
-					if (courses != null && !courses.isBlank()) {
-						values.put("courses", courses);
+					if (twitter != null && !twitter.isBlank()) {
+						CompiledTemplate.set(values, rowTwitter, "<a href=\"http://twitter.com/" + twitter + "\">@" + twitter + "</a>");
 					}
 					else {
-						values.put("courses", "&nbsp;");
+						CompiledTemplate.set(values, rowTwitter, "&nbsp;");
 					}
 
-					String twitter = escape(results, "twitter");
+					if (forward) {
+						template.render(buffer, values);
+						buffer.append(System.lineSeparator());
 
-					if (twitter != null && !twitter.isBlank()) {
-						String link = String.format("<a href=\"http://twitter.com/%1$s\">@%1$s</a>", twitter);
-						values.put("twitter", link);
+						// send rows in chunks instead of waiting for the last row
+						if (buffer.length() >= CHUNK_SIZE) {
+							flush(buffer, out, response);
+						}
 					}
 					else {
-						values.put("twitter", "&nbsp;");
+						StringBuilder row = new StringBuilder(template.length() * 2);
+						template.render(row, values);
+						reversed.push(row.toString());
 					}
+				}
 
-					out.println(StringSubstitutor.replace(htmlRow, values));
-					out.println();
+				for (String row : reversed) {
+					buffer.append(row);
+					buffer.append(System.lineSeparator());
 				}
 			}
 		}
@@ -207,21 +346,235 @@ public class FacultyServlet extends HttpServlet {
 			log.warn(e);
 		}
 
-		out.println(getFooter(sort, asc));
-		response.setStatus(HttpServletResponse.SC_OK);
+		// rows were fetched in reverse, so swap which keys are first and last
+		if (!forward) {
+			String[] swap = firstKey;
+			firstKey = lastKey;
+			lastKey = swap;
+		}
+
+		// there is a previous page if we sought past rows, or if paging backwards
+		// found more rows; the reverse is true for the next page
+		boolean hasPrev = forward ? hasSeek : hasMore;
+		boolean hasNext = forward ? hasMore : hasSeek;
+
+		String link = "/?sort=" + sort + "&asc=" + asc + action;
+		String prev = hasPrev && firstKey != null ? link + getSeek("before", firstKey) : null;
+		String next = hasNext && lastKey != null ? link + getSeek("after", lastKey) : null;
+
+		getFooter(buffer, sort, asc, size, prev, next);
+		flush(buffer, out, response);
+	}
+
+	/**
+	 * Builds the sql for every combination of settings. There are only a few
+	 * hundred combinations, and building them once means each request only has
+	 * to look up its sql. Since the exact same sql string is used every time,
+	 * the pooled connections can also reuse their prepared statements.
+	 *
+	 * @return map of query settings to query plans
+	 *
+	 * @see #getKey(boolean, String, String, boolean, boolean)
+	 */
+	private Map<String, QueryPlan> buildPlans() {
+		Map<String, QueryPlan> plans = new HashMap<>();
+		List<String> fields = new ArrayList<>(COLUMNS);
+		fields.add(null);
+
+		for (boolean onTwitter : new boolean[] { true, false }) {
+			for (String field : fields) {
+				for (String sort : COLUMNS) {
+					for (boolean ascending : new boolean[] { true, false }) {
+						for (boolean hasSeek : new boolean[] { true, false }) {
+							String key = getKey(onTwitter, field, sort, ascending, hasSeek);
+							plans.put(key, buildPlan(onTwitter, field, sort, ascending, hasSeek));
+						}
+					}
+				}
+			}
+		}
+
+		return Map.copyOf(plans);
+	}
+
+	/**
+	 * Builds the sql and parameter order for one combination of settings.
+	 *
+	 * @param onTwitter whether to only include faculty on twitter
+	 * @param field the column to filter or null if there is no filter
+	 * @param sort the column to sort by
+	 * @param ascending the direction to fetch rows
+	 * @param hasSeek whether to seek past a previously seen row
+	 * @return the query plan
+	 */
+	private QueryPlan buildPlan(boolean onTwitter, String field, String sort, boolean ascending, boolean hasSeek) {
+		String direction = ascending ? " ASC" : " DESC";
+		String expression = SORT_KEYS.get(sort);
+
+		// conditions and their parameters must be kept in the same order
+		List<String> where = new ArrayList<>();
+		List<String> having = new ArrayList<>();
+		List<Parameter> whereValues = new ArrayList<>();
+		List<Parameter> havingValues = new ArrayList<>();
+
+		// handle filters that must occur BEFORE group by clause
+		if (onTwitter) {
+			where.add("twitterid IS NOT NULL");
+		}
+
+		if (field != null && !field.equals("courses")) {
+			where.add(field + " LIKE ?");
+			whereValues.add(Parameter.FILTER);
+		}
+
+		// add filters that must come AFTER group by clause
+		if (field != null && field.equals("courses")) {
+			having.add(field + " LIKE ?");
+			havingValues.add(Parameter.FILTER);
+		}
+
+		// seek past the last row seen instead of using a slow OFFSET
+		if (hasSeek) {
+			String seek = String.format("(%1$s %2$s ? OR (%1$s = ? AND faculty_names.usfid %2$s ?))",
+					expression, ascending ? ">" : "<");
+
+			// courses is calculated by group by, so must come after it
+			boolean aggregate = sort.equals("courses");
+			(aggregate ? having : where).add(seek);
+			(aggregate ? havingValues : whereValues)
+					.addAll(List.of(Parameter.SEEK_KEY, Parameter.SEEK_KEY, Parameter.SEEK_ID));
+		}
+
+		// begin building sql query
+		StringBuilder sql = new StringBuilder(sqlSelect);
+
+		if (!where.isEmpty()) {
+			sql.append(System.lineSeparator());
+			sql.append("WHERE ");
+			sql.append(String.join(" AND ", where));
+		}
+
+		// add group by clause
+		sql.append(System.lineSeparator());
+		sql.append("GROUP BY faculty_names.usfid");
+
+		if (!having.isEmpty()) {
+			sql.append(System.lineSeparator());
+			sql.append("HAVING ");
+			sql.append(String.join(" AND ", having));
+		}
+
+		// add sort order to sql query, using the id to break ties
+		sql.append(System.lineSeparator());
+		sql.append("ORDER BY ");
+		sql.append(expression);
+		sql.append(direction);
+		sql.append(", faculty_names.usfid");
+		sql.append(direction);
+
+		// fetch one extra row to tell whether there is another page
+		sql.append(System.lineSeparator());
+		sql.append("LIMIT ?");
+
+		// end of sql query
+		sql.append(";");
+
+		List<Parameter> parameters = new ArrayList<>(whereValues);
+		parameters.addAll(havingValues);
+		parameters.add(Parameter.LIMIT);
+
+		return new QueryPlan(sql.toString(), parameters.toArray(Parameter[]::new));
+	}
+
+	/**
+	 * Returns the key used to look up the query plan for a combination of
+	 * settings.
+	 *
+	 * @param onTwitter whether to only include faculty on twitter
+	 * @param field the column to filter or null if there is no filter
+	 * @param sort the column to sort by
+	 * @param ascending the direction to fetch rows
+	 * @param hasSeek whether to seek past a previously seen row
+	 * @return the key for the query plan
+	 */
+	private static String getKey(boolean onTwitter, String field, String sort, boolean ascending, boolean hasSeek) {
+		return onTwitter + ":" + field + ":" + sort + ":" + ascending + ":" + hasSeek;
+	}
+
+	/** The values that may need to be bound to a query parameter. */
+	private static enum Parameter {
+		/** The filter query. */
+		FILTER,
+
+		/** The sort column value of the row to seek past. */
+		SEEK_KEY,
+
+		/** The usfid of the row to seek past. */
+		SEEK_ID,
+
+		/** The number of rows to fetch. */
+		LIMIT;
+	}
+
+	/**
+	 * The sql for one combination of settings, and which value to bind to each
+	 * of its parameters.
+	 */
+	private static class QueryPlan {
+		/** The sql to prepare. */
+		private final String sql;
+
+		/** The value to bind to each parameter, in order. */
+		private final Parameter[] parameters;
+
+		/**
+		 * Initializes a query plan.
+		 *
+		 * @param sql the sql to prepare
+		 * @param parameters the value to bind to each parameter, in order
+		 */
+		public QueryPlan(String sql, Parameter[] parameters) {
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+	}
+
+	/**
+	 * Returns the url parameters used to seek to the rows before or after a key.
+	 *
+	 * @param name either "before" or "after"
+	 * @param key the sort column value and id of the row
+	 * @return the url parameters
+	 */
+	private static String getSeek(String name, String[] key) {
+		return "&" + name + "=" + URLEncoder.encode(key[0], UTF_8) + "&" + name + "id=" + URLEncoder.encode(key[1], UTF_8);
+	}
+
+	/**
+	 * Writes the buffered output to the client and clears the buffer for reuse.
+	 *
+	 * @param buffer the buffered output
+	 * @param out the response writer
+	 * @param response the http servlet response
+	 * @throws IOException if unable to write to the client
+	 */
+	private static void flush(StringBuilder buffer, PrintWriter out, HttpServletResponse response)
+			throws IOException {
+		out.append(buffer);
+		buffer.setLength(0);
 		response.flushBuffer();
 	}
 
 	/**
 	 * Outputs the opening HTML and page header, including the table header row.
 	 *
+	 * @param out the buffer to append the html
 	 * @param filter the form filter to included in the column header links
 	 * @param sort the current sort column
 	 * @param asc the current sort order
-	 * @return html
-	 * @throws IOException if IO issue occurs 
+	 * @throws IOException if unable to read the template
 	 */
-	private String getHeader(String filter, String sort, boolean asc) throws IOException {
+	private void getHeader(StringBuilder out, String filter, String sort, boolean asc) throws IOException {
 		Map<String, String> values = new HashMap<>();
 		values.put("last", "true");
 		values.put("email", "true");
@@ -233,24 +586,36 @@ public class FacultyServlet extends HttpServlet {
 		// toggle column based on parameters
 		values.put(sort, Boolean.toString(!asc));
 
-		return StringSubstitutor.replace(htmlHeader, values);
+		htmlHeader.get().render(out, values);
+		out.append(System.lineSeparator());
 	}
 
 	/**
-	 * Outputs the closing HTML and page footer, including the filter form.
+	 * Outputs the closing HTML and page footer, including the page links and the
+	 * filter form.
 	 *
+	 * @param out the buffer to append the html
 	 * @param sort the current sort column
 	 * @param asc the current sort order
-	 * @return html
-	 * @throws IOException if IO issue occurs
+	 * @param size the current page size
+	 * @param prev the link to the previous page or null if there is none
+	 * @param next the link to the next page or null if there is none
+	 * @throws IOException if unable to read the template
 	 */
-	private String getFooter(String sort, boolean asc) throws IOException {
+	private void getFooter(StringBuilder out, String sort, boolean asc, int size, String prev, String next)
+			throws IOException {
 		Map<String, String> values = new HashMap<>();
 		values.put("sort", sort);
 		values.put("asc", Boolean.toString(asc));
+		values.put("size", Integer.toString(size));
+		values.put("prev", prev == null ? "#" : prev);
+		values.put("prev_state", prev == null ? "disabled" : "");
+		values.put("next", next == null ? "#" : next);
+		values.put("next_state", next == null ? "disabled" : "");
 		values.put("thread", Thread.currentThread().getName());
 		values.put("date", getLongDate());
-		return StringSubstitutor.replace(htmlFooter, values);
+		htmlFooter.get().render(out, values);
+		out.append(System.lineSeparator());
 	}
 
 	/**
@@ -266,6 +631,22 @@ public class FacultyServlet extends HttpServlet {
 		return found != null && COLUMNS.contains(found) ? found : value;
 	}
 
+	/**
+	 * Safely returns the page size fetched from the request.
+	 *
+	 * @param request the http servlet request
+	 * @return the requested page size or the default if there are any issues
+	 */
+	public static int getPageSize(HttpServletRequest request) {
+		try {
+			int size = Integer.parseInt(request.getParameter("size"));
+			return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		}
+		catch (NumberFormatException e) {
+			return DEFAULT_PAGE_SIZE;
+		}
+	}
+
 	/**
 	 * Returns whether a parameter equals the provided value.
 	 *
@@ -298,8 +679,6 @@ public class FacultyServlet extends HttpServlet {
 	 * @return the current date in long format
 	 */
 	public static String getLongDate() {
-		String format = "hh:mm a 'on' EEEE, MMMM dd yyyy";
-		DateFormat formatter = new SimpleDateFormat(format);
-		return formatter.format(new Date());
+		return CachedDateFormat.LONG.format();
 	}
 }
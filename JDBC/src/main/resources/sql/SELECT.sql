@@ -2,7 +2,8 @@ SELECT
 CONCAT(first, ' ', IFNULL(CONCAT(middle, ' '), ''), last) AS 'name',
 CONCAT(usfid, '@usfca.edu') AS 'email',
 IFNULL(twitterid, '') AS 'twitter',
-GROUP_CONCAT(course ORDER BY course SEPARATOR ', ') AS 'courses'
+IFNULL(GROUP_CONCAT(course ORDER BY course SEPARATOR ', '), '') AS 'courses',
+first, last, usfid
 FROM faculty_names
 NATURAL LEFT OUTER JOIN faculty_twitter
 NATURAL LEFT OUTER JOIN faculty_courses
\ No newline at end of file
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Totals ints that are not on the heap using a {@link ReductionEngine}: first
+ * in a direct buffer, then in a file larger than a single memory mapping can
+ * hold. Outputs how fast each one is read and how little heap is used. Run
+ * with a small heap but enough direct memory for the buffer, like
+ * {@code -Xmx64m -XX:MaxDirectMemorySize=2g}.
+ *
+ * @see ReductionEngine#sum(IntBuffer)
+ * @see ReductionEngine#sum(Path, ByteOrder)
+ */
+public class OffHeapReductionBenchmark {
+
+	/** The bytes in the direct buffer. */
+	private static final int BUFFER_BYTES = 1 << 30;
+
+	/** The default gigabytes in the file. */
+	private static final int FILE_GIGABYTES = 3;
+
+	/** Number of timed runs. */
+	private static final int RUNS = 5;
+
+	/**
+	 * Returns a predictable value for an index, which may be negative.
+	 *
+	 * @param index the index
+	 * @return the value
+	 */
+	private static int value(long index) {
+		return (int) (index * 31 % 2001) - 1000;
+	}
+
+	/**
+	 * Outputs how fast a number of bytes were read, and the heap in use.
+	 *
+	 * @param name the name to output
+	 * @param bytes the number of bytes read per run
+	 * @param nanos the average nanoseconds per run
+	 */
+	private static void report(String name, long bytes, double nanos) {
+		Runtime runtime = Runtime.getRuntime();
+		long heap = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+		System.out.printf("%-28s %6.2f GB in %7.1f ms, %6.2f GB/s, %4d MB heap used%n", name, bytes / 1e9, nanos / 1e6,
+				bytes / nanos, heap);
+	}
+
+	/**
+	 * Totals a direct buffer with a plain loop and with the engine.
+	 *
+	 * @param engine the engine to use
+	 */
+	private static void buffer(ReductionEngine engine) {
+		IntBuffer numbers = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		long expected = 0;
+
+		for (int i = 0; i < numbers.limit(); i++) {
+			numbers.put(i, value(i));
+			expected += value(i);
+		}
+
+		for (int warmup = 0; warmup < 2; warmup++) {
+			long start = System.nanoTime();
+			long total = 0;
+
+			for (int i = 0; i < numbers.limit(); i++) {
+				total += numbers.get(i);
+			}
+
+			if (warmup == 1) {
+				report("Direct buffer, loop", BUFFER_BYTES, System.nanoTime() - start);
+			}
+
+			if (total != expected || engine.sum(numbers) != expected) {
+				throw new IllegalStateException("Wrong total.");
+			}
+		}
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < RUNS; i++) {
+			engine.sum(numbers);
+		}
+
+		report("Direct buffer, engine", BUFFER_BYTES, (double) (System.nanoTime() - start) / RUNS);
+	}
+
+	/**
+	 * Writes a file of packed ints in native byte order.
+	 *
+	 * @param file the file to write
+	 * @param bytes the size of the file
+	 * @return the total of the ints written
+	 * @throws IOException if unable to write the file
+	 */
+	private static long write(Path file, long bytes) throws IOException {
+		ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.nativeOrder());
+		long total = 0;
+		long index = 0;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			while (index * Integer.BYTES < bytes) {
+				block.clear();
+
+				while (block.hasRemaining() && index * Integer.BYTES < bytes) {
+					block.putInt(value(index));
+					total += value(index);
+					index++;
+				}
+
+				block.flip();
+
+				while (block.hasRemaining()) {
+					channel.write(block);
+				}
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args optionally the gigabytes in the file
+	 * @throws IOException if unable to create or read the file
+	 */
+	public static void main(String[] args) throws IOException {
+		long bytes = (args.length > 0 ? Long.parseLong(args[0]) : FILE_GIGABYTES) << 30;
+
+		try (ReductionEngine engine = new ReductionEngine()) {
+			System.out.println(engine.getThreads() + " threads");
+			buffer(engine);
+
+			Path file = Files.createTempFile("numbers", ".bin");
+
+			try {
+				long expected = write(file, bytes);
+				ByteOrder order = ByteOrder.nativeOrder();
+
+				for (int run = 1; run <= 2; run++) {
+					long start = System.nanoTime();
+
+					if (engine.sum(file, order) != expected) {
+						throw new IllegalStateException("Wrong total.");
+					}
+
+					report("Mapped file, run " + run, bytes, System.nanoTime() - start);
+				}
+
+				long start = System.nanoTime();
+				System.out.println("Min " + engine.min(file, order) + ", max " + engine.max(file, order));
+				report("Mapped file, min and max", 2 * bytes, System.nanoTime() - start);
+				System.out.println("Histogram " + Arrays.toString(engine.histogram(file, order, -1000, 1001, 4)));
+			}
+			finally {
+				Files.delete(file);
+			}
+		}
+	}
+}
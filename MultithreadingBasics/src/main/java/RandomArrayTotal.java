@@ -8,6 +8,8 @@ import java.util.Random;
  * Demonstrates basic multithreading, and illustrates how to break up a problem
  * into subproblems. Also used to motivate the inefficiency of constantly
  * creating new threads instead of reusing them.
+ *
+ * @see ReductionEngine
  */
 public class RandomArrayTotal {
 
@@ -91,6 +93,20 @@ public class RandomArrayTotal {
 		return total;
 	}
 
+	/**
+	 * Calculates the total of an array using an engine that reuses the same
+	 * threads for every call, instead of creating new ones.
+	 *
+	 * @param numbers array of numbers to total
+	 * @param engine the engine to use
+	 * @return total of numbers in array
+	 *
+	 * @see ReductionEngine#sum(int[])
+	 */
+	public static long total(int[] numbers, ReductionEngine engine) {
+		return engine.sum(numbers);
+	}
+
 	/**
 	 * Uses the {@link RandomArrayTotal#subtotal(int[], int, int)} method to
 	 * generate a subtotal of an array.
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Compares totaling arrays of different sizes one value at a time, with new
+ * threads for every call ({@link RandomArrayTotal#total(int[], int)}), with a
+ * parallel {@link IntStream}, and with a {@link ReductionEngine}. Also checks
+ * that every approach gets the same answers.
+ *
+ * <p>
+ * Like {@link RandomArrayTotal}, this is only a rough benchmark: each approach
+ * is warmed up and then timed over many runs, but a benchmark package would
+ * give more reliable results.
+ *
+ * @see ReductionEngine
+ * @see RandomArrayTotal
+ */
+public class ReductionBenchmark {
+
+	/** The array sizes to compare. */
+	private static final int[] SIZES = { 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 50_000_000 };
+
+	/** Roughly how many values to total for each measurement. */
+	private static final long WORK = 200_000_000;
+
+	/** The most runs for each measurement. */
+	private static final int MAX_RUNS = 20_000;
+
+	/**
+	 * Returns the average nanoseconds to total an array.
+	 *
+	 * @param numbers the numbers to total
+	 * @param total the approach to use
+	 * @param expected the expected total
+	 * @return the average nanoseconds
+	 */
+	private static double time(int[] numbers, ToLongFunction<int[]> total, long expected) {
+		int runs = (int) Math.max(10, Math.min(MAX_RUNS, WORK / numbers.length));
+
+		// warm up and check the answer
+		for (int i = 0; i < runs; i++) {
+			if (total.applyAsLong(numbers) != expected) {
+				throw new IllegalStateException("Wrong total.");
+			}
+		}
+
+		long start = System.nanoTime();
+		long placeholder = 0;
+
+		for (int i = 0; i < runs; i++) {
+			placeholder += total.applyAsLong(numbers);
+		}
+
+		double average = (double) (System.nanoTime() - start) / runs;
+		return placeholder == expected * runs ? average : -average;
+	}
+
+	/**
+	 * Checks that the other operations match doing them one value at a time.
+	 *
+	 * @param engine the engine to check
+	 * @param numbers the numbers to check with
+	 */
+	private static void check(ReductionEngine engine, int[] numbers) {
+		long[] longs = Arrays.stream(numbers).asLongStream().toArray();
+		double[] doubles = Arrays.stream(numbers).asDoubleStream().toArray();
+
+		int min = Arrays.stream(numbers).min().getAsInt();
+		int max = Arrays.stream(numbers).max().getAsInt();
+
+		long[] expected = new long[16];
+
+		for (int number : numbers) {
+			if (number < 1000) {
+				expected[(int) ((number + 1000L) * 16 / 2000)]++;
+			}
+		}
+
+		boolean same = engine.min(numbers) == min && engine.max(numbers) == max
+				&& engine.min(longs) == min && engine.max(longs) == max
+				&& engine.min(doubles) == min && engine.max(doubles) == max
+				&& engine.sum(longs) == RandomArrayTotal.total(numbers)
+				&& Math.abs(engine.sum(doubles) - RandomArrayTotal.total(numbers)) < 1e-6 * numbers.length
+				&& Arrays.equals(engine.histogram(numbers, -1000, 1000, 16), expected)
+				&& Arrays.equals(engine.histogram(longs, -1000, 1000, 16), expected)
+				&& Arrays.equals(engine.histogram(doubles, -1000, 1000, 16), expected);
+
+		if (!same) {
+			throw new IllegalStateException("Wrong results for " + numbers.length + " numbers.");
+		}
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		System.out.printf("%d processors; average microseconds per total%n%n", threads);
+		System.out.printf("%12s %10s %10s %10s %10s%n", "Size", "Loop", "Threads", "Stream", "Engine");
+
+		try (ReductionEngine engine = new ReductionEngine(threads)) {
+			for (int size : SIZES) {
+				// small values so the int total from the stream does not overflow
+				int[] numbers = new Random(size).ints(size, -1000, 1000).toArray();
+				long expected = RandomArrayTotal.total(numbers);
+				check(engine, numbers);
+
+				double loop = time(numbers, RandomArrayTotal::total, expected);
+				double created = time(numbers, array -> {
+					try {
+						return RandomArrayTotal.total(array, threads);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return 0;
+					}
+				}, expected);
+				double stream = time(numbers, array -> IntStream.of(array).parallel().sum(), expected);
+				double reused = time(numbers, engine::sum, expected);
+
+				System.out.printf("%,12d %10.1f %10.1f %10.1f %10.1f%n", size,
+						loop / 1e3, created / 1e3, stream / 1e3, reused / 1e3);
+			}
+		}
+	}
+}
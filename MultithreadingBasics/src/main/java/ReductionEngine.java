@@ -0,0 +1,900 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Reduces arrays to a single value (like a sum, minimum, or maximum) or to a
+ * histogram using a pool of threads that is created once and reused, instead of
+ * creating new threads for every call like
+ * {@link RandomArrayTotal#total(int[], int)}.
+ *
+ * <p>
+ * The array is split into blocks, and each block is reduced by one task in a
+ * {@link ForkJoinPool}. Small arrays are reduced on the calling thread, since
+ * handing them to other threads costs more than it saves, and so is every
+ * array if there is only one thread. Large arrays are split into a few blocks
+ * per thread so threads that finish early can take over work from slower ones,
+ * but every block is still large enough to be worth a task.
+ *
+ * <p>
+ * Ints do not have to be in an array on the heap. They may also be in an
+ * {@link IntBuffer} view of a direct buffer, or in a file of packed ints that
+ * is mapped into memory a segment at a time, so files much larger than the
+ * heap can be reduced without reading them onto it.
+ *
+ * <p>
+ * Each block writes its result to its own slot. The slots are spaced apart so
+ * no two blocks write to the same cache line, which would otherwise force the
+ * processors to keep passing that cache line back and forth (false sharing).
+ *
+ * @see RandomArrayTotal
+ */
+public class ReductionEngine implements AutoCloseable {
+
+	/** Arrays smaller than this are reduced on the calling thread. */
+	public static final int SEQUENTIAL = 1 << 15;
+
+	/** The fewest values in a block, so each task has enough work. */
+	public static final int MIN_BLOCK = 1 << 13;
+
+	/** The number of blocks for each thread, so work can be balanced. */
+	private static final int BLOCKS_PER_THREAD = 4;
+
+	/** The most bytes of a file mapped at once, under the 2 GB limit. */
+	public static final int SEGMENT = 1 << 30;
+
+	/** The number of longs in a cache line and then some, to space out slots. */
+	private static final int PAD = 16;
+
+	/** The threads that reduce the blocks. */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Initializes an engine with a pool of threads.
+	 *
+	 * @param threads the number of threads
+	 */
+	public ReductionEngine(int threads) {
+		if (threads < 1) {
+			throw new InvalidParameterException("The number of worker threads must be 1 or greater.");
+		}
+
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Initializes an engine with a thread for each processor.
+	 */
+	public ReductionEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns the number of threads in the pool.
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Reduces one block of an array.
+	 */
+	@FunctionalInterface
+	public interface BlockReducer {
+
+		/**
+		 * Reduces the values from {@code start} (inclusive) to {@code end}
+		 * (exclusive), storing the result for the block.
+		 *
+		 * @param block the block number
+		 * @param start the first index of the block
+		 * @param end the index after the last of the block
+		 */
+		void reduce(int block, int start, int end);
+	}
+
+	/**
+	 * Returns how many blocks to split an array into.
+	 *
+	 * @param length the length of the array
+	 * @return the number of blocks
+	 */
+	public int blocks(int length) {
+		// with only one thread there is nothing to gain from other threads
+		if (length < SEQUENTIAL || getThreads() == 1) {
+			return 1;
+		}
+
+		int most = Math.max(1, length / MIN_BLOCK);
+		return Math.min(most, getThreads() * BLOCKS_PER_THREAD);
+	}
+
+	/**
+	 * Reduces every block of an array, in parallel if there is more than one.
+	 *
+	 * @param length the length of the array
+	 * @param blocks the number of blocks
+	 * @param reducer reduces each block
+	 */
+	public void forEachBlock(int length, int blocks, BlockReducer reducer) {
+		if (blocks == 1) {
+			reducer.reduce(0, 0, length);
+		}
+		else {
+			pool.invoke(new BlockTask(reducer, length, blocks, 0, blocks));
+		}
+	}
+
+	/**
+	 * Splits a range of blocks in half until one block is left, then reduces
+	 * that block.
+	 */
+	private static class BlockTask extends RecursiveAction {
+
+		/** Unused, but required since tasks are serializable. */
+		private static final long serialVersionUID = 1L;
+
+		/** Reduces each block. */
+		private final BlockReducer reducer;
+
+		/** The length of the array. */
+		private final int length;
+
+		/** The total number of blocks. */
+		private final int blocks;
+
+		/** The first block of this task. */
+		private final int low;
+
+		/** The block after the last of this task. */
+		private final int high;
+
+		/**
+		 * Initializes a task.
+		 *
+		 * @param reducer reduces each block
+		 * @param length the length of the array
+		 * @param blocks the total number of blocks
+		 * @param low the first block of this task
+		 * @param high the block after the last of this task
+		 */
+		private BlockTask(BlockReducer reducer, int length, int blocks, int low, int high) {
+			this.reducer = reducer;
+			this.length = length;
+			this.blocks = blocks;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected void compute() {
+			if (high - low == 1) {
+				int start = (int) ((long) length * low / blocks);
+				int end = (int) ((long) length * high / blocks);
+				reducer.reduce(low, start, end);
+			}
+			else {
+				int middle = (low + high) >>> 1;
+				invokeAll(new BlockTask(reducer, length, blocks, low, middle),
+						new BlockTask(reducer, length, blocks, middle, high));
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the slot for a block, spaced so no two slots share a
+	 * cache line.
+	 *
+	 * @param block the block number
+	 * @return the index of the slot
+	 */
+	private static int slot(int block) {
+		return (block + 1) * PAD;
+	}
+
+	/**
+	 * Creates spaced out slots for the result of each block.
+	 *
+	 * @param blocks the number of blocks
+	 * @return the slots
+	 */
+	private static long[] longSlots(int blocks) {
+		return new long[(blocks + 2) * PAD];
+	}
+
+	/**
+	 * Creates spaced out slots for the result of each block.
+	 *
+	 * @param blocks the number of blocks
+	 * @return the slots
+	 */
+	private static double[] doubleSlots(int blocks) {
+		return new double[(blocks + 2) * PAD];
+	}
+
+	/**
+	 * Makes sure an array has values to find the minimum or maximum of.
+	 *
+	 * @param length the number of values
+	 */
+	private static void checkNotEmpty(long length) {
+		if (length == 0) {
+			throw new InvalidParameterException("Cannot find the minimum or maximum of an empty array.");
+		}
+	}
+
+	/**
+	 * Calculates the total of an array.
+	 *
+	 * @param numbers the numbers to total
+	 * @return the total
+	 */
+	public long sum(int[] numbers) {
+		int blocks = blocks(numbers.length);
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long total = 0;
+
+			for (int i = start; i < end; i++) {
+				total += numbers[i];
+			}
+
+			slots[slot(block)] = total;
+		});
+
+		long total = 0;
+
+		for (int block = 0; block < blocks; block++) {
+			total += slots[slot(block)];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Calculates the total of an array. Overflows the same way adding up the
+	 * numbers one at a time would.
+	 *
+	 * @param numbers the numbers to total
+	 * @return the total
+	 */
+	public long sum(long[] numbers) {
+		int blocks = blocks(numbers.length);
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long total = 0;
+
+			for (int i = start; i < end; i++) {
+				total += numbers[i];
+			}
+
+			slots[slot(block)] = total;
+		});
+
+		long total = 0;
+
+		for (int block = 0; block < blocks; block++) {
+			total += slots[slot(block)];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Calculates the total of an array. Since the blocks are added up
+	 * separately, the rounding may be slightly different from adding up the
+	 * numbers one at a time.
+	 *
+	 * @param numbers the numbers to total
+	 * @return the total
+	 */
+	public double sum(double[] numbers) {
+		int blocks = blocks(numbers.length);
+		double[] slots = doubleSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			double total = 0;
+
+			for (int i = start; i < end; i++) {
+				total += numbers[i];
+			}
+
+			slots[slot(block)] = total;
+		});
+
+		double total = 0;
+
+		for (int block = 0; block < blocks; block++) {
+			total += slots[slot(block)];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Finds the smallest value in an array.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the smallest value
+	 */
+	public int min(int[] numbers) {
+		checkNotEmpty(numbers.length);
+		int blocks = blocks(numbers.length);
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			int min = numbers[start];
+
+			for (int i = start + 1; i < end; i++) {
+				min = Math.min(min, numbers[i]);
+			}
+
+			slots[slot(block)] = min;
+		});
+
+		long min = Long.MAX_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			min = Math.min(min, slots[slot(block)]);
+		}
+
+		return (int) min;
+	}
+
+	/**
+	 * Finds the largest value in an array.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the largest value
+	 */
+	public int max(int[] numbers) {
+		checkNotEmpty(numbers.length);
+		int blocks = blocks(numbers.length);
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			int max = numbers[start];
+
+			for (int i = start + 1; i < end; i++) {
+				max = Math.max(max, numbers[i]);
+			}
+
+			slots[slot(block)] = max;
+		});
+
+		long max = Long.MIN_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			max = Math.max(max, slots[slot(block)]);
+		}
+
+		return (int) max;
+	}
+
+	/**
+	 * Finds the smallest value in an array.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the smallest value
+	 */
+	public long min(long[] numbers) {
+		checkNotEmpty(numbers.length);
+		int blocks = blocks(numbers.length);
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long min = numbers[start];
+
+			for (int i = start + 1; i < end; i++) {
+				min = Math.min(min, numbers[i]);
+			}
+
+			slots[slot(block)] = min;
+		});
+
+		long min = Long.MAX_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			min = Math.min(min, slots[slot(block)]);
+		}
+
+		return min;
+	}
+
+	/**
+	 * Finds the largest value in an array.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the largest value
+	 */
+	public long max(long[] numbers) {
+		checkNotEmpty(numbers.length);
+		int blocks = blocks(numbers.length);
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long max = numbers[start];
+
+			for (int i = start + 1; i < end; i++) {
+				max = Math.max(max, numbers[i]);
+			}
+
+			slots[slot(block)] = max;
+		});
+
+		long max = Long.MIN_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			max = Math.max(max, slots[slot(block)]);
+		}
+
+		return max;
+	}
+
+	/**
+	 * Finds the smallest value in an array. Like {@link Math#min(double, double)},
+	 * the result is NaN if any value is NaN.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the smallest value
+	 */
+	public double min(double[] numbers) {
+		checkNotEmpty(numbers.length);
+		int blocks = blocks(numbers.length);
+		double[] slots = doubleSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			double min = numbers[start];
+
+			for (int i = start + 1; i < end; i++) {
+				min = Math.min(min, numbers[i]);
+			}
+
+			slots[slot(block)] = min;
+		});
+
+		double min = Double.POSITIVE_INFINITY;
+
+		for (int block = 0; block < blocks; block++) {
+			min = Math.min(min, slots[slot(block)]);
+		}
+
+		return min;
+	}
+
+	/**
+	 * Finds the largest value in an array. Like {@link Math#max(double, double)},
+	 * the result is NaN if any value is NaN.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the largest value
+	 */
+	public double max(double[] numbers) {
+		checkNotEmpty(numbers.length);
+		int blocks = blocks(numbers.length);
+		double[] slots = doubleSlots(blocks);
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			double max = numbers[start];
+
+			for (int i = start + 1; i < end; i++) {
+				max = Math.max(max, numbers[i]);
+			}
+
+			slots[slot(block)] = max;
+		});
+
+		double max = Double.NEGATIVE_INFINITY;
+
+		for (int block = 0; block < blocks; block++) {
+			max = Math.max(max, slots[slot(block)]);
+		}
+
+		return max;
+	}
+
+	/**
+	 * Creates spaced out bins for each block, so no two blocks count into the
+	 * same cache line.
+	 *
+	 * @param blocks the number of blocks
+	 * @param bins the number of bins
+	 * @return the bins for each block, starting at index {@value #PAD}
+	 */
+	private static long[][] binSlots(int blocks, int bins) {
+		if (bins < 1) {
+			throw new InvalidParameterException("The number of bins must be 1 or greater.");
+		}
+
+		long[][] counts = new long[blocks][];
+
+		for (int block = 0; block < blocks; block++) {
+			counts[block] = new long[bins + 2 * PAD];
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Adds up the bins of each block.
+	 *
+	 * @param counts the bins for each block
+	 * @param bins the number of bins
+	 * @return the total for each bin
+	 */
+	private static long[] merge(long[][] counts, int bins) {
+		long[] histogram = new long[bins];
+
+		for (long[] count : counts) {
+			for (int bin = 0; bin < bins; bin++) {
+				histogram[bin] += count[bin + PAD];
+			}
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Counts how many values fall in each of several equal-width bins between
+	 * a minimum (inclusive) and maximum (exclusive). Values outside that range
+	 * are not counted.
+	 *
+	 * @param numbers the numbers to count
+	 * @param min the smallest value of the first bin
+	 * @param max the value after the largest value of the last bin
+	 * @param bins the number of bins
+	 * @return the count for each bin
+	 */
+	public long[] histogram(int[] numbers, int min, int max, int bins) {
+		if (min >= max) {
+			throw new InvalidParameterException("The minimum must be less than the maximum.");
+		}
+
+		int blocks = blocks(numbers.length);
+		long[][] counts = binSlots(blocks, bins);
+		long width = (long) max - min;
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long[] count = counts[block];
+
+			for (int i = start; i < end; i++) {
+				int value = numbers[i];
+
+				if (value >= min && value < max) {
+					count[(int) ((value - (long) min) * bins / width) + PAD]++;
+				}
+			}
+		});
+
+		return merge(counts, bins);
+	}
+
+	/**
+	 * Counts how many values fall in each of several equal-width bins between
+	 * a minimum (inclusive) and maximum (exclusive). Values outside that range
+	 * are not counted.
+	 *
+	 * @param numbers the numbers to count
+	 * @param min the smallest value of the first bin
+	 * @param max the value after the largest value of the last bin
+	 * @param bins the number of bins
+	 * @return the count for each bin
+	 */
+	public long[] histogram(long[] numbers, long min, long max, int bins) {
+		if (min >= max) {
+			throw new InvalidParameterException("The minimum must be less than the maximum.");
+		}
+
+		int blocks = blocks(numbers.length);
+		long[][] counts = binSlots(blocks, bins);
+		double width = (double) max - min;
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long[] count = counts[block];
+
+			for (int i = start; i < end; i++) {
+				long value = numbers[i];
+
+				if (value >= min && value < max) {
+					// rounding may go one past the last bin for huge ranges
+					int bin = (int) (((double) value - min) / width * bins);
+					count[Math.min(bin, bins - 1) + PAD]++;
+				}
+			}
+		});
+
+		return merge(counts, bins);
+	}
+
+	/**
+	 * Counts how many values fall in each of several equal-width bins between
+	 * a minimum (inclusive) and maximum (exclusive). Values outside that range
+	 * and NaN are not counted.
+	 *
+	 * @param numbers the numbers to count
+	 * @param min the smallest value of the first bin
+	 * @param max the value after the largest value of the last bin
+	 * @param bins the number of bins
+	 * @return the count for each bin
+	 */
+	public long[] histogram(double[] numbers, double min, double max, int bins) {
+		if (!(min < max)) {
+			throw new InvalidParameterException("The minimum must be less than the maximum.");
+		}
+
+		int blocks = blocks(numbers.length);
+		long[][] counts = binSlots(blocks, bins);
+		double width = max - min;
+
+		forEachBlock(numbers.length, blocks, (block, start, end) -> {
+			long[] count = counts[block];
+
+			for (int i = start; i < end; i++) {
+				double value = numbers[i];
+
+				if (value >= min && value < max) {
+					int bin = (int) ((value - min) / width * bins);
+					count[Math.min(bin, bins - 1) + PAD]++;
+				}
+			}
+		});
+
+		return merge(counts, bins);
+	}
+
+	/**
+	 * Calculates the total of the ints in a buffer, from its position to its
+	 * limit. The buffer may be a view of a direct or memory-mapped buffer, so
+	 * the numbers do not have to be on the heap.
+	 *
+	 * @param numbers the numbers to total
+	 * @return the total
+	 */
+	public long sum(IntBuffer numbers) {
+		int offset = numbers.position();
+		int blocks = blocks(numbers.remaining());
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.remaining(), blocks, (block, start, end) -> {
+			long total = 0;
+
+			for (int i = offset + start; i < offset + end; i++) {
+				total += numbers.get(i);
+			}
+
+			slots[slot(block)] = total;
+		});
+
+		long total = 0;
+
+		for (int block = 0; block < blocks; block++) {
+			total += slots[slot(block)];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Finds the smallest int in a buffer, from its position to its limit.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the smallest value
+	 */
+	public int min(IntBuffer numbers) {
+		checkNotEmpty(numbers.remaining());
+		int offset = numbers.position();
+		int blocks = blocks(numbers.remaining());
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.remaining(), blocks, (block, start, end) -> {
+			int min = numbers.get(offset + start);
+
+			for (int i = offset + start + 1; i < offset + end; i++) {
+				min = Math.min(min, numbers.get(i));
+			}
+
+			slots[slot(block)] = min;
+		});
+
+		long min = Long.MAX_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			min = Math.min(min, slots[slot(block)]);
+		}
+
+		return (int) min;
+	}
+
+	/**
+	 * Finds the largest int in a buffer, from its position to its limit.
+	 *
+	 * @param numbers the numbers to search
+	 * @return the largest value
+	 */
+	public int max(IntBuffer numbers) {
+		checkNotEmpty(numbers.remaining());
+		int offset = numbers.position();
+		int blocks = blocks(numbers.remaining());
+		long[] slots = longSlots(blocks);
+
+		forEachBlock(numbers.remaining(), blocks, (block, start, end) -> {
+			int max = numbers.get(offset + start);
+
+			for (int i = offset + start + 1; i < offset + end; i++) {
+				max = Math.max(max, numbers.get(i));
+			}
+
+			slots[slot(block)] = max;
+		});
+
+		long max = Long.MIN_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			max = Math.max(max, slots[slot(block)]);
+		}
+
+		return (int) max;
+	}
+
+	/**
+	 * Counts how many ints in a buffer, from its position to its limit, fall in
+	 * each of several equal-width bins. See
+	 * {@link #histogram(int[], int, int, int)}.
+	 *
+	 * @param numbers the numbers to count
+	 * @param min the smallest value of the first bin
+	 * @param max the value after the largest value of the last bin
+	 * @param bins the number of bins
+	 * @return the count for each bin
+	 */
+	public long[] histogram(IntBuffer numbers, int min, int max, int bins) {
+		if (min >= max) {
+			throw new InvalidParameterException("The minimum must be less than the maximum.");
+		}
+
+		int offset = numbers.position();
+		int blocks = blocks(numbers.remaining());
+		long[][] counts = binSlots(blocks, bins);
+		long width = (long) max - min;
+
+		forEachBlock(numbers.remaining(), blocks, (block, start, end) -> {
+			long[] count = counts[block];
+
+			for (int i = offset + start; i < offset + end; i++) {
+				int value = numbers.get(i);
+
+				if (value >= min && value < max) {
+					count[(int) ((value - (long) min) * bins / width) + PAD]++;
+				}
+			}
+		});
+
+		return merge(counts, bins);
+	}
+
+	/**
+	 * Maps a file of packed ints into memory one segment at a time, since a
+	 * single mapping cannot be larger than 2 GB. Each segment is handed to the
+	 * action as a buffer of ints, which the operating system reads from the
+	 * file as needed instead of loading it onto the heap.
+	 *
+	 * @param file the file of packed ints
+	 * @param order the byte order of the ints in the file
+	 * @param action called with each segment of the file
+	 * @throws IOException if unable to map the file, or its size is not a
+	 *         multiple of 4 bytes
+	 */
+	public static void forEachSegment(Path file, ByteOrder order, Consumer<IntBuffer> action) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			if (size % Integer.BYTES != 0) {
+				throw new IOException("The size of " + file + " is not a multiple of " + Integer.BYTES + " bytes.");
+			}
+
+			for (long position = 0; position < size; position += SEGMENT) {
+				long length = Math.min(SEGMENT, size - position);
+				MappedByteBuffer bytes = channel.map(MapMode.READ_ONLY, position, length);
+				action.accept(bytes.order(order).asIntBuffer());
+			}
+		}
+	}
+
+	/**
+	 * Calculates the total of a file of packed ints without loading it onto the
+	 * heap. Each segment of the file is split into blocks like an array.
+	 *
+	 * @param file the file of packed ints
+	 * @param order the byte order of the ints in the file
+	 * @return the total
+	 * @throws IOException if unable to map the file
+	 *
+	 * @see #forEachSegment(Path, ByteOrder, Consumer)
+	 */
+	public long sum(Path file, ByteOrder order) throws IOException {
+		long[] total = { 0 };
+		forEachSegment(file, order, segment -> total[0] += sum(segment));
+		return total[0];
+	}
+
+	/**
+	 * Finds the smallest int in a file of packed ints without loading it onto
+	 * the heap.
+	 *
+	 * @param file the file of packed ints
+	 * @param order the byte order of the ints in the file
+	 * @return the smallest value
+	 * @throws IOException if unable to map the file
+	 */
+	public int min(Path file, ByteOrder order) throws IOException {
+		checkNotEmpty(Files.size(file));
+		int[] min = { Integer.MAX_VALUE };
+		forEachSegment(file, order, segment -> min[0] = Math.min(min[0], min(segment)));
+		return min[0];
+	}
+
+	/**
+	 * Finds the largest int in a file of packed ints without loading it onto
+	 * the heap.
+	 *
+	 * @param file the file of packed ints
+	 * @param order the byte order of the ints in the file
+	 * @return the largest value
+	 * @throws IOException if unable to map the file
+	 */
+	public int max(Path file, ByteOrder order) throws IOException {
+		checkNotEmpty(Files.size(file));
+		int[] max = { Integer.MIN_VALUE };
+		forEachSegment(file, order, segment -> max[0] = Math.max(max[0], max(segment)));
+		return max[0];
+	}
+
+	/**
+	 * Counts how many ints in a file of packed ints fall in each of several
+	 * equal-width bins, without loading the file onto the heap. See
+	 * {@link #histogram(int[], int, int, int)}.
+	 *
+	 * @param file the file of packed ints
+	 * @param order the byte order of the ints in the file
+	 * @param min the smallest value of the first bin
+	 * @param max the value after the largest value of the last bin
+	 * @param bins the number of bins
+	 * @return the count for each bin
+	 * @throws IOException if unable to map the file
+	 */
+	public long[] histogram(Path file, ByteOrder order, int min, int max, int bins) throws IOException {
+		long[] histogram = new long[bins];
+
+		forEachSegment(file, order, segment -> {
+			long[] counts = histogram(segment, min, max, bins);
+
+			for (int bin = 0; bin < bins; bin++) {
+				histogram[bin] += counts[bin];
+			}
+		});
+
+		return histogram;
+	}
+
+	/**
+	 * Stops the threads in the pool.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+}
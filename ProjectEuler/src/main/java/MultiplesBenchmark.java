@@ -0,0 +1,132 @@
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Compares how long each approach to Project Euler Problem 1 takes to sum the
+ * multiples of 3 or 5 for maximums from 10<sup>3</sup> to 10<sup>12</sup>, and
+ * whether it gets the right answer. {@link Problem1a} and {@link Problem1c} use
+ * the same loop as {@link Problem1b#sumMultiples(int)}, so that column stands
+ * in for all three. The older approaches are only run while the maximum fits
+ * in an {@code int} and their memory use is reasonable.
+ *
+ * <p>
+ * A result marked with {@code *} was wrong, since an {@code int} sum
+ * overflows once the maximum is around 10<sup>5</sup>.
+ *
+ * <p>
+ * Then compares the same approaches for 50 values, where inclusion-exclusion
+ * has far more terms to add, including the {@link SegmentedSieve} with one
+ * thread and with every processor.
+ *
+ * @see MultiplesEngine
+ */
+public class MultiplesBenchmark {
+
+	/** The largest maximum for the loop in {@link Problem1b}. */
+	private static final long LOOP_MAX = 1_000_000_000;
+
+	/** The largest maximum for the sets in {@link Problem1d} and {@link Problem1e}. */
+	private static final long SET_MAX = 10_000_000;
+
+	/** The largest maximum for the {@link SegmentedSieve}. */
+	private static final long SIEVE_MAX = 1_000_000_000;
+
+	/** Roughly how many nanoseconds to spend timing each measurement. */
+	private static final long BUDGET = 200_000_000;
+
+	/**
+	 * Returns the average time of an approach as text, marked if the answer was
+	 * wrong, or blank if the approach was not run.
+	 *
+	 * @param run whether to run the approach
+	 * @param sum the approach to time
+	 * @param expected the right answer
+	 * @return the average milliseconds as text
+	 */
+	private static String time(boolean run, Supplier<? extends Number> sum, BigInteger expected) {
+		if (!run) {
+			return "-";
+		}
+
+		// warm up and check the answer
+		boolean right = new BigInteger(sum.get().toString()).equals(expected);
+
+		long start = System.nanoTime();
+		long elapsed = 0;
+		int runs = 0;
+
+		while (elapsed < BUDGET) {
+			sum.get();
+			runs++;
+			elapsed = System.nanoTime() - start;
+		}
+
+		return String.format("%.4f%s", elapsed / 1e6 / runs, right ? " " : "*");
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		List<Integer> values = List.of(3, 5);
+		long[] divisors = { 3, 5 };
+
+		System.out.println("Average milliseconds to sum multiples of 3 or 5");
+		System.out.printf("%17s %14s %14s %14s %14s %14s%n", "Max", "Problem1b", "Problem1d", "Problem1e", "Sieve",
+				"Engine");
+
+		for (long power = 1000; power <= 1_000_000_000_000L; power *= 10) {
+			long max = power;
+			int small = (int) Math.min(max, Integer.MAX_VALUE);
+
+			// the sum of 3 and 5 minus 15 checks the engine
+			BigInteger expected = MultiplesEngine.series(3, max)
+					.add(MultiplesEngine.series(5, max))
+					.subtract(MultiplesEngine.series(15, max));
+
+			if (!MultiplesEngine.sumMultiples(values, max).equals(expected)) {
+				throw new IllegalStateException("Wrong sum for " + max);
+			}
+
+			System.out.printf("%,17d %14s %14s %14s %14s %14s%n", max,
+					time(max <= LOOP_MAX, () -> Problem1b.sumMultiples(small), expected),
+					time(max <= SET_MAX, () -> Problem1d.sumMultiples(values, small), expected),
+					time(max <= SET_MAX, () -> Problem1e.sumMultiples(values, small), expected),
+					time(max <= SIEVE_MAX, () -> SegmentedSieve.sumMultiples(divisors, max), expected),
+					time(true, () -> MultiplesEngine.sumMultiples(divisors, max), expected));
+		}
+
+		// dozens of values, none a multiple of another
+		long[] many = LongStream.range(50, 100).toArray();
+		List<Integer> boxed = LongStream.of(many).mapToObj(i -> (int) i).collect(Collectors.toList());
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		System.out.printf("%nAverage milliseconds to sum multiples of 50 to 99 with %d processors%n", threads);
+		System.out.printf("%17s %14s %14s %14s %14s%n", "Max", "Problem1d", "Sieve, 1", "Sieve, " + threads,
+				"Engine");
+
+		ForkJoinPool single = new ForkJoinPool(1);
+
+		try {
+			for (long power = 1000; power <= SIEVE_MAX; power *= 10) {
+				long max = power;
+				BigInteger expected = SegmentedSieve.sumMultiples(many, max, single);
+
+				System.out.printf("%,17d %14s %14s %14s %14s%n", max,
+						time(max <= SET_MAX / 10, () -> Problem1d.sumMultiples(boxed, (int) max), expected),
+						time(true, () -> SegmentedSieve.sumMultiples(many, max, single), expected),
+						time(true, () -> SegmentedSieve.sumMultiples(many, max), expected),
+						time(true, () -> MultiplesEngine.sumMultiples(many, max), expected));
+			}
+		}
+		finally {
+			single.shutdown();
+		}
+	}
+}
@@ -0,0 +1,321 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Sums the multiples of any set of values without visiting every multiple.
+ * Where {@link Problem1d} and {@link Problem1e} collect every multiple into a
+ * set first, this adds up each value's multiples with the formula for an
+ * arithmetic series, and then uses inclusion-exclusion to undo the numbers
+ * counted more than once. For 3 and 5, that is the multiples of 3 plus the
+ * multiples of 5 minus the multiples of 15.
+ *
+ * <p>
+ * With k values, there are at most 2<sup>k</sup> terms, one for the least
+ * common multiple of each subset of values. Any subset whose least common
+ * multiple is not below the maximum adds nothing, so neither does any larger
+ * subset, and those are skipped. When there are still so many terms that
+ * marking every multiple would be faster, this falls back to a
+ * {@link SegmentedSieve}.
+ *
+ * <p>
+ * The results are {@link BigInteger} values since the sum for a maximum of
+ * only a few billion no longer fits in a {@code long}.
+ */
+public class MultiplesEngine {
+
+	/** The largest maximum whose sum always fits in a {@code long}. */
+	public static final long LONG_MAX = 4_294_967_295L;
+
+	/** Roughly how many numbers can be sieved in the time of one step. */
+	private static final long SIEVE_RATIO = 64;
+
+	/** The fewest steps to try before sieving instead. */
+	private static final long MIN_STEPS = 1 << 10;
+
+	/** Prevents instantiating this class. */
+	private MultiplesEngine() {
+	}
+
+	/**
+	 * Sums all multiples of the values less than the maximum, counting numbers
+	 * that are multiples of several values once.
+	 *
+	 * @param values multiples to calculate
+	 * @param max maximum value
+	 * @return sum of multiples of {@code values} less than {@code max}
+	 * @throws IllegalArgumentException if any value or the maximum is negative
+	 */
+	public static BigInteger sumMultiples(Collection<Integer> values, long max) {
+		return sumMultiples(values.stream().mapToLong(Integer::longValue).toArray(), max);
+	}
+
+	/**
+	 * Sums all multiples of the values less than the maximum, counting numbers
+	 * that are multiples of several values once.
+	 *
+	 * @param values multiples to calculate
+	 * @param max maximum value
+	 * @return sum of multiples of {@code values} less than {@code max}
+	 * @throws IllegalArgumentException if any value or the maximum is negative
+	 */
+	public static BigInteger sumMultiples(long[] values, long max) {
+		long[] divisors = divisors(values, max);
+		long limit = max <= SegmentedSieve.MAX ? Math.max(MIN_STEPS, max / SIEVE_RATIO) : Long.MAX_VALUE;
+		Terms terms = new Terms(divisors, max, limit);
+
+		if (terms.sum()) {
+			return terms.total();
+		}
+
+		return SegmentedSieve.sumMultiples(divisors, max);
+	}
+
+	/**
+	 * Sums all multiples of the values less than the maximum using only
+	 * {@code long} math, which is exact for any maximum up to
+	 * {@link #LONG_MAX}.
+	 *
+	 * @param values multiples to calculate
+	 * @param max maximum value
+	 * @return sum of multiples of {@code values} less than {@code max}
+	 * @throws IllegalArgumentException if any value or the maximum is negative
+	 * @throws ArithmeticException if the maximum is over {@link #LONG_MAX}
+	 */
+	public static long sumMultiplesExact(long[] values, long max) {
+		if (max > LONG_MAX) {
+			throw new ArithmeticException("Sum may not fit in a long for a maximum of " + max);
+		}
+
+		return sumMultiples(values, max).longValueExact();
+	}
+
+	/**
+	 * Checks the values and removes the ones that cannot change the sum: zero,
+	 * repeats, values not below the maximum, and multiples of other values.
+	 *
+	 * @param values multiples to calculate
+	 * @param max maximum value
+	 * @return the remaining values in increasing order
+	 * @throws IllegalArgumentException if any value or the maximum is negative
+	 */
+	static long[] divisors(long[] values, long max) {
+		if (max < 0) {
+			throw new IllegalArgumentException("Maximum must be non-negative.");
+		}
+
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		if (sorted.length > 0 && sorted[0] < 0) {
+			throw new IllegalArgumentException("All values must be non-negative.");
+		}
+
+		long[] divisors = new long[sorted.length];
+		int count = 0;
+
+		outer: for (long value : sorted) {
+			if (value == 0 || value >= max) {
+				continue;
+			}
+
+			// also skips repeats, since a value is a multiple of itself
+			for (int i = 0; i < count; i++) {
+				if (value % divisors[i] == 0) {
+					continue outer;
+				}
+			}
+
+			divisors[count++] = value;
+		}
+
+		return Arrays.copyOf(divisors, count);
+	}
+
+	/**
+	 * Returns the sum of the multiples of a single value less than the maximum,
+	 * or {@code value * (1 + 2 + ... + n)} where {@code n} is the number of
+	 * multiples.
+	 *
+	 * @param value the value, greater than zero
+	 * @param max maximum value
+	 * @return sum of multiples of {@code value} less than {@code max}
+	 */
+	public static BigInteger series(long value, long max) {
+		long n = max <= 0 ? 0 : (max - 1) / value;
+
+		return BigInteger.valueOf(n)
+				.multiply(BigInteger.valueOf(n + 1))
+				.shiftRight(1)
+				.multiply(BigInteger.valueOf(value));
+	}
+
+	/**
+	 * Returns the sum of the multiples of a single value less than the maximum,
+	 * modulo 2<sup>64</sup>. That is the exact answer when it fits.
+	 *
+	 * @param value the value, greater than zero
+	 * @param max maximum value
+	 * @return sum of multiples of {@code value} less than {@code max}
+	 */
+	private static long wrappedSeries(long value, long max) {
+		long n = (max - 1) / value;
+
+		// divide the even one by 2 first, so nothing is lost to overflow
+		long triangle = n % 2 == 0 ? (n / 2) * (n + 1) : n * ((n + 1) / 2);
+		return triangle * value;
+	}
+
+	/**
+	 * Returns the least common multiple of two positive values, or -1 if it is
+	 * not below the maximum.
+	 *
+	 * @param a the first value
+	 * @param b the second value
+	 * @param max maximum value
+	 * @return least common multiple, or -1 if not below {@code max}
+	 */
+	private static long lcm(long a, long b, long max) {
+		long x = a;
+		long y = b;
+
+		while (y != 0) {
+			long r = x % y;
+			x = y;
+			y = r;
+		}
+
+		long reduced = a / x;
+		return reduced >= (max - 1) / b + 1 ? -1 : reduced * b;
+	}
+
+	/**
+	 * Adds up the inclusion-exclusion terms for a set of divisors, one term
+	 * for the least common multiple of each subset that is below the maximum.
+	 */
+	private static class Terms {
+
+		/** The sorted divisors, none a multiple of another. */
+		private final long[] divisors;
+
+		/** The maximum value. */
+		private final long max;
+
+		/** The most steps to take before giving up. */
+		private final long limit;
+
+		/** The number of steps taken, counting terms and multiples found. */
+		private long count;
+
+		/** The total so far if using {@code long} math, modulo 2^64. */
+		private long wrapped;
+
+		/** The total so far if using {@link BigInteger} math. */
+		private BigInteger total;
+
+		/**
+		 * Initializes the terms.
+		 *
+		 * @param divisors the sorted divisors, none a multiple of another
+		 * @param max the maximum value
+		 * @param limit the most steps to take before giving up
+		 */
+		private Terms(long[] divisors, long max, long limit) {
+			this.divisors = divisors;
+			this.max = max;
+			this.limit = limit;
+			this.count = 0;
+			this.wrapped = 0;
+			this.total = BigInteger.ZERO;
+		}
+
+		/**
+		 * Adds up all of the terms.
+		 *
+		 * @return true if finished, or false if there were too many steps
+		 */
+		private boolean sum() {
+			for (int i = 0; i < divisors.length; i++) {
+				if (!add(i, divisors[i], 1)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Adds the term for a subset, and then the terms for every subset made
+		 * by adding one of the later divisors to it.
+		 *
+		 * @param last the index of the last divisor in the subset
+		 * @param lcm the least common multiple of the subset
+		 * @param sign 1 for subsets of odd size, -1 for subsets of even size
+		 * @return true if finished, or false if there were too many steps
+		 */
+		private boolean add(int last, long lcm, int sign) {
+			if (++count > limit) {
+				return false;
+			}
+
+			// the sum for any maximum up to LONG_MAX fits, so wrapping is safe
+			if (max <= LONG_MAX) {
+				wrapped += sign * wrappedSeries(lcm, max);
+			}
+			else {
+				BigInteger term = series(lcm, max);
+				total = sign > 0 ? total.add(term) : total.subtract(term);
+			}
+
+			for (int i = last + 1; i < divisors.length; i++) {
+				if (++count > limit) {
+					return false;
+				}
+
+				long next = lcm(lcm, divisors[i], max);
+
+				if (next > 0 && !add(i, next, -sign)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Returns the total of the terms added.
+		 *
+		 * @return the total
+		 */
+		private BigInteger total() {
+			return max <= LONG_MAX ? BigInteger.valueOf(wrapped) : total;
+		}
+	}
+
+	/**
+	 * Prints the sum of multiples less than a maximum value to the console. All
+	 * values must be provided via command-line parameters.
+	 *
+	 * @param args the first value specifies the maximum and all following
+	 *        values specify the multiples
+	 */
+	public static void main(String[] args) {
+		try {
+			long max = Long.parseLong(args[0]);
+			long[] values = new long[args.length - 1];
+
+			for (int i = 1; i < args.length; i++) {
+				values[i - 1] = Long.parseLong(args[i]);
+			}
+
+			BigInteger result = sumMultiples(values, max);
+			System.out.printf("The sum of multiples of %s less than %d is %d.%n", Arrays.toString(values), max, result);
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			System.err.println("At least two values must be provided.");
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println("All values must be non-negative integers.");
+		}
+	}
+}
@@ -0,0 +1,175 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sums all multiples of a set of values less than a maximum by marking them in
+ * a bitset, one segment at a time. Each segment is small enough to stay in the
+ * processor cache, and segments are marked and summed independently by the
+ * tasks of a {@link ForkJoinPool}. Each task reuses a single segment, so the
+ * memory used depends on the number of threads and not on the maximum.
+ *
+ * <p>
+ * Unlike {@link MultiplesEngine#sumMultiples(long[], long)}, which slows down
+ * as more values are added, this takes time in proportion to the maximum and
+ * the number of multiples to mark. That makes it the better choice when there
+ * are dozens of values and the maximum is not too large.
+ *
+ * @see MultiplesEngine
+ */
+@SuppressWarnings("serial")
+public class SegmentedSieve extends RecursiveTask<BigInteger> {
+
+	/** The numbers in each segment, fitting 32 KB of bits. */
+	public static final int SEGMENT = 1 << 18;
+
+	/** The largest maximum that may be sieved, so each segment sum fits in a long. */
+	public static final long MAX = 1L << 40;
+
+	/** Roughly how many tasks to create per thread. */
+	private static final int TASKS_PER_THREAD = 8;
+
+	/** The bits of a long whose index has bit k set, to sum bit indexes. */
+	private static final long[] INDEX_BITS = {
+			0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+			0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+	};
+
+	/** The sorted divisors, none a multiple of another. */
+	private final long[] divisors;
+
+	/** The maximum value. */
+	private final long max;
+
+	/** The first segment to sum. */
+	private final long first;
+
+	/** The segment after the last to sum. */
+	private final long last;
+
+	/** The most segments a task sums without splitting. */
+	private final long grain;
+
+	/**
+	 * Initializes a task to sum a range of segments.
+	 *
+	 * @param divisors the sorted divisors, none a multiple of another
+	 * @param max the maximum value
+	 * @param first the first segment to sum
+	 * @param last the segment after the last to sum
+	 * @param grain the most segments to sum without splitting
+	 */
+	private SegmentedSieve(long[] divisors, long max, long first, long last, long grain) {
+		this.divisors = divisors;
+		this.max = max;
+		this.first = first;
+		this.last = last;
+		this.grain = grain;
+	}
+
+	@Override
+	protected BigInteger compute() {
+		if (last - first <= grain) {
+			long[] words = new long[SEGMENT / Long.SIZE];
+			BigInteger total = BigInteger.ZERO;
+
+			for (long segment = first; segment < last; segment++) {
+				total = total.add(BigInteger.valueOf(sum(words, segment * SEGMENT)));
+			}
+
+			return total;
+		}
+
+		long middle = first + (last - first) / 2;
+		SegmentedSieve left = new SegmentedSieve(divisors, max, first, middle, grain);
+		SegmentedSieve right = new SegmentedSieve(divisors, max, middle, last, grain);
+
+		left.fork();
+		BigInteger total = right.compute();
+		return total.add(left.join());
+	}
+
+	/**
+	 * Marks the multiples in one segment and sums them.
+	 *
+	 * @param words the bits to reuse for the segment
+	 * @param start the first number in the segment
+	 * @return sum of the multiples in the segment
+	 */
+	private long sum(long[] words, long start) {
+		int length = (int) Math.min(SEGMENT, max - start);
+		Arrays.fill(words, 0);
+
+		for (long divisor : divisors) {
+			// first multiple in the segment, skipping 0 since it adds nothing
+			long multiple = Math.max(divisor, (start + divisor - 1) / divisor * divisor);
+
+			for (long i = multiple - start; i < length; i += divisor) {
+				words[(int) (i >>> 6)] |= 1L << i;
+			}
+		}
+
+		long sum = 0;
+
+		for (int w = 0; w < words.length; w++) {
+			long word = words[w];
+
+			if (word != 0) {
+				// each set bit adds its index within the word to the word base
+				long indexes = 0;
+
+				for (int k = 0; k < INDEX_BITS.length; k++) {
+					indexes += (long) Long.bitCount(word & INDEX_BITS[k]) << k;
+				}
+
+				sum += Long.bitCount(word) * (start + ((long) w << 6)) + indexes;
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Sums all multiples of the values less than the maximum, counting numbers
+	 * that are multiples of several values once.
+	 *
+	 * @param values multiples to calculate
+	 * @param max maximum value
+	 * @param pool the pool to sieve with
+	 * @return sum of multiples of {@code values} less than {@code max}
+	 * @throws IllegalArgumentException if any value or the maximum is negative,
+	 *         or if the maximum is over {@link #MAX}
+	 */
+	public static BigInteger sumMultiples(long[] values, long max, ForkJoinPool pool) {
+		if (max > MAX) {
+			throw new IllegalArgumentException("Maximum must be at most " + MAX + " to sieve.");
+		}
+
+		long[] divisors = MultiplesEngine.divisors(values, max);
+		long segments = (max + SEGMENT - 1) / SEGMENT;
+
+		if (divisors.length == 0) {
+			return BigInteger.ZERO;
+		}
+
+		long grain = Math.max(1, segments / ((long) pool.getParallelism() * TASKS_PER_THREAD));
+		return pool.invoke(new SegmentedSieve(divisors, max, 0, segments, grain));
+	}
+
+	/**
+	 * Sums all multiples of the values less than the maximum using the common
+	 * pool.
+	 *
+	 * @param values multiples to calculate
+	 * @param max maximum value
+	 * @return sum of multiples of {@code values} less than {@code max}
+	 * @throws IllegalArgumentException if any value or the maximum is negative,
+	 *         or if the maximum is over {@link #MAX}
+	 *
+	 * @see #sumMultiples(long[], long, ForkJoinPool)
+	 */
+	public static BigInteger sumMultiples(long[] values, long max) {
+		return sumMultiples(values, max, ForkJoinPool.commonPool());
+	}
+}
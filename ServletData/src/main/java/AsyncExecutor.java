@@ -0,0 +1,614 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * Runs servlet work asynchronously so the Jetty thread handling a request can
+ * go back to accepting other requests while slow work (like database queries)
+ * happens. Uses the {@link AsyncContext} added in Servlet 3.0, which requires
+ * the servlet to be added to Jetty with async support turned on.
+ *
+ * <p>
+ * Work runs on a dedicated bounded thread pool, or on virtual threads if the
+ * Java runtime supports them. Requests that cannot be queued or that take too
+ * long are answered with a 503 (Service Unavailable) error. Work that times
+ * out is interrupted, and anything it writes afterwards is discarded instead
+ * of reaching a response Jetty may have already recycled.
+ *
+ * @see org.eclipse.jetty.servlet.ServletHolder#setAsyncSupported(boolean)
+ */
+public class AsyncExecutor implements AutoCloseable {
+
+	/** The logger to use for this class. */
+	private static Logger log = Log.getRootLogger();
+
+	/** The default number of worker threads. */
+	public static final int DEFAULT_THREADS = 32;
+
+	/** The default number of requests that may wait for a worker thread. */
+	public static final int DEFAULT_QUEUE = 1000;
+
+	/** The default number of milliseconds before an async request times out. */
+	public static final long DEFAULT_TIMEOUT = 10000;
+
+	/** The work to run for each request. */
+	private final ExecutorService executor;
+
+	/** Milliseconds before an async request times out. */
+	private final long timeout;
+
+	/**
+	 * Servlet work that may throw the same exceptions as doGet or doPost.
+	 */
+	@FunctionalInterface
+	public static interface ServletTask {
+
+		/**
+		 * Handles the request.
+		 *
+		 * @param request the http servlet request
+		 * @param response the http servlet response
+		 * @throws ServletException if unable to handle the request
+		 * @throws IOException if an IO error occurs
+		 */
+		public void run(HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException;
+	}
+
+	/**
+	 * Initializes an executor with the default settings.
+	 */
+	public AsyncExecutor() {
+		this(DEFAULT_THREADS, DEFAULT_QUEUE, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Initializes an executor. Uses virtual threads if available, otherwise a
+	 * fixed pool of threads with a bounded queue.
+	 *
+	 * @param threads the number of worker threads (ignored for virtual threads)
+	 * @param queue the number of requests that may wait for a worker thread
+	 * @param timeout milliseconds before an async request times out
+	 */
+	public AsyncExecutor(int threads, int queue, long timeout) {
+		this(newExecutor(threads, queue), timeout);
+	}
+
+	/**
+	 * Initializes an executor that runs work using the provided executor service.
+	 *
+	 * @param executor the executor service to run work
+	 * @param timeout milliseconds before an async request times out
+	 */
+	public AsyncExecutor(ExecutorService executor, long timeout) {
+		this.executor = executor;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Creates an executor that uses virtual threads if the Java runtime supports
+	 * them, or otherwise a bounded thread pool.
+	 *
+	 * @param threads the number of worker threads (ignored for virtual threads)
+	 * @param queue the number of requests that may wait for a worker thread
+	 * @return the executor service
+	 */
+	public static ExecutorService newExecutor(int threads, int queue) {
+		try {
+			// compiled for an older Java release, so must look this up at runtime
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			log.info("Using virtual threads for async requests.");
+			return (ExecutorService) virtual.invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			log.info("Using {} platform threads for async requests.", threads);
+			return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queue));
+		}
+	}
+
+	/**
+	 * Runs the servlet work asynchronously if the request supports it, or on
+	 * the current thread otherwise. The response is completed once the work
+	 * finishes, fails, or times out.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @param task the servlet work to run
+	 * @throws ServletException if unable to handle a synchronous request
+	 * @throws IOException if an IO error occurs
+	 */
+	public void execute(HttpServletRequest request, HttpServletResponse response, ServletTask task)
+			throws ServletException, IOException {
+		if (!request.isAsyncSupported()) {
+			task.run(request, response);
+			return;
+		}
+
+		// Jetty resets the request paths once the original dispatch returns
+		HttpServletRequest saved = new SavedPathRequest(request);
+		AsyncContext context = request.startAsync(saved, response);
+		context.setTimeout(timeout);
+
+		// whoever finishes first (work, timeout, or error) completes the response
+		GuardedResponse guarded = new GuardedResponse(response);
+
+		context.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				synchronized (guarded) {
+					if (guarded.finish()) {
+						log.warn("Request timed out after {}ms.", timeout);
+						sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+						context.complete();
+					}
+				}
+
+				guarded.cancel();
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				log.warn(event.getThrowable());
+
+				synchronized (guarded) {
+					if (guarded.finish()) {
+						context.complete();
+					}
+				}
+
+				guarded.cancel();
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+				synchronized (guarded) {
+					guarded.finish();
+				}
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+				// not used
+			}
+		});
+
+		try {
+			Future<?> work = executor.submit(() -> {
+				try {
+					task.run(saved, guarded);
+				}
+				catch (ServletException | IOException | RuntimeException e) {
+					synchronized (guarded) {
+						if (!guarded.isFinished()) {
+							log.warn(e);
+							sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+						}
+					}
+				}
+				finally {
+					synchronized (guarded) {
+						if (guarded.finish()) {
+							context.complete();
+						}
+					}
+				}
+			});
+
+			guarded.setWork(work);
+		}
+		catch (RejectedExecutionException e) {
+			log.warn("Too many requests waiting; rejecting request.");
+
+			synchronized (guarded) {
+				if (guarded.finish()) {
+					sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					context.complete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends an error response if nothing has been sent to the client yet.
+	 *
+	 * @param response the http servlet response
+	 * @param status the http status code
+	 */
+	private static void sendError(HttpServletResponse response, int status) {
+		if (!response.isCommitted()) {
+			try {
+				response.sendError(status);
+			}
+			catch (IOException e) {
+				log.ignore(e);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the request paths from the original dispatch, so they are still
+	 * available after the work moves to another thread.
+	 */
+	private static class SavedPathRequest extends HttpServletRequestWrapper {
+
+		/** The servlet path from the original dispatch. */
+		private final String servletPath;
+
+		/** The path info from the original dispatch. */
+		private final String pathInfo;
+
+		/** The context path from the original dispatch. */
+		private final String contextPath;
+
+		/**
+		 * Saves the paths of the request.
+		 *
+		 * @param request the request to wrap
+		 */
+		public SavedPathRequest(HttpServletRequest request) {
+			super(request);
+			this.servletPath = request.getServletPath();
+			this.pathInfo = request.getPathInfo();
+			this.contextPath = request.getContextPath();
+		}
+
+		@Override
+		public String getServletPath() {
+			return servletPath;
+		}
+
+		@Override
+		public String getPathInfo() {
+			return pathInfo;
+		}
+
+		@Override
+		public String getContextPath() {
+			return contextPath;
+		}
+	}
+
+	/**
+	 * Passes output from the servlet work through to the response only until
+	 * the request finishes. Every write holds the lock on this object and checks
+	 * whether the request already finished, and the timeout and completion hold
+	 * the same lock, so work that runs too long can never write into a response
+	 * after it was completed. Late writes throw an {@link IOException}, or are
+	 * ignored by methods that cannot throw one.
+	 */
+	private static class GuardedResponse extends HttpServletResponseWrapper {
+
+		/** Whether the request finished. Guarded by this object. */
+		private boolean finished;
+
+		/** The running work, if submitted. */
+		private volatile Future<?> work;
+
+		/** The writer given to the work, if requested. */
+		private PrintWriter writer;
+
+		/** The output stream given to the work, if requested. */
+		private ServletOutputStream output;
+
+		/**
+		 * Wraps the response.
+		 *
+		 * @param response the response to wrap
+		 */
+		public GuardedResponse(HttpServletResponse response) {
+			super(response);
+			this.finished = false;
+		}
+
+		/**
+		 * Marks the request finished.
+		 *
+		 * @return true if this call finished the request, false if it already was
+		 */
+		public synchronized boolean finish() {
+			boolean first = !finished;
+			finished = true;
+			return first;
+		}
+
+		/**
+		 * Returns whether the request finished.
+		 *
+		 * @return true if the request finished
+		 */
+		public synchronized boolean isFinished() {
+			return finished;
+		}
+
+		/**
+		 * Remembers the running work, and cancels it if the request already
+		 * finished.
+		 *
+		 * @param work the running work
+		 */
+		public void setWork(Future<?> work) {
+			this.work = work;
+
+			if (isFinished()) {
+				cancel();
+			}
+		}
+
+		/**
+		 * Interrupts the work if it is still running.
+		 */
+		public void cancel() {
+			Future<?> running = work;
+
+			if (running != null) {
+				running.cancel(true);
+			}
+		}
+
+		/**
+		 * Throws an exception if the request finished. Must hold the lock.
+		 *
+		 * @throws IOException if the request finished
+		 */
+		private void check() throws IOException {
+			if (finished) {
+				throw new IOException("Request already finished.");
+			}
+		}
+
+		@Override
+		public synchronized PrintWriter getWriter() throws IOException {
+			check();
+
+			if (writer == null) {
+				writer = new PrintWriter(new GuardedWriter(super.getWriter()));
+			}
+
+			return writer;
+		}
+
+		@Override
+		public synchronized ServletOutputStream getOutputStream() throws IOException {
+			check();
+
+			if (output == null) {
+				output = new GuardedOutputStream(super.getOutputStream());
+			}
+
+			return output;
+		}
+
+		@Override
+		public synchronized void sendError(int sc, String msg) throws IOException {
+			check();
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public synchronized void sendError(int sc) throws IOException {
+			check();
+			super.sendError(sc);
+		}
+
+		@Override
+		public synchronized void sendRedirect(String location) throws IOException {
+			check();
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public synchronized void flushBuffer() throws IOException {
+			check();
+			super.flushBuffer();
+		}
+
+		@Override
+		public synchronized void setStatus(int sc) {
+			if (!finished) {
+				super.setStatus(sc);
+			}
+		}
+
+		@Override
+		public synchronized void setHeader(String name, String value) {
+			if (!finished) {
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public synchronized void addHeader(String name, String value) {
+			if (!finished) {
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public synchronized void setDateHeader(String name, long date) {
+			if (!finished) {
+				super.setDateHeader(name, date);
+			}
+		}
+
+		@Override
+		public synchronized void setIntHeader(String name, int value) {
+			if (!finished) {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public synchronized void addCookie(Cookie cookie) {
+			if (!finished) {
+				super.addCookie(cookie);
+			}
+		}
+
+		@Override
+		public synchronized void setContentType(String type) {
+			if (!finished) {
+				super.setContentType(type);
+			}
+		}
+
+		@Override
+		public synchronized void setCharacterEncoding(String charset) {
+			if (!finished) {
+				super.setCharacterEncoding(charset);
+			}
+		}
+
+		@Override
+		public synchronized void reset() {
+			if (!finished) {
+				super.reset();
+			}
+		}
+
+		@Override
+		public synchronized void resetBuffer() {
+			if (!finished) {
+				super.resetBuffer();
+			}
+		}
+
+		/**
+		 * Writes characters only while the request has not finished.
+		 */
+		private class GuardedWriter extends Writer {
+
+			/** The response writer. */
+			private final Writer out;
+
+			/**
+			 * Wraps the response writer.
+			 *
+			 * @param out the response writer
+			 */
+			public GuardedWriter(Writer out) {
+				this.out = out;
+			}
+
+			@Override
+			public void write(char[] buffer, int offset, int length) throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.write(buffer, offset, length);
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.flush();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.close();
+				}
+			}
+		}
+
+		/**
+		 * Writes bytes only while the request has not finished.
+		 */
+		private class GuardedOutputStream extends ServletOutputStream {
+
+			/** The response output stream. */
+			private final ServletOutputStream out;
+
+			/**
+			 * Wraps the response output stream.
+			 *
+			 * @param out the response output stream
+			 */
+			public GuardedOutputStream(ServletOutputStream out) {
+				this.out = out;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.write(b);
+				}
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length) throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.write(buffer, offset, length);
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.flush();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				synchronized (GuardedResponse.this) {
+					check();
+					out.close();
+				}
+			}
+
+			@Override
+			public boolean isReady() {
+				return out.isReady();
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) {
+				out.setWriteListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting new work and waits briefly for running work to finish.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+
+		try {
+			executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Compares how many requests per second a Jetty server with a small thread
+ * pool can handle when slow servlet work (like a database query) blocks the
+ * Jetty threads versus when it is handed off to an {@link AsyncExecutor}.
+ *
+ * <p>
+ * Each configuration runs on its own server and is labeled with its total
+ * thread budget: Jetty threads plus worker threads. The async servlet does the
+ * same blocking work, just on a different thread, so with the same total budget
+ * it cannot do more blocking work at once than the sync servlet. Any gain comes
+ * from the extra worker threads, which the last two configurations compare
+ * against a sync server given the same total number of threads.
+ */
+public class AsyncLoadTest {
+
+	/** The hard-coded port to run this server. */
+	public static final int PORT = 8081;
+
+	/** The thread budget: maximum Jetty threads (some are used for accepting). */
+	public static final int JETTY_THREADS = 12;
+
+	/** The worker threads used by the larger async configuration. */
+	public static final int WORKER_THREADS = AsyncExecutor.DEFAULT_THREADS;
+
+	/** Milliseconds each request pretends to wait on a database. */
+	public static final int LATENCY = 50;
+
+	/** Number of clients making requests at the same time. */
+	public static final int CLIENTS = 64;
+
+	/** Number of requests each client makes. */
+	public static final int REQUESTS = 10;
+
+	/**
+	 * Pretends to wait on a database before producing a small response.
+	 */
+	private static class SlowServlet extends HttpServlet {
+
+		/** Class version for serialization, in [YEAR][TERM] format (unused). */
+		private static final long serialVersionUID = 202040;
+
+		/** Runs the work asynchronously if not null. */
+		private final AsyncExecutor async;
+
+		/**
+		 * Initializes the servlet.
+		 *
+		 * @param async the executor for async requests, or null to block
+		 */
+		public SlowServlet(AsyncExecutor async) {
+			this.async = async;
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException {
+			if (async == null) {
+				respond(request, response);
+			}
+			else {
+				async.execute(request, response, SlowServlet::respond);
+			}
+		}
+
+		/**
+		 * Waits and then outputs a short response.
+		 *
+		 * @param request the http servlet request
+		 * @param response the http servlet response
+		 * @throws IOException if an IO error occurs
+		 */
+		private static void respond(HttpServletRequest request, HttpServletResponse response)
+				throws IOException {
+			try {
+				Thread.sleep(LATENCY);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			response.setContentType("text/plain");
+			response.setStatus(HttpServletResponse.SC_OK);
+
+			PrintWriter out = response.getWriter();
+			out.println("Hello, " + Thread.currentThread().getName());
+		}
+	}
+
+	/**
+	 * Sends requests from several clients at once and outputs the throughput.
+	 *
+	 * @param name the name to output
+	 * @param path the servlet path to request
+	 * @throws Exception if unable to make requests
+	 */
+	private static void benchmark(String name, String path) throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		HttpClient client = HttpClient.newHttpClient();
+		URI uri = URI.create("http://localhost:" + PORT + path);
+
+		LongAdder ok = new LongAdder();
+		LongAdder failed = new LongAdder();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		Instant start = Instant.now();
+
+		for (int i = 0; i < CLIENTS; i++) {
+			futures.add(CompletableFuture.runAsync(() -> {
+				for (int j = 0; j < REQUESTS; j++) {
+					try {
+						HttpRequest request = HttpRequest.newBuilder(uri).build();
+						HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+						if (response.statusCode() == HttpServletResponse.SC_OK) {
+							ok.increment();
+						}
+						else {
+							failed.increment();
+						}
+					}
+					catch (IOException | InterruptedException e) {
+						failed.increment();
+					}
+				}
+			}, clients));
+		}
+
+		CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		Duration elapsed = Duration.between(start, Instant.now());
+		clients.shutdown();
+
+		double seconds = elapsed.toMillis() / 1000.0;
+		System.out.printf("%-40s %4d ok, %3d failed in %6.2f s (%7.1f requests/s)%n",
+				name, ok.sum(), failed.sum(), seconds, ok.sum() / seconds);
+	}
+
+	/**
+	 * Starts a server with the given threads, warms it up, runs the load test,
+	 * and stops the server.
+	 *
+	 * @param name the name to output
+	 * @param jetty the maximum number of Jetty threads
+	 * @param workers the number of worker threads, or 0 to block Jetty threads
+	 * @throws Exception if unable to start the server or make requests
+	 */
+	private static void run(String name, int jetty, int workers) throws Exception {
+		QueuedThreadPool threads = new QueuedThreadPool(jetty, 2);
+		Server server = new Server(threads);
+
+		ServerConnector connector = new ServerConnector(server, 1, 1);
+		connector.setPort(PORT);
+		server.addConnector(connector);
+
+		// a fixed pool, so the thread count is the same even with virtual threads
+		AsyncExecutor async = workers == 0 ? null
+				: new AsyncExecutor(new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+						new LinkedBlockingQueue<>()), AsyncExecutor.DEFAULT_TIMEOUT);
+
+		ServletHandler handler = new ServletHandler();
+		handler.addServletWithMapping(MessageServer.asyncHolder(new SlowServlet(async)), "/slow");
+		server.setHandler(handler);
+		server.start();
+
+		try {
+			benchmark("Warmup", "/slow");
+			benchmark(String.format("%s (%d + %d = %d)", name, jetty, workers, jetty + workers), "/slow");
+		}
+		finally {
+			server.stop();
+
+			if (async != null) {
+				async.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs the load test for each configuration.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to start the server or make requests
+	 */
+	public static void main(String[] args) throws Exception {
+		System.out.printf("%d clients, %d requests each, %d ms latency; threads are Jetty + workers = total%n",
+				CLIENTS, REQUESTS, LATENCY);
+
+		// same total thread budget
+		run("Sync", JETTY_THREADS, 0);
+		run("Async", JETTY_THREADS / 2, JETTY_THREADS / 2);
+
+		// more threads, given to the workers or to Jetty
+		run("Async, more workers", JETTY_THREADS, WORKER_THREADS);
+		run("Sync, more Jetty threads", JETTY_THREADS + WORKER_THREADS, 0);
+	}
+}
@@ -1,20 +1,14 @@
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -35,17 +29,20 @@ public class BulmaMessageServlet extends HttpServlet {
 	/** The logger to use for this servlet. */
 	private static Logger log = Log.getRootLogger();
 
-	/** The thread-safe data structure to use for storing messages. */
-	private final ConcurrentLinkedQueue<String> messages;
+	/** Runs requests asynchronously, or null to run them on the Jetty thread. */
+	private final AsyncExecutor async;
 
-	/** Template for starting HTML (including <head> tag). **/
-	private final String headTemplate;
+	/** The lock-free ring of the most recent messages. */
+	private final MessageRing<String> messages;
 
-	/** Template for ending HTML (including <foot> tag). **/
-	private final String footTemplate;
+	/** Durable log of messages, or null to only keep messages in memory. */
+	private final MessageLog store;
+
+	/** Pre-rendered HTML page, updated when messages change. **/
+	private final PageCache cache;
 
 	/** Template for individual message HTML. **/
-	private final String textTemplate;
+	private final TemplateFile textTemplate;
 
 	/**
 	 * Initializes this message board. Each message board has its own collection
@@ -54,58 +51,95 @@ public class BulmaMessageServlet extends HttpServlet {
 	 * @throws IOException if unable to read templates
 	 */
 	public BulmaMessageServlet() throws IOException {
+		this(null, MessageRing.DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * Initializes this message board, running requests with the provided async
+	 * executor. The servlet must be added with async support turned on.
+	 *
+	 * @param async the executor to run requests or null to run them on the
+	 *        Jetty thread
+	 * @param capacity the number of recent messages to keep
+	 * @param directory where to durably store messages, or null to only keep
+	 *        messages in memory
+	 * @throws IOException if unable to read templates or the message log
+	 */
+	public BulmaMessageServlet(AsyncExecutor async, int capacity, Path directory) throws IOException {
 		super();
-		messages = new ConcurrentLinkedQueue<>();
+		this.async = async;
+		messages = new MessageRing<>(capacity);
+		store = directory == null ? null : new MessageLog(directory, messages);
 
 		// load templates
-		headTemplate = Files.readString(Path.of("html", "bulma-head.html"), StandardCharsets.UTF_8);
-		footTemplate = Files.readString(Path.of("html", "bulma-foot.html"), StandardCharsets.UTF_8);
-		textTemplate = Files.readString(Path.of("html", "bulma-text.html"), StandardCharsets.UTF_8);
+		String headTemplate = Files.readString(Path.of("html", "bulma-head.html"), StandardCharsets.UTF_8);
+		String footTemplate = Files.readString(Path.of("html", "bulma-foot.html"), StandardCharsets.UTF_8);
+		textTemplate = new TemplateFile(Path.of("html", "bulma-text.html"));
+		textTemplate.get(); // fail now if the template is missing
+
+		// messages go between the head and foot
+		String n = System.lineSeparator();
+		cache = new PageCache(headTemplate + n + "${messages}" + n + footTemplate + n, "thread", "updated", "action");
 	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		response.setContentType("text/html");
-		log.info("MessageServlet ID " + this.hashCode() + " handling GET request.");
-
-		// used to substitute values in our templates
-		Map<String, String> values = new HashMap<>();
-		values.put("title", TITLE);
-		values.put("thread", Thread.currentThread().getName());
-		values.put("updated", getDate());
-
-		// setup form
-		values.put("method", "POST");
-		values.put("action", request.getServletPath());
-
-		// generate html from template
-		StringSubstitutor replacer = new StringSubstitutor(values);
-		String head = replacer.replace(headTemplate);
-		String foot = replacer.replace(footTemplate);
-
-		// output generated html
-		PrintWriter out = response.getWriter();
-		out.println(head);
+		if (async == null) {
+			showMessages(request, response);
+		}
+		else {
+			async.execute(request, response, this::showMessages);
+		}
+	}
 
-		if (messages.isEmpty()) {
-			out.printf("    <p>No messages.</p>%n");
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (async == null) {
+			addMessage(request, response);
 		}
 		else {
-			// could be multiple threads, but the data structure handles
-			// synchronization
-			for (String message : messages) {
-				out.println(message);
-			}
+			async.execute(request, response, this::addMessage);
 		}
+	}
 
-		out.println(foot);
-		out.flush();
+	/**
+	 * Outputs the message board.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @throws ServletException if unable to handle the request
+	 * @throws IOException if an IO error occurs
+	 */
+	private void showMessages(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		log.info("MessageServlet ID " + this.hashCode() + " handling GET request.");
 
-		response.setStatus(HttpServletResponse.SC_OK);
+		// the page is only rendered again after a new message is posted
+		MessageRing.Snapshot<String> snapshot = messages.snapshot();
+		PageCache.Page page = cache.get(snapshot.version(), () -> Map.of(
+				"title", TITLE,
+				"method", "POST",
+				"messages", snapshot.isEmpty() ? "    <p>No messages.</p>" : snapshot.join(System.lineSeparator())));
+
+		// only per-request values are added to the cached page
+		Map<String, String> values = Map.of(
+				"thread", Thread.currentThread().getName(),
+				"updated", getDate(),
+				"action", request.getServletPath());
+
+		PageCache.send(page, values, request, response);
 	}
 
-	@Override
-	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	/**
+	 * Adds a new message to the message board and redirects back to the board.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @throws ServletException if unable to handle the request
+	 * @throws IOException if an IO error occurs
+	 */
+	private void addMessage(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
 		response.setContentType("text/html");
 		log.info("MessageServlet ID " + this.hashCode() + " handling POST request.");
 
@@ -126,24 +160,38 @@ public class BulmaMessageServlet extends HttpServlet {
 		values.put("message", message);
 		values.put("timestamp", getDate());
 
-		// generate html from template
-		StringSubstitutor replacer = new StringSubstitutor(values);
-		String formatted = replacer.replace(textTemplate);
+		// generate html from the compiled template
+		String formatted = textTemplate.get().render(values);
 
-		// keep in mind multiple threads may access at once
-		// but we are using a thread-safe data structure here to avoid any issues
-		messages.add(formatted);
+		if (store == null) {
+			// the ring replaces the oldest message once full, so no size check needed
+			String removed = messages.add(formatted);
 
-		// only keep the latest 5 messages
-		if (messages.size() > 5) {
-			String first = messages.poll();
-			log.info("Removing message: " + first);
+			if (removed != null) {
+				log.info("Removing message: " + removed);
+			}
+		}
+		else {
+			// waits until the message is on disk, sharing the flush with other posts
+			store.append(formatted);
 		}
 
 		response.setStatus(HttpServletResponse.SC_OK);
 		response.sendRedirect(request.getServletPath());
 	}
 
+	/**
+	 * Closes the message log, if any, once the server stops.
+	 */
+	@Override
+	public void destroy() {
+		if (store != null) {
+			store.close();
+		}
+
+		super.destroy();
+	}
+
 	/**
 	 * Returns the date and time in a long format. For example: "12:00 am on
 	 * Saturday, January 01 2000".
@@ -151,8 +199,6 @@ public class BulmaMessageServlet extends HttpServlet {
 	 * @return current date and time
 	 */
 	private static String getDate() {
-		String format = "hh:mm a 'on' EEEE, MMMM dd yyyy";
-		DateFormat formatter = new SimpleDateFormat(format);
-		return formatter.format(new Date());
+		return CachedDateFormat.LONG.format();
 	}
 }
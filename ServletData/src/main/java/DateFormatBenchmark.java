@@ -0,0 +1,73 @@
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * Compares creating a new formatter for every call (like the servlets used to)
+ * to reusing an immutable formatter and to caching the text for each minute
+ * with {@link CachedDateFormat}.
+ */
+public class DateFormatBenchmark {
+
+	/** Number of warmup rounds. */
+	public static final int WARMUP_ROUNDS = 5;
+
+	/** Number of timed rounds. */
+	public static final int TIMED_ROUNDS = 10;
+
+	/** Number of calls per round. */
+	public static final int CALLS = 200000;
+
+	/**
+	 * Times how long it takes to format the date many times.
+	 *
+	 * @param name the name to output
+	 * @param format formats the current date
+	 */
+	private static void benchmark(String name, Supplier<String> format) {
+		int length = 0;
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			for (int j = 0; j < CALLS; j++) {
+				length += format.get().length();
+			}
+		}
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < TIMED_ROUNDS; i++) {
+			for (int j = 0; j < CALLS; j++) {
+				length += format.get().length();
+			}
+		}
+
+		double average = (double) (System.nanoTime() - start) / (TIMED_ROUNDS * CALLS);
+
+		// outputs the length so the work is not optimized away
+		System.out.printf("%18s: %8.1f ns/call (%d)%n", name, average, length);
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		String pattern = CachedDateFormat.LONG_FORMAT;
+		DateTimeFormatter shared = DateTimeFormatter.ofPattern(pattern);
+
+		System.out.println("Example: " + CachedDateFormat.LONG.format());
+
+		benchmark("SimpleDateFormat", () -> {
+			DateFormat formatter = new SimpleDateFormat(pattern);
+			return formatter.format(new Date());
+		});
+
+		benchmark("ofPattern", () -> LocalDateTime.now().format(DateTimeFormatter.ofPattern(pattern)));
+		benchmark("DateTimeFormatter", () -> LocalDateTime.now().format(shared));
+		benchmark("CachedDateFormat", CachedDateFormat.LONG::format);
+	}
+}
@@ -0,0 +1,582 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * A durable, append-only log of messages stored as a series of segment files.
+ * Messages are written by a single writer thread. It collects every message
+ * posted while the previous batch was being written and writes them all with
+ * one fsync (group commit), so a burst of posts shares the cost of flushing to
+ * disk instead of each post waiting for its own.
+ *
+ * <p>
+ * Once durable, each message is added to an in-memory {@link MessageRing} of
+ * the newest messages, which is what GET requests read. On startup the ring
+ * is filled from the log, so messages survive a restart.
+ *
+ * <p>
+ * Each segment is rolled over once it reaches a maximum size. Segments that
+ * only hold messages older than the retention limit are deleted.
+ *
+ * <p>
+ * Each record is the message length, a CRC32 checksum, and the UTF-8 bytes of
+ * the message. A record cut short by a crash is detected and removed on
+ * startup.
+ */
+public class MessageLog implements AutoCloseable {
+
+	/** The logger to use for this class. */
+	private static Logger log = Log.getRootLogger();
+
+	/** The default size in bytes before rolling over to a new segment. */
+	public static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+
+	/** The default number of messages to keep on disk. */
+	public static final int DEFAULT_RETAIN = 10000;
+
+	/** Maximum number of messages written with a single fsync. */
+	private static final int MAX_BATCH = 1024;
+
+	/** Seconds to wait for a message to become durable. */
+	private static final long APPEND_TIMEOUT = 30;
+
+	/** Bytes before each message: the length and checksum. */
+	private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+	/** File extension for segment files. */
+	private static final String EXTENSION = ".log";
+
+	/** Tells the writer thread to stop. */
+	private static final Pending CLOSE = new Pending(null);
+
+	/** The directory with the segment files. */
+	private final Path directory;
+
+	/** The newest messages, updated after each message is durable. */
+	private final MessageRing<String> tail;
+
+	/** The size in bytes before rolling over to a new segment. */
+	private final long segmentBytes;
+
+	/** The number of messages to keep on disk. */
+	private final int retain;
+
+	/** Messages waiting to be written. */
+	private final BlockingQueue<Pending> queue;
+
+	/** Number of messages in each segment, by segment number. */
+	private final TreeMap<Long, Integer> segments;
+
+	/** Writes batches of messages to the current segment. */
+	private final Thread writer;
+
+	/** The current segment. Only used by the writer thread after startup. */
+	private FileChannel channel;
+
+	/** The number of the current segment. */
+	private long current;
+
+	/** The size of the current segment after the last durable batch. */
+	private long good;
+
+	/** Number of messages written since startup. */
+	private final LongAdder appended;
+
+	/** Number of batches (and fsync calls) since startup. */
+	private final LongAdder batches;
+
+	/** Whether the log has been closed. */
+	private volatile boolean closed;
+
+	/** Guards checking whether the log is closed and queueing a message. */
+	private final Object lock;
+
+	/**
+	 * Opens or creates a log with the default settings.
+	 *
+	 * @param directory the directory for segment files
+	 * @param tail the ring to fill with the newest messages
+	 * @throws IOException if unable to read or create the log
+	 */
+	public MessageLog(Path directory, MessageRing<String> tail) throws IOException {
+		this(directory, tail, DEFAULT_SEGMENT_BYTES, DEFAULT_RETAIN);
+	}
+
+	/**
+	 * Opens or creates a log. Existing messages are read into the ring and any
+	 * incomplete record at the end of the last segment is removed.
+	 *
+	 * @param directory the directory for segment files
+	 * @param tail the ring to fill with the newest messages
+	 * @param segmentBytes the size in bytes before rolling over to a new segment
+	 * @param retain the number of messages to keep on disk (at least)
+	 * @throws IOException if unable to read or create the log
+	 */
+	public MessageLog(Path directory, MessageRing<String> tail, long segmentBytes, int retain)
+			throws IOException {
+		this.directory = directory;
+		this.tail = tail;
+		this.segmentBytes = segmentBytes;
+		this.retain = Math.max(retain, tail.capacity());
+		this.queue = new LinkedBlockingQueue<>();
+		this.segments = new TreeMap<>();
+		this.appended = new LongAdder();
+		this.batches = new LongAdder();
+		this.closed = false;
+		this.lock = new Object();
+
+		Files.createDirectories(directory);
+		recover();
+
+		this.writer = new Thread(this::write, "message-log-" + directory.getFileName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Appends a message and waits until it is durable and added to the ring.
+	 *
+	 * @param message the message to append
+	 * @throws IOException if unable to write the message in time
+	 */
+	public void append(String message) throws IOException {
+		try {
+			appendAsync(message).get(APPEND_TIMEOUT, TimeUnit.SECONDS);
+		}
+		catch (TimeoutException e) {
+			throw new IOException("Timed out appending message.", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while appending message.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Unable to append message.", e.getCause());
+		}
+	}
+
+	/**
+	 * Queues a message to append.
+	 *
+	 * @param message the message to append
+	 * @return a future completed once the message is durable and in the ring
+	 */
+	public CompletableFuture<Void> appendAsync(String message) {
+		Pending pending = new Pending(message);
+
+		// close() cannot slip in between the check and the queueing
+		synchronized (lock) {
+			if (closed) {
+				pending.done.completeExceptionally(new IOException("Message log is closed."));
+			}
+			else {
+				queue.add(pending);
+			}
+		}
+
+		return pending.done;
+	}
+
+	/**
+	 * Returns the number of messages written since startup.
+	 *
+	 * @return number of messages written
+	 */
+	public long getAppended() {
+		return appended.sum();
+	}
+
+	/**
+	 * Returns the number of batches written since startup. Each batch is
+	 * flushed to disk with a single fsync.
+	 *
+	 * @return number of batches written
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * Stops accepting messages, writes any that are waiting, and closes the
+	 * current segment.
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+			queue.add(CLOSE);
+		}
+
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// fail anything the writer left behind, for example if interrupted
+		failQueued();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s [segments=%d, appended=%d, batches=%d]",
+				directory, segments.size(), getAppended(), getBatches());
+	}
+
+	/**
+	 * Reads every segment in order into the ring, removes an incomplete record
+	 * at the end of the last segment, and opens the last segment for appending.
+	 *
+	 * @throws IOException if unable to read the segments
+	 */
+	private void recover() throws IOException {
+		try (Stream<Path> listing = Files.list(directory)) {
+			listing.map(path -> path.getFileName().toString())
+					.filter(name -> name.matches("\\d+\\" + EXTENSION))
+					.forEach(name -> segments.put(Long.parseLong(name.substring(0, name.length() - EXTENSION.length())), 0));
+		}
+
+		if (segments.isEmpty()) {
+			segments.put(1L, 0);
+		}
+
+		for (Map.Entry<Long, Integer> entry : segments.entrySet()) {
+			Path path = segment(entry.getKey());
+			long valid = 0;
+			int count = 0;
+
+			if (Files.exists(path)) {
+				try (InputStream stream = Files.newInputStream(path);
+						DataInputStream in = new DataInputStream(new BufferedInputStream(stream));) {
+					String message = read(in);
+
+					while (message != null) {
+						tail.add(message);
+						valid += HEADER_BYTES + message.getBytes(StandardCharsets.UTF_8).length;
+						count++;
+						message = read(in);
+					}
+				}
+			}
+
+			entry.setValue(count);
+
+			if (Files.exists(path) && Files.size(path) > valid) {
+				log.warn("Removing {} bytes of incomplete records from {}.", Files.size(path) - valid, path);
+
+				try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					truncate.truncate(valid);
+				}
+			}
+		}
+
+		current = segments.lastKey();
+		channel = open(current);
+		good = channel.size();
+		log.info("Recovered {} messages from {} segments in {}.", tail.version(), segments.size(), directory);
+	}
+
+	/**
+	 * Reads the next record, or returns null if there is no complete and valid
+	 * record left.
+	 *
+	 * @param in the segment input
+	 * @return the next message or null
+	 * @throws IOException if unable to read the segment
+	 */
+	private static String read(DataInputStream in) throws IOException {
+		try {
+			int length = in.readInt();
+			int checksum = in.readInt();
+
+			if (length < 0) {
+				return null;
+			}
+
+			byte[] bytes = in.readNBytes(length);
+
+			if (bytes.length < length || checksum(bytes) != checksum) {
+				return null;
+			}
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Runs on the writer thread. Waits for messages, then writes everything
+	 * waiting as one batch with a single fsync.
+	 */
+	private void write() {
+		List<Pending> batch = new ArrayList<>();
+		boolean running = true;
+
+		while (running) {
+			try {
+				batch.add(queue.take());
+			}
+			catch (InterruptedException e) {
+				break;
+			}
+
+			queue.drainTo(batch, MAX_BATCH);
+
+			// stop after writing anything that arrived before closing
+			running = !batch.remove(CLOSE);
+
+			if (!batch.isEmpty()) {
+				try {
+					writeBatch(batch);
+				}
+				catch (RuntimeException e) {
+					// keep the writer running so later messages are not stranded
+					log.warn("Unexpected error writing {} messages to {}.", batch.size(), segment(current));
+					log.warn(e);
+					fail(batch, e);
+				}
+
+				batch.clear();
+			}
+		}
+
+		failQueued();
+
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			log.warn(e);
+		}
+	}
+
+	/**
+	 * Writes a batch of messages to the current segment, waits for the disk,
+	 * and then adds the messages to the ring in order.
+	 *
+	 * @param batch the messages to write
+	 */
+	private void writeBatch(List<Pending> batch) {
+		int size = 0;
+
+		for (Pending pending : batch) {
+			size += HEADER_BYTES + pending.bytes.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+
+		for (Pending pending : batch) {
+			buffer.putInt(pending.bytes.length);
+			buffer.putInt(checksum(pending.bytes));
+			buffer.put(pending.bytes);
+		}
+
+		buffer.flip();
+
+		try {
+			// remove anything left behind by an earlier failed batch first
+			repair();
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			channel.force(false);
+			good = channel.size();
+		}
+		catch (IOException e) {
+			log.warn("Unable to write {} messages to {}.", batch.size(), segment(current));
+			log.warn(e);
+			fail(batch, e);
+
+			try {
+				repair();
+			}
+			catch (IOException repairing) {
+				// tried again before the next batch
+				log.warn(repairing);
+			}
+
+			return;
+		}
+
+		segments.merge(current, batch.size(), Integer::sum);
+		appended.add(batch.size());
+		batches.increment();
+
+		for (Pending pending : batch) {
+			tail.add(pending.message);
+			pending.done.complete(null);
+		}
+
+		try {
+			if (channel.size() >= segmentBytes) {
+				rollover();
+			}
+		}
+		catch (IOException e) {
+			log.warn("Unable to roll over {}.", segment(current));
+			log.warn(e);
+		}
+	}
+
+	/**
+	 * Removes any bytes written after the last durable batch, so later batches
+	 * are not appended after a partial record that recovery would stop at. If
+	 * the segment cannot be truncated, rolls over to a new segment instead.
+	 *
+	 * @throws IOException if unable to truncate or roll over the segment
+	 */
+	private void repair() throws IOException {
+		if (channel.size() == good) {
+			return;
+		}
+
+		log.warn("Removing {} bytes of a failed batch from {}.", channel.size() - good, segment(current));
+
+		try {
+			channel.truncate(good);
+			channel.force(false);
+		}
+		catch (IOException e) {
+			log.warn(e);
+			rollover();
+		}
+	}
+
+	/**
+	 * Fails every message in a batch.
+	 *
+	 * @param batch the messages to fail
+	 * @param cause why the messages failed
+	 */
+	private static void fail(List<Pending> batch, Throwable cause) {
+		for (Pending pending : batch) {
+			pending.done.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Fails every message still waiting to be written.
+	 */
+	private void failQueued() {
+		List<Pending> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		remaining.remove(CLOSE);
+		fail(remaining, new IOException("Message log is closed."));
+	}
+
+	/**
+	 * Closes the current segment, starts a new one, and deletes the oldest
+	 * segments if the newer ones already hold enough messages to retain.
+	 *
+	 * @throws IOException if unable to create the new segment
+	 */
+	private void rollover() throws IOException {
+		FileChannel next = open(current + 1);
+		channel.close();
+		channel = next;
+		current++;
+		good = 0;
+		segments.put(current, 0);
+
+		int total = segments.values().stream().mapToInt(Integer::intValue).sum();
+
+		while (segments.size() > 1 && total - segments.firstEntry().getValue() >= retain) {
+			Map.Entry<Long, Integer> oldest = segments.pollFirstEntry();
+			total -= oldest.getValue();
+			Files.deleteIfExists(segment(oldest.getKey()));
+			log.info("Deleted segment {} with {} messages.", segment(oldest.getKey()), oldest.getValue());
+		}
+	}
+
+	/**
+	 * Opens a segment for appending, creating it if needed.
+	 *
+	 * @param number the segment number
+	 * @return the open segment
+	 * @throws IOException if unable to open the segment
+	 */
+	private FileChannel open(long number) throws IOException {
+		return FileChannel.open(segment(number), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Returns the path of a segment file.
+	 *
+	 * @param number the segment number
+	 * @return the segment path
+	 */
+	private Path segment(long number) {
+		return directory.resolve(String.format("%010d%s", number, EXTENSION));
+	}
+
+	/**
+	 * Calculates the CRC32 checksum of the bytes.
+	 *
+	 * @param bytes the bytes to check
+	 * @return the checksum
+	 */
+	private static int checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * A message waiting to be written.
+	 */
+	private static class Pending {
+
+		/** The message. */
+		private final String message;
+
+		/** The UTF-8 bytes of the message. */
+		private final byte[] bytes;
+
+		/** Completed once the message is durable. */
+		private final CompletableFuture<Void> done;
+
+		/**
+		 * Initializes a pending message.
+		 *
+		 * @param message the message
+		 */
+		private Pending(String message) {
+			this.message = message;
+			this.bytes = message == null ? null : message.getBytes(StandardCharsets.UTF_8);
+			this.done = new CompletableFuture<>();
+		}
+	}
+}
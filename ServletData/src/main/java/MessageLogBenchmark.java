@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long posts wait for a {@link MessageLog} when many are made at
+ * once, and shows how many posts share each fsync. Also reopens the log to
+ * show the newest messages are recovered.
+ */
+public class MessageLogBenchmark {
+
+	/** Number of threads posting at once. */
+	public static final int THREADS = 32;
+
+	/** Number of posts each thread makes. */
+	public static final int POSTS = 200;
+
+	/**
+	 * Posts messages from several threads at once and outputs the latency.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to use the log
+	 */
+	public static void main(String[] args) throws Exception {
+		Path directory = Files.createTempDirectory("messages");
+		MessageRing<String> ring = new MessageRing<>(5);
+
+		// small segments so rolling over and deleting old segments happens
+		MessageLog store = new MessageLog(directory, ring, 64 * 1024, 1000);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		long[] latency = new long[THREADS * POSTS];
+		long start = System.nanoTime();
+
+		for (int i = 0; i < THREADS; i++) {
+			int thread = i;
+
+			executor.execute(() -> {
+				for (int j = 0; j < POSTS; j++) {
+					long before = System.nanoTime();
+
+					try {
+						store.append(String.format("<p>Message %d from thread %d.</p>", j, thread));
+					}
+					catch (IOException e) {
+						System.err.println(e.getMessage());
+					}
+
+					latency[thread * POSTS + j] = System.nanoTime() - before;
+				}
+			});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		Arrays.sort(latency);
+
+		System.out.printf("%d posts in %.2f s (%.0f posts/s)%n", latency.length, elapsed, latency.length / elapsed);
+		System.out.printf("%.1f posts per fsync%n", (double) store.getAppended() / store.getBatches());
+		System.out.printf("Latency: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+				latency[latency.length / 2] / 1e6,
+				latency[latency.length * 99 / 100] / 1e6,
+				latency[latency.length - 1] / 1e6);
+		System.out.println(store);
+		store.close();
+
+		// reopen to show the newest messages come back
+		MessageRing<String> recovered = new MessageRing<>(5);
+		MessageLog reopened = new MessageLog(directory, recovered, 64 * 1024, 1000);
+		System.out.println("Recovered: " + recovered.snapshot().messages().equals(ring.snapshot().messages()));
+		reopened.close();
+
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}
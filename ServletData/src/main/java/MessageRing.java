@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity, lock-free ring of the most recent messages. Adding a
+ * message claims the next position using an atomic cursor and overwrites the
+ * oldest message in that slot, so the capacity is enforced in constant time
+ * without any check-then-act race.
+ *
+ * <p>
+ * Readers get an immutable {@link Snapshot} of the messages. Snapshots are
+ * reused until a new message is added, so repeated reads do not copy or join
+ * the messages again no matter how large the capacity is. Readers never wait
+ * for writers; a snapshot only includes messages that were fully added.
+ *
+ * @param <E> the type of message stored
+ */
+public class MessageRing<E> {
+
+	/** The default number of messages to keep. */
+	public static final int DEFAULT_CAPACITY = 5;
+
+	/** The slots for messages, indexed by sequence number modulo capacity. */
+	private final AtomicReferenceArray<Entry<E>> slots;
+
+	/** The sequence number the next added message will use. */
+	private final AtomicLong cursor;
+
+	/** The most recently created snapshot, reused while still current. */
+	private final AtomicReference<Snapshot<E>> latest;
+
+	/**
+	 * Initializes a ring with the default capacity.
+	 */
+	public MessageRing() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Initializes a ring that keeps the provided number of messages.
+	 *
+	 * @param capacity the maximum number of messages to keep
+	 */
+	public MessageRing(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.cursor = new AtomicLong(0);
+		this.latest = new AtomicReference<>(new Snapshot<>(0, Collections.emptyList()));
+	}
+
+	/**
+	 * Adds a message, replacing the oldest message if the ring is full.
+	 *
+	 * @param message the message to add
+	 * @return the message that was replaced (which is the added message itself
+	 *         if newer messages already took its place), or null if none
+	 */
+	public E add(E message) {
+		long sequence = cursor.getAndIncrement();
+		int index = index(sequence);
+		Entry<E> entry = new Entry<>(sequence, message);
+
+		while (true) {
+			Entry<E> previous = slots.get(index);
+
+			// a faster writer already added a newer message to this slot
+			if (previous != null && previous.sequence > sequence) {
+				return message;
+			}
+
+			if (slots.compareAndSet(index, previous, entry)) {
+				return previous == null ? null : previous.message;
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of messages kept.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return slots.length();
+	}
+
+	/**
+	 * Returns the number of messages added so far, which changes every time a
+	 * message is added.
+	 *
+	 * @return the number of messages ever added
+	 */
+	public long version() {
+		return cursor.get();
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current messages from oldest to
+	 * newest. Never waits on writers: if another thread has claimed a position
+	 * but not yet stored its message, the snapshot stops just before that
+	 * position and includes that message in a later snapshot. If newer
+	 * messages have already replaced some of the messages before that
+	 * position, those are left out.
+	 *
+	 * @return snapshot of the current messages
+	 */
+	public Snapshot<E> snapshot() {
+		Snapshot<E> cached = latest.get();
+		long end = cursor.get();
+
+		if (cached.version == end) {
+			return cached;
+		}
+
+		// find the first position claimed but not yet stored, skipping positions
+		// too old to be in the snapshot anyway
+		long stop = Math.max(cached.version, end - slots.length());
+
+		while (stop < end) {
+			Entry<E> entry = slots.get(index(stop));
+
+			if (entry == null || entry.sequence < stop) {
+				break;
+			}
+
+			stop++;
+		}
+
+		if (stop == cached.version) {
+			return cached;
+		}
+
+		long start = Math.max(0, stop - slots.length());
+		List<E> copy = new ArrayList<>((int) (stop - start));
+
+		for (long sequence = start; sequence < stop; sequence++) {
+			Entry<E> entry = slots.get(index(sequence));
+
+			// skip messages already replaced by messages newer than this snapshot
+			if (entry != null && entry.sequence == sequence) {
+				copy.add(entry.message);
+			}
+		}
+
+		Snapshot<E> snapshot = new Snapshot<>(stop, Collections.unmodifiableList(copy));
+		return latest.accumulateAndGet(snapshot, (a, b) -> a.version >= b.version ? a : b);
+	}
+
+	/**
+	 * Returns the slot index for a sequence number.
+	 *
+	 * @param sequence the sequence number
+	 * @return the slot index
+	 */
+	private int index(long sequence) {
+		return (int) (sequence % slots.length());
+	}
+
+	/**
+	 * A message and the sequence number it was added with.
+	 *
+	 * @param <E> the type of message stored
+	 */
+	private static class Entry<E> {
+
+		/** The sequence number of this message. */
+		private final long sequence;
+
+		/** The message. */
+		private final E message;
+
+		/**
+		 * Initializes an entry.
+		 *
+		 * @param sequence the sequence number of this message
+		 * @param message the message
+		 */
+		private Entry(long sequence, E message) {
+			this.sequence = sequence;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * An immutable view of the messages at some point in time.
+	 *
+	 * @param <E> the type of message stored
+	 */
+	public static class Snapshot<E> {
+
+		/** The number of messages added before this snapshot. */
+		private final long version;
+
+		/** The messages from oldest to newest. */
+		private final List<E> messages;
+
+		/** The last joined text and its delimiter, computed only when needed. */
+		private volatile String[] joined;
+
+		/**
+		 * Initializes a snapshot.
+		 *
+		 * @param version the number of messages added before this snapshot
+		 * @param messages the messages from oldest to newest
+		 */
+		private Snapshot(long version, List<E> messages) {
+			this.version = version;
+			this.messages = messages;
+			this.joined = null;
+		}
+
+		/**
+		 * Returns the number of messages added before this snapshot, which may
+		 * trail the ring version while other threads are still adding messages.
+		 *
+		 * @return the snapshot version
+		 * @see MessageRing#version()
+		 */
+		public long version() {
+			return version;
+		}
+
+		/**
+		 * Returns the unmodifiable list of messages from oldest to newest.
+		 *
+		 * @return the messages
+		 */
+		public List<E> messages() {
+			return messages;
+		}
+
+		/**
+		 * Returns whether there are no messages in this snapshot.
+		 *
+		 * @return true if there are no messages
+		 */
+		public boolean isEmpty() {
+			return messages.isEmpty();
+		}
+
+		/**
+		 * Joins the messages together with the delimiter. The result is saved,
+		 * so joining the same snapshot again with the same delimiter is free.
+		 *
+		 * @param delimiter the text to put between messages
+		 * @return the joined messages
+		 */
+		public String join(String delimiter) {
+			String[] saved = joined;
+
+			if (saved != null && saved[0].equals(delimiter)) {
+				return saved[1];
+			}
+
+			StringBuilder builder = new StringBuilder();
+			boolean first = true;
+
+			for (E message : messages) {
+				if (!first) {
+					builder.append(delimiter);
+				}
+
+				builder.append(message);
+				first = false;
+			}
+
+			String text = builder.toString();
+			joined = new String[] { delimiter, text };
+			return text;
+		}
+	}
+}
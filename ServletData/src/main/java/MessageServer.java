@@ -1,3 +1,6 @@
+import java.nio.file.Path;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -12,7 +15,8 @@ public class MessageServer {
 	public static final int PORT = 8080;
 
 	/**
-	 * Sets up a Jetty server with different servlet instances.
+	 * Sets up a Jetty server with different servlet instances. Requests are
+	 * handled asynchronously so Jetty threads are not blocked by servlet work.
 	 *
 	 * @param args unused
 	 * @throws Exception if unable to start and run server
@@ -22,13 +26,33 @@ public class MessageServer {
 
 		ServletHandler handler = new ServletHandler();
 
+		// shared by all of the servlets
+		AsyncExecutor async = new AsyncExecutor();
+
+		// messages are saved so they survive a restart
+		int capacity = MessageRing.DEFAULT_CAPACITY;
+		Path messages = Path.of("messages");
+
 		// must use servlet holds when need to call a constructor
-		handler.addServletWithMapping(new ServletHolder(new MessageServlet()), "/pie");
-		handler.addServletWithMapping(new ServletHolder(new MessageServlet()), "/cake");
-		handler.addServletWithMapping(new ServletHolder(new BulmaMessageServlet()), "/bulma");
+		handler.addServletWithMapping(asyncHolder(new MessageServlet(async, capacity, messages.resolve("pie"))), "/pie");
+		handler.addServletWithMapping(asyncHolder(new MessageServlet(async, capacity, messages.resolve("cake"))), "/cake");
+		handler.addServletWithMapping(asyncHolder(new BulmaMessageServlet(async, capacity, messages.resolve("bulma"))), "/bulma");
 
 		server.setHandler(handler);
 		server.start();
 		server.join();
 	}
+
+	/**
+	 * Creates a servlet holder with async support turned on, which is required
+	 * before a servlet can call {@link HttpServletRequest#startAsync()}.
+	 *
+	 * @param servlet the servlet to hold
+	 * @return the servlet holder
+	 */
+	public static ServletHolder asyncHolder(HttpServlet servlet) {
+		ServletHolder holder = new ServletHolder(servlet);
+		holder.setAsyncSupported(true);
+		return holder;
+	}
 }
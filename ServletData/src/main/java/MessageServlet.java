@@ -1,20 +1,13 @@
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -40,11 +33,17 @@ public class MessageServlet extends HttpServlet {
 	/** The logger to use for this servlet. */
 	private static Logger log = Log.getRootLogger();
 
-	/** The thread-safe data structure to use for storing messages. */
-	private final ConcurrentLinkedQueue<String> messages;
+	/** Runs requests asynchronously, or null to run them on the Jetty thread. */
+	private final AsyncExecutor async;
 
-	/** Template for HTML. **/
-	private final String htmlTemplate;
+	/** The lock-free ring of the most recent messages. */
+	private final MessageRing<String> messages;
+
+	/** Durable log of messages, or null to only keep messages in memory. */
+	private final MessageLog store;
+
+	/** Pre-rendered HTML page, updated when messages change. **/
+	private final PageCache cache;
 
 	/**
 	 * Initializes this message board. Each message board has its own collection
@@ -53,44 +52,86 @@ public class MessageServlet extends HttpServlet {
 	 * @throws IOException if unable to read template
 	 */
 	public MessageServlet() throws IOException {
+		this(null, MessageRing.DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * Initializes this message board, running requests with the provided async
+	 * executor. The servlet must be added with async support turned on.
+	 *
+	 * @param async the executor to run requests or null to run them on the
+	 *        Jetty thread
+	 * @param capacity the number of recent messages to keep
+	 * @param directory where to durably store messages, or null to only keep
+	 *        messages in memory
+	 * @throws IOException if unable to read template or the message log
+	 */
+	public MessageServlet(AsyncExecutor async, int capacity, Path directory) throws IOException {
 		super();
-		messages = new ConcurrentLinkedQueue<>();
-		htmlTemplate = Files.readString(Path.of("html", "index.html"), StandardCharsets.UTF_8);
+		this.async = async;
+		messages = new MessageRing<>(capacity);
+		store = directory == null ? null : new MessageLog(directory, messages);
+		String htmlTemplate = Files.readString(Path.of("html", "index.html"), StandardCharsets.UTF_8);
+		cache = new PageCache(htmlTemplate, "thread", "action");
 	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		response.setContentType("text/html");
-
-		log.info("MessageServlet ID " + this.hashCode() + " handling GET request.");
-
-		// used to substitute values in our templates
-		Map<String, String> values = new HashMap<>();
-		values.put("title", TITLE);
-		values.put("thread", Thread.currentThread().getName());
+		if (async == null) {
+			showMessages(request, response);
+		}
+		else {
+			async.execute(request, response, this::showMessages);
+		}
+	}
 
-		// setup form
-		values.put("method", "POST");
-		values.put("action", request.getServletPath());
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (async == null) {
+			addMessage(request, response);
+		}
+		else {
+			async.execute(request, response, this::addMessage);
+		}
+	}
 
-		// compile all of the messages together
-		// keep in mind multiple threads may access this at once!
-		values.put("messages", String.join("\n\n", messages));
+	/**
+	 * Outputs the message board.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @throws ServletException if unable to handle the request
+	 * @throws IOException if an IO error occurs
+	 */
+	private void showMessages(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		log.info("MessageServlet ID " + this.hashCode() + " handling GET request.");
 
-		// generate html from template
-		StringSubstitutor replacer = new StringSubstitutor(values);
-		String html = replacer.replace(htmlTemplate);
+		// the page is only rendered again after a new message is posted
+		MessageRing.Snapshot<String> snapshot = messages.snapshot();
+		PageCache.Page page = cache.get(snapshot.version(), () -> Map.of(
+				"title", TITLE,
+				"method", "POST",
+				"messages", snapshot.join("\n\n")));
 
-		// output generated html
-		PrintWriter out = response.getWriter();
-		out.println(html);
-		out.flush();
+		// only per-request values are added to the cached page
+		Map<String, String> values = Map.of(
+				"thread", Thread.currentThread().getName(),
+				"action", request.getServletPath());
 
-		response.setStatus(HttpServletResponse.SC_OK);
+		PageCache.send(page, values, request, response);
 	}
 
-	@Override
-	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	/**
+	 * Adds a new message to the message board and redirects back to the board.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @throws ServletException if unable to handle the request
+	 * @throws IOException if an IO error occurs
+	 */
+	private void addMessage(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
 		response.setContentType("text/html");
 		log.info("MessageServlet ID " + this.hashCode() + " handling POST request.");
 
@@ -109,20 +150,35 @@ public class MessageServlet extends HttpServlet {
 				"<p>%s<br><font size=\"-2\">[ posted by %s at %s ]</font></p>", 
 				message, username, getDate());
 
-		// keep in mind multiple threads may access at once
-		// but we are using a thread-safe data structure here to avoid any issues
-		messages.add(formatted);
+		if (store == null) {
+			// the ring replaces the oldest message once full, so no size check needed
+			String removed = messages.add(formatted);
 
-		// only keep the latest 5 messages
-		if (messages.size() > 5) {
-			String first = messages.poll();
-			log.info("Removing message: " + first);
+			if (removed != null) {
+				log.info("Removing message: " + removed);
+			}
+		}
+		else {
+			// waits until the message is on disk, sharing the flush with other posts
+			store.append(formatted);
 		}
 
 		response.setStatus(HttpServletResponse.SC_OK);
 		response.sendRedirect(request.getServletPath());
 	}
 
+	/**
+	 * Closes the message log, if any, once the server stops.
+	 */
+	@Override
+	public void destroy() {
+		if (store != null) {
+			store.close();
+		}
+
+		super.destroy();
+	}
+
 	/**
 	 * Returns the date and time in a long format. For example: "12:00 am on
 	 * Saturday, January 01 2000".
@@ -130,8 +186,6 @@ public class MessageServlet extends HttpServlet {
 	 * @return current date and time
 	 */
 	private static String getDate() {
-		String format = "hh:mm a 'on' EEEE, MMMM dd yyyy";
-		DateFormat formatter = new SimpleDateFormat(format);
-		return formatter.format(new Date());
+		return CachedDateFormat.LONG.format();
 	}
 }
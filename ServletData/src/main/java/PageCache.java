@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Caches a pre-rendered page that only changes when its version changes, such
+ * as when a new message is posted. The template is parsed once into a
+ * {@link CompiledTemplate}. When a new version is requested, every variable
+ * except the per-request ones is filled in and the result is stored as UTF-8
+ * bytes. Each request then only writes the cached bytes and splices in the few
+ * per-request values (like the thread name).
+ *
+ * <p>
+ * Each version of the page gets a weak ETag, so clients that already have the
+ * current version get a 304 (Not Modified) response with no body.
+ */
+public class PageCache {
+
+	/** The parsed page template. */
+	private final CompiledTemplate template;
+
+	/** Variables filled in per request instead of per version. */
+	private final Set<String> dynamic;
+
+	/** Makes ETags unique to this cache and server run. */
+	private final String prefix;
+
+	/** The most recently rendered page. */
+	private final AtomicReference<Page> cached;
+
+	/**
+	 * Initializes a page cache for the template.
+	 *
+	 * @param template the page template with {@code ${name}} variables
+	 * @param dynamic the variables filled in per request
+	 */
+	public PageCache(String template, String... dynamic) {
+		this.template = new CompiledTemplate(template);
+		this.dynamic = Set.of(dynamic);
+		this.prefix = Integer.toHexString(System.identityHashCode(this))
+				+ Long.toHexString(System.currentTimeMillis());
+		this.cached = new AtomicReference<>();
+	}
+
+	/**
+	 * Returns the page for the version, rendering it first if the cached page
+	 * is for an older version. The values are only fetched when rendering.
+	 *
+	 * @param version the current version of the page content
+	 * @param values supplies the values for all of the non-dynamic variables
+	 * @return the rendered page
+	 */
+	public Page get(long version, Supplier<Map<String, String>> values) {
+		Page page = cached.get();
+
+		if (page != null && page.version == version) {
+			return page;
+		}
+
+		Page rendered = render(version, values.get());
+
+		// another thread may have rendered an even newer version already
+		return cached.accumulateAndGet(rendered,
+				(current, update) -> current != null && current.version >= update.version ? current : update);
+	}
+
+	/**
+	 * Fills in the non-dynamic variables and converts the text between the
+	 * dynamic variables into bytes. Variables without a value are left as-is.
+	 *
+	 * @param version the version being rendered
+	 * @param values the values for the non-dynamic variables
+	 * @return the rendered page
+	 */
+	private Page render(long version, Map<String, String> values) {
+		List<String> pieces = template.split(values, dynamic);
+		byte[][] chunks = new byte[pieces.size() / 2 + 1][];
+		String[] slots = new String[pieces.size() / 2];
+
+		// the rendered text and dynamic variable names alternate
+		for (int i = 0; i < slots.length; i++) {
+			chunks[i] = pieces.get(2 * i).getBytes(StandardCharsets.UTF_8);
+			slots[i] = pieces.get(2 * i + 1);
+		}
+
+		chunks[slots.length] = pieces.get(pieces.size() - 1).getBytes(StandardCharsets.UTF_8);
+
+		String etag = "W/\"" + prefix + "-" + Long.toHexString(version) + "\"";
+		return new Page(version, etag, chunks, slots);
+	}
+
+	/**
+	 * Sends the page to the client, or a 304 (Not Modified) response if the
+	 * client already has this version of the page.
+	 *
+	 * @param page the page to send
+	 * @param values the values for the dynamic variables
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void send(Page page, Map<String, String> values, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		response.setHeader("ETag", page.etag);
+
+		// check the page is up to date before formatting per-request values
+		if (page.matches(request.getHeader("If-None-Match"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		byte[][] spliced = new byte[page.slots.length][];
+		long length = 0;
+
+		for (int i = 0; i < spliced.length; i++) {
+			String value = values.get(page.slots[i]);
+			value = value != null ? value : "${" + page.slots[i] + "}";
+			spliced[i] = value.getBytes(StandardCharsets.UTF_8);
+			length += spliced[i].length;
+		}
+
+		for (byte[] chunk : page.chunks) {
+			length += chunk.length;
+		}
+
+		response.setContentType("text/html");
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLengthLong(length);
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		ServletOutputStream out = response.getOutputStream();
+
+		for (int i = 0; i < spliced.length; i++) {
+			out.write(page.chunks[i]);
+			out.write(spliced[i]);
+		}
+
+		out.write(page.chunks[spliced.length]);
+		out.flush();
+	}
+
+	/**
+	 * One rendered version of the page.
+	 */
+	public static class Page {
+
+		/** The version of the content in this page. */
+		private final long version;
+
+		/** The weak entity tag for this version. */
+		private final String etag;
+
+		/** The rendered bytes between dynamic variables. One more than slots. */
+		private final byte[][] chunks;
+
+		/** The dynamic variable name between each chunk. */
+		private final String[] slots;
+
+		/**
+		 * Initializes a rendered page.
+		 *
+		 * @param version the version of the content in this page
+		 * @param etag the weak entity tag for this version
+		 * @param chunks the rendered bytes between dynamic variables
+		 * @param slots the dynamic variable name between each chunk
+		 */
+		private Page(long version, String etag, byte[][] chunks, String[] slots) {
+			this.version = version;
+			this.etag = etag;
+			this.chunks = chunks;
+			this.slots = slots;
+		}
+
+		/**
+		 * Returns the version of the content in this page.
+		 *
+		 * @return the page version
+		 */
+		public long version() {
+			return version;
+		}
+
+		/**
+		 * Returns the weak entity tag for this version of the page.
+		 *
+		 * @return the ETag header value
+		 */
+		public String etag() {
+			return etag;
+		}
+
+		/**
+		 * Tests whether an If-None-Match header includes this page. Uses the
+		 * weak comparison, so the W/ prefix is ignored.
+		 *
+		 * @param header the If-None-Match header value (may be null)
+		 * @return true if the client already has this version of the page
+		 */
+		public boolean matches(String header) {
+			if (header == null) {
+				return false;
+			}
+
+			String opaque = etag.substring(2);
+
+			for (String tag : header.split(",")) {
+				tag = tag.strip();
+				tag = tag.startsWith("W/") ? tag.substring(2) : tag;
+
+				if (tag.equals("*") || tag.equals(opaque)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+}
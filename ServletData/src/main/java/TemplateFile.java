@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A template file that is read and compiled once, then only read again if the
+ * file is modified. Checking the modification time is much cheaper than
+ * reading and parsing the file, and is done at most once per interval so busy
+ * servers do not check on every request. This allows templates to be edited
+ * while the server is running.
+ *
+ * @see CompiledTemplate
+ */
+public class TemplateFile {
+
+	/** The default milliseconds between checks for a modified file. */
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	/** The path to the template file. */
+	private final Path path;
+
+	/** Nanoseconds between checks for a modified file. */
+	private final long interval;
+
+	/** The most recently loaded template, or null if not loaded yet. */
+	private volatile Loaded loaded;
+
+	/**
+	 * Initializes a template file that is checked for changes at most once per
+	 * second. The file is not read until the template is first needed.
+	 *
+	 * @param path the path to the template file
+	 */
+	public TemplateFile(Path path) {
+		this(path, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Initializes a template file. The file is not read until the template is
+	 * first needed.
+	 *
+	 * @param path the path to the template file
+	 * @param interval milliseconds between checks for a modified file (0 checks
+	 *        every time)
+	 */
+	public TemplateFile(Path path, long interval) {
+		this.path = path;
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.loaded = null;
+	}
+
+	/**
+	 * Returns the compiled template, reading the file again first if it was
+	 * modified since it was last read.
+	 *
+	 * @return the compiled template
+	 * @throws IOException if unable to read the file
+	 */
+	public CompiledTemplate get() throws IOException {
+		Loaded current = loaded;
+		long now = System.nanoTime();
+
+		if (current != null && now - current.checked < interval) {
+			return current.template;
+		}
+
+		FileTime modified = Files.getLastModifiedTime(path);
+
+		if (current != null && current.modified.equals(modified)) {
+			loaded = new Loaded(current.template, modified, now);
+			return current.template;
+		}
+
+		// multiple threads may read the file at once, but only the first time
+		CompiledTemplate template = CompiledTemplate.load(path);
+		loaded = new Loaded(template, modified, now);
+		return template;
+	}
+
+	/**
+	 * Returns the path to the template file.
+	 *
+	 * @return the template path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+	/**
+	 * A compiled template and when it was loaded and checked.
+	 */
+	private static class Loaded {
+
+		/** The compiled template. */
+		private final CompiledTemplate template;
+
+		/** The modification time of the file when it was read. */
+		private final FileTime modified;
+
+		/** The {@link System#nanoTime()} of the last check for changes. */
+		private final long checked;
+
+		/**
+		 * Initializes the loaded template.
+		 *
+		 * @param template the compiled template
+		 * @param modified the modification time of the file when it was read
+		 * @param checked the time of the last check for changes
+		 */
+		private Loaded(CompiledTemplate template, FileTime modified, long checked) {
+			this.template = template;
+			this.modified = modified;
+			this.checked = checked;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * Compares how fast simulated players can move through the adventure game
+ * rooms using the original switch statements, the transition table in
+ * {@link AdventureRoom}, and the compiled {@link AdventureMap} tables. Also
+ * plays each map by following the hints to check they reach a winning room.
+ */
+public class AdventureBenchmark {
+
+	/** Number of moves per timed run. */
+	public static final int MOVES = 50_000_000;
+
+	/** Number of timed runs for each approach. */
+	public static final int RUNS = 5;
+
+	/** Random directions, reused so generating them is not timed. */
+	private static final Direction[] RANDOM = new Direction[1 << 16];
+
+	static {
+		Random random = new Random(0);
+		Direction[] directions = Direction.values();
+
+		for (int i = 0; i < RANDOM.length; i++) {
+			RANDOM[i] = directions[random.nextInt(directions.length)];
+		}
+	}
+
+	/**
+	 * The original move, with a switch for whether the move is possible and
+	 * another for where it goes, copying the rooms array every time.
+	 *
+	 * @param room the current room
+	 * @param direction the direction of movement
+	 * @return the new room after moving
+	 */
+	private static AdventureRoom switchMove(AdventureRoom room, Direction direction) {
+		boolean move = false;
+
+		switch (direction) {
+			case WEST:
+				move = room.ordinal() % 3 != 0;
+				break;
+			case EAST:
+				move = room.ordinal() % 3 != 2;
+				break;
+			case NORTH:
+				move = room.ordinal() > 2;
+				break;
+			case SOUTH:
+				move = room.ordinal() < 6;
+				break;
+			default:
+				assert false;
+		}
+
+		if (move) {
+			switch (direction) {
+				case WEST:
+					return AdventureRoom.values()[room.ordinal() - 1];
+				case EAST:
+					return AdventureRoom.values()[room.ordinal() + 1];
+				case NORTH:
+					return AdventureRoom.values()[room.ordinal() - 3];
+				case SOUTH:
+					return AdventureRoom.values()[room.ordinal() + 3];
+				default:
+					assert false;
+			}
+		}
+
+		return room;
+	}
+
+	/**
+	 * Makes random moves using the original switch statements.
+	 *
+	 * @return number of games finished, so the work cannot be skipped
+	 */
+	private static int switchMoves() {
+		AdventureRoom room = AdventureRoom.START_ROOM;
+		int games = 0;
+
+		for (int i = 0; i < MOVES; i++) {
+			room = switchMove(room, RANDOM[i & (RANDOM.length - 1)]);
+
+			if (room.done()) {
+				room = AdventureRoom.START_ROOM;
+				games++;
+			}
+		}
+
+		return games;
+	}
+
+	/**
+	 * Makes random moves using the enum transition table.
+	 *
+	 * @return number of games finished, so the work cannot be skipped
+	 */
+	private static int enumMoves() {
+		AdventureRoom room = AdventureRoom.START_ROOM;
+		int games = 0;
+
+		for (int i = 0; i < MOVES; i++) {
+			room = room.moveRoom(RANDOM[i & (RANDOM.length - 1)]);
+
+			if (room.done()) {
+				room = AdventureRoom.START_ROOM;
+				games++;
+			}
+		}
+
+		return games;
+	}
+
+	/**
+	 * Makes random moves on a compiled map.
+	 *
+	 * @param map the map to play
+	 * @return number of games finished, so the work cannot be skipped
+	 */
+	private static int mapMoves(AdventureMap map) {
+		int room = map.getStart();
+		int games = 0;
+
+		for (int i = 0; i < MOVES; i++) {
+			room = map.move(room, RANDOM[i & (RANDOM.length - 1)]);
+
+			if (map.isDone(room)) {
+				room = map.getStart();
+				games++;
+			}
+		}
+
+		return games;
+	}
+
+	/**
+	 * Times several runs and outputs the best.
+	 *
+	 * @param name the name to output
+	 * @param moves makes the moves and returns the number of games finished
+	 */
+	private static void benchmark(String name, IntSupplier moves) {
+		long best = Long.MAX_VALUE;
+		int games = 0;
+
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			games = moves.getAsInt();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		System.out.printf("%-14s %8.1f million moves/s (%d games per run)%n",
+				name, MOVES / (best / 1e9) / 1e6, games);
+	}
+
+	/**
+	 * Follows the hints from the start of a map and outputs the path taken.
+	 *
+	 * @param name the name to output
+	 * @param map the map to play
+	 */
+	private static void followHints(String name, AdventureMap map) {
+		int room = map.getStart();
+		StringBuilder path = new StringBuilder();
+		Direction hint;
+
+		while ((hint = map.getHint(room)) != null) {
+			path.append(hint.name()).append(' ');
+			room = map.move(room, hint);
+		}
+
+		System.out.printf("%-14s %d moves to win: %s-> %s%n", name,
+				map.getDistance(map.getStart()), path, map.isWin(room) ? "won" : "lost");
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to load the map file
+	 */
+	public static void main(String[] args) throws Exception {
+		AdventureMap mansion = AdventureMap.load(Path.of("maps", "mansion.txt"));
+
+		followHints("Default map", AdventureMap.DEFAULT);
+		followHints("Mansion map", mansion);
+		System.out.println();
+
+		benchmark("Switch", AdventureBenchmark::switchMoves);
+		benchmark("Enum table", AdventureBenchmark::enumMoves);
+		benchmark("Default map", () -> mapMoves(AdventureMap.DEFAULT));
+		benchmark("Mansion map", () -> mapMoves(mansion));
+	}
+}
@@ -0,0 +1,421 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An adventure game map compiled into flat tables. Rooms are numbered from 0,
+ * and every move is a single array lookup in a room by direction transition
+ * table, so moving never allocates. The shortest path from every room to the
+ * nearest winning room is found once when the map is created and kept for
+ * hints.
+ *
+ * <p>
+ * Maps are either compiled from the {@link AdventureRoom} enum, or loaded from
+ * a text file so larger maps can be used without changing any code. The file
+ * lists the rooms, one per line, followed by the layout as rows of room names.
+ * Players can move between rooms next to each other in the layout. For
+ * example:
+ *
+ * <pre>
+ * # room [name] [start, room, lose, or win] [clue]
+ * room START start You are hungry.
+ * room SNACK win You found a snack!
+ *
+ * # rows of room names, or . for a wall
+ * layout
+ * START SNACK
+ * </pre>
+ *
+ * @see AdventureRoom
+ * @see AdventureServlet
+ */
+public class AdventureMap {
+
+	/** All directions, cached since {@link Direction#values()} makes a copy. */
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	/** The map compiled from the {@link AdventureRoom} enum. */
+	public static final AdventureMap DEFAULT = fromRooms();
+
+	/** Marks a room with no path to a winning room. */
+	private static final byte NO_HINT = -1;
+
+	/** The clue for each room. */
+	private final String[] clues;
+
+	/** Whether each room ends the game. */
+	private final boolean[] done;
+
+	/** Whether each room wins the game. */
+	private final boolean[] win;
+
+	/** The room reached from each room in each direction. */
+	private final int[] moves;
+
+	/** The direction ordinal toward the nearest winning room, or -1 if none. */
+	private final byte[] hints;
+
+	/** Moves to the nearest winning room, or -1 if unreachable. */
+	private final int[] distances;
+
+	/** The room where the game starts. */
+	private final int start;
+
+	/**
+	 * Initializes a map and finds the shortest paths to the winning rooms.
+	 *
+	 * @param clues the clue for each room
+	 * @param done whether each room ends the game
+	 * @param win whether each room wins the game
+	 * @param moves the room reached from each room in each direction
+	 * @param start the room where the game starts
+	 */
+	private AdventureMap(String[] clues, boolean[] done, boolean[] win, int[] moves, int start) {
+		this.clues = clues;
+		this.done = done;
+		this.win = win;
+		this.moves = moves;
+		this.start = start;
+		this.hints = new byte[clues.length];
+		this.distances = new int[clues.length];
+		findPaths();
+	}
+
+	/**
+	 * Returns the number of rooms.
+	 *
+	 * @return number of rooms
+	 */
+	public int size() {
+		return clues.length;
+	}
+
+	/**
+	 * Returns the room where the game starts.
+	 *
+	 * @return the starting room
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the clue given to the player when entering a room.
+	 *
+	 * @param room the room
+	 * @return the clue
+	 */
+	public String getClue(int room) {
+		return clues[room];
+	}
+
+	/**
+	 * Returns whether a room ends the game.
+	 *
+	 * @param room the room
+	 * @return whether the room ends the game
+	 */
+	public boolean isDone(int room) {
+		return done[room];
+	}
+
+	/**
+	 * Returns whether a room wins the game.
+	 *
+	 * @param room the room
+	 * @return whether the room wins the game
+	 */
+	public boolean isWin(int room) {
+		return win[room];
+	}
+
+	/**
+	 * Returns the room in the specified direction, or the same room if unable to
+	 * move that way.
+	 *
+	 * @param room the current room
+	 * @param direction the direction of movement
+	 * @return the new room after moving
+	 */
+	public int move(int room, Direction direction) {
+		return moves[room * DIRECTIONS.length + direction.ordinal()];
+	}
+
+	/**
+	 * Tests whether the player can move in the specified direction.
+	 *
+	 * @param room the current room
+	 * @param direction the direction of movement
+	 * @return true if able to move in the provided direction
+	 */
+	public boolean canMove(int room, Direction direction) {
+		return move(room, direction) != room;
+	}
+
+	/**
+	 * Returns the first move on the shortest path to a winning room.
+	 *
+	 * @param room the current room
+	 * @return the direction to move, or null if no winning room can be reached
+	 *         (or the room already ends the game)
+	 */
+	public Direction getHint(int room) {
+		return hints[room] == NO_HINT ? null : DIRECTIONS[hints[room]];
+	}
+
+	/**
+	 * Returns the number of moves to the nearest winning room.
+	 *
+	 * @param room the current room
+	 * @return the number of moves, or -1 if no winning room can be reached
+	 */
+	public int getDistance(int room) {
+		return distances[room];
+	}
+
+	/**
+	 * Finds the shortest path from every room to the nearest winning room,
+	 * with a breadth-first search backwards from all of the winning rooms.
+	 * Paths may not go through other rooms that end the game.
+	 */
+	private void findPaths() {
+		int rooms = clues.length;
+		int count = DIRECTIONS.length;
+
+		// index the moves into each room so the search can go backwards
+		int[] offsets = new int[rooms + 1];
+
+		for (int i = 0; i < moves.length; i++) {
+			if (moves[i] != i / count) {
+				offsets[moves[i] + 1]++;
+			}
+		}
+
+		for (int i = 0; i < rooms; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+
+		int[] sources = new int[offsets[rooms]];
+		int[] filled = Arrays.copyOf(offsets, rooms);
+
+		for (int i = 0; i < moves.length; i++) {
+			if (moves[i] != i / count) {
+				sources[filled[moves[i]]++] = i;
+			}
+		}
+
+		Arrays.fill(hints, NO_HINT);
+		Arrays.fill(distances, -1);
+
+		int[] queue = new int[rooms];
+		int head = 0;
+		int tail = 0;
+
+		for (int room = 0; room < rooms; room++) {
+			if (win[room]) {
+				distances[room] = 0;
+				queue[tail++] = room;
+			}
+		}
+
+		while (head < tail) {
+			int room = queue[head++];
+
+			for (int i = offsets[room]; i < offsets[room + 1]; i++) {
+				int from = sources[i] / count;
+
+				if (!done[from] && distances[from] < 0) {
+					distances[from] = distances[room] + 1;
+					hints[from] = (byte) (sources[i] % count);
+					queue[tail++] = from;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles the {@link AdventureRoom} enum into a map.
+	 *
+	 * @return the compiled map
+	 */
+	public static AdventureMap fromRooms() {
+		AdventureRoom[] rooms = AdventureRoom.values();
+
+		String[] clues = new String[rooms.length];
+		boolean[] done = new boolean[rooms.length];
+		boolean[] win = new boolean[rooms.length];
+		int[] moves = new int[rooms.length * DIRECTIONS.length];
+
+		for (AdventureRoom room : rooms) {
+			int i = room.ordinal();
+			clues[i] = room.toString();
+			done[i] = room.done();
+			win[i] = room.win();
+
+			for (Direction direction : DIRECTIONS) {
+				moves[i * DIRECTIONS.length + direction.ordinal()] = room.moveRoom(direction).ordinal();
+			}
+		}
+
+		return new AdventureMap(clues, done, win, moves, AdventureRoom.START_ROOM.ordinal());
+	}
+
+	/**
+	 * Loads a map from a text file.
+	 *
+	 * @param path the path to the map file
+	 * @return the compiled map
+	 * @throws IOException if unable to read the file
+	 * @throws IllegalArgumentException if the file is not a valid map
+	 */
+	public static AdventureMap load(Path path) throws IOException {
+		Map<String, Integer> names = new HashMap<>();
+		List<String> clues = new ArrayList<>();
+		List<String> types = new ArrayList<>();
+		List<int[]> rows = new ArrayList<>();
+		boolean layout = false;
+		int number = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				number++;
+				line = line.strip();
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				if (line.equals("layout")) {
+					layout = true;
+					continue;
+				}
+
+				String[] parts = line.split("\\s+", layout ? -1 : 4);
+
+				if (layout) {
+					int[] row = new int[parts.length];
+
+					for (int i = 0; i < parts.length; i++) {
+						Integer room = names.get(parts[i]);
+
+						if (room == null && !parts[i].equals(".")) {
+							throw new IllegalArgumentException(error(path, number, "Unknown room " + parts[i]));
+						}
+
+						row[i] = room == null ? -1 : room;
+					}
+
+					rows.add(row);
+				}
+				else {
+					if (parts.length != 4 || !parts[0].equals("room") || !parts[2].matches("start|room|lose|win")) {
+						throw new IllegalArgumentException(error(path, number, "Expected room [name] [type] [clue]"));
+					}
+
+					if (names.putIfAbsent(parts[1], clues.size()) != null) {
+						throw new IllegalArgumentException(error(path, number, "Duplicate room " + parts[1]));
+					}
+
+					types.add(parts[2]);
+					clues.add(parts[3]);
+				}
+			}
+		}
+
+		int start = types.indexOf("start");
+
+		if (start < 0 || types.lastIndexOf("start") != start) {
+			throw new IllegalArgumentException(error(path, number, "Expected exactly one start room"));
+		}
+
+		int size = clues.size();
+		boolean[] done = new boolean[size];
+		boolean[] win = new boolean[size];
+		int[] moves = new int[size * DIRECTIONS.length];
+
+		for (int room = 0; room < size; room++) {
+			done[room] = types.get(room).equals("lose") || types.get(room).equals("win");
+			win[room] = types.get(room).equals("win");
+
+			// rooms that are not in the layout cannot be left
+			Arrays.fill(moves, room * DIRECTIONS.length, (room + 1) * DIRECTIONS.length, room);
+		}
+
+		for (int y = 0; y < rows.size(); y++) {
+			for (int x = 0; x < rows.get(y).length; x++) {
+				int room = rows.get(y)[x];
+
+				if (room < 0) {
+					continue;
+				}
+
+				for (Direction direction : DIRECTIONS) {
+					int target = cell(rows, x + dx(direction), y + dy(direction));
+
+					if (target >= 0) {
+						moves[room * DIRECTIONS.length + direction.ordinal()] = target;
+					}
+				}
+			}
+		}
+
+		return new AdventureMap(clues.toArray(String[]::new), done, win, moves, start);
+	}
+
+	/**
+	 * Returns the room at a position in the layout.
+	 *
+	 * @param rows the layout rows
+	 * @param x the column
+	 * @param y the row
+	 * @return the room, or -1 if a wall or outside of the layout
+	 */
+	private static int cell(List<int[]> rows, int x, int y) {
+		if (y < 0 || y >= rows.size() || x < 0 || x >= rows.get(y).length) {
+			return -1;
+		}
+
+		return rows.get(y)[x];
+	}
+
+	/**
+	 * Returns the change in column when moving in a direction.
+	 *
+	 * @param direction the direction of movement
+	 * @return the change in column
+	 */
+	private static int dx(Direction direction) {
+		return direction == Direction.WEST ? -1 : direction == Direction.EAST ? 1 : 0;
+	}
+
+	/**
+	 * Returns the change in row when moving in a direction.
+	 *
+	 * @param direction the direction of movement
+	 * @return the change in row
+	 */
+	private static int dy(Direction direction) {
+		return direction == Direction.NORTH ? -1 : direction == Direction.SOUTH ? 1 : 0;
+	}
+
+	/**
+	 * Formats an error message for a line in a map file.
+	 *
+	 * @param path the path to the map file
+	 * @param number the line number
+	 * @param message the error message
+	 * @return the formatted message
+	 */
+	private static String error(Path path, int number, String message) {
+		return String.format("%s line %d: %s.", path, number, message);
+	}
+}
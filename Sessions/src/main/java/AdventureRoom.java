@@ -44,6 +44,30 @@ public enum AdventureRoom {
 	/** A room with a faint noise. */
 	NOISE_ROOM("You hear a faint noise, almost like purring.", false);
 
+	/** All rooms, cached since {@link #values()} makes a copy every call. */
+	private static final AdventureRoom[] ROOMS = values();
+
+	/** Number of columns in the room layout. */
+	private static final int COLUMNS = 3;
+
+	/** Number of directions. */
+	private static final int DIRECTIONS = Direction.values().length;
+
+	/**
+	 * The room reached from each room in each direction, indexed by room
+	 * ordinal times the number of directions plus the direction ordinal.
+	 */
+	private static final AdventureRoom[] MOVES = new AdventureRoom[ROOMS.length * DIRECTIONS];
+
+	static {
+		// work out the layout once instead of on every move
+		for (AdventureRoom room : ROOMS) {
+			for (Direction direction : Direction.values()) {
+				MOVES[room.ordinal() * DIRECTIONS + direction.ordinal()] = ROOMS[room.neighbor(direction)];
+			}
+		}
+	}
+
 	/** The clue given to the player when entering the room. */
 	private String clue;
 
@@ -76,63 +100,57 @@ public enum AdventureRoom {
 	}
 
 	/**
-	 * Tests whether we can move in the specified direction from the current room,
-	 * based on the room's ordinal value.
+	 * Returns whether the room wins the game.
+	 *
+	 * @return whether the room wins the game
+	 */
+	public boolean win() {
+		return this == YUMMY_ROOM;
+	}
+
+	/**
+	 * Tests whether we can move in the specified direction from the current room.
 	 *
 	 * @param direction the direction of movement
 	 * @return true if able to move in the provided direction
 	 */
 	public boolean canMove(Direction direction) {
-		boolean move = false;
-
-		switch (direction) {
-			case WEST:
-				move = this.ordinal() % 3 != 0;
-				break;
-			case EAST:
-				move = this.ordinal() % 3 != 2;
-				break;
-			case NORTH:
-				move = this.ordinal() > 2;
-				break;
-			case SOUTH:
-				move = this.ordinal() < 6;
-				break;
-			default:
-				assert false;
-		}
-
-		return move;
+		return moveRoom(direction) != this;
 	}
 
 	/**
-	 * Will move to the room in the specified direction if possible.
+	 * Will move to the room in the specified direction if possible. Uses a
+	 * table built when the enum is loaded, so this is a single array lookup.
 	 *
 	 * @param direction the direction of movement
 	 * @return the new room after moving
 	 */
 	public AdventureRoom moveRoom(Direction direction) {
-		AdventureRoom room = this;
-
-		if (this.canMove(direction)) {
-			switch (direction) {
-				case WEST:
-					room = AdventureRoom.values()[this.ordinal() - 1];
-					break;
-				case EAST:
-					room = AdventureRoom.values()[this.ordinal() + 1];
-					break;
-				case NORTH:
-					room = AdventureRoom.values()[this.ordinal() - 3];
-					break;
-				case SOUTH:
-					room = AdventureRoom.values()[this.ordinal() + 3];
-					break;
-				default:
-					assert false;
-			}
-		}
+		return MOVES[this.ordinal() * DIRECTIONS + direction.ordinal()];
+	}
 
-		return room;
+	/**
+	 * Finds the room next to this one in the layout, based on the room's ordinal
+	 * value.
+	 *
+	 * @param direction the direction of movement
+	 * @return the ordinal of the room in that direction, or of this room if
+	 *         there is a wall that way
+	 */
+	private int neighbor(Direction direction) {
+		int ordinal = this.ordinal();
+
+		switch (direction) {
+			case WEST:
+				return ordinal % COLUMNS != 0 ? ordinal - 1 : ordinal;
+			case EAST:
+				return ordinal % COLUMNS != COLUMNS - 1 ? ordinal + 1 : ordinal;
+			case NORTH:
+				return ordinal >= COLUMNS ? ordinal - COLUMNS : ordinal;
+			case SOUTH:
+				return ordinal < ROOMS.length - COLUMNS ? ordinal + COLUMNS : ordinal;
+			default:
+				throw new IllegalArgumentException(direction.name());
+		}
 	}
 }
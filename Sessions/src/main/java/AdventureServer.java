@@ -1,9 +1,14 @@
+import java.nio.file.Path;
+import java.util.List;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.session.NullSessionCache;
+import org.eclipse.jetty.server.session.SessionHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
 
 /**
  * Demonstrates how to use session tracking and enum types to create a simple
@@ -13,22 +18,44 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
  * @see AdventureServlet
  * @see AdventureRoom
  * @see Direction
+ * @see OffHeapSessionDataStore
  */
 public class AdventureServer {
 	/**
 	 * Initializes and starts the adventure game server.
 	 *
-	 * @param args unused
+	 * @param args use "token" to keep game state in signed cookies instead of
+	 *        sessions, "heap" to keep sessions in the default heap cache, or the
+	 *        path to a map file (like maps/mansion.txt) to play a different map
 	 * @throws Exception in unable to start or run server
 	 */
 	public static void main(String[] args) throws Exception {
+		List<String> options = List.of(args);
+
+		// play on a map from a file if one was provided
+		AdventureMap map = AdventureMap.DEFAULT;
+
+		for (String option : options) {
+			if (option.endsWith(".txt")) {
+				map = AdventureMap.load(Path.of(option));
+			}
+		}
+
 		// type of handler that supports sessions
 		ServletContextHandler servletContext = null;
 
 		// turn on sessions and set context
 		servletContext = new ServletContextHandler(ServletContextHandler.SESSIONS);
 		servletContext.setContextPath("/");
-		servletContext.addServlet(AdventureServlet.class, "/");
+
+		// keep sessions serialized off the heap unless requested otherwise
+		if (!options.contains("heap")) {
+			useOffHeapSessions(servletContext.getSessionHandler(), new OffHeapSessionDataStore());
+		}
+
+		// keep game state in signed cookies instead of sessions if requested
+		AdventureState state = options.contains("token") ? new TokenAdventureState() : new SessionAdventureState();
+		servletContext.addServlet(new ServletHolder(new AdventureServlet(state, map)), "/");
 
 		// default handler for favicon.ico requests
 		DefaultHandler defaultHandler = new DefaultHandler();
@@ -48,4 +75,18 @@ public class AdventureServer {
 		server.start();
 		server.join();
 	}
+
+	/**
+	 * Configures the session handler to keep sessions only in the provided
+	 * store. The null cache means sessions are loaded from the store for each
+	 * request instead of staying on the heap.
+	 *
+	 * @param sessions the session handler to configure
+	 * @param store the store to keep sessions in
+	 */
+	public static void useOffHeapSessions(SessionHandler sessions, OffHeapSessionDataStore store) {
+		NullSessionCache cache = new NullSessionCache(sessions);
+		cache.setSessionDataStore(store);
+		sessions.setSessionCache(cache);
+	}
 }
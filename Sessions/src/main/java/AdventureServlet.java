@@ -1,7 +1,5 @@
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -11,8 +9,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
-import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -23,6 +19,7 @@ import org.eclipse.jetty.util.log.Logger;
  * @see AdventureServer
  * @see AdventureServlet
  * @see AdventureRoom
+ * @see AdventureMap
  * @see Direction
  */
 public class AdventureServlet extends HttpServlet {
@@ -38,12 +35,47 @@ public class AdventureServlet extends HttpServlet {
 	/** Location of the HTML template for this servlet. */
 	private static final Path TEMPLATE_PATH = Path.of("html", "adventure.html");
 
+	/** The compiled HTML template, only read again if the file changes. */
+	private static final TemplateFile TEMPLATE = new TemplateFile(TEMPLATE_PATH);
+
+	/** Where each player's current room is kept. */
+	private final AdventureState state;
+
+	/** The rooms and how they connect. */
+	private final AdventureMap map;
+
+	/**
+	 * Initializes the servlet to keep track of the game using Jetty sessions.
+	 */
+	public AdventureServlet() {
+		this(new SessionAdventureState());
+	}
+
+	/**
+	 * Initializes the servlet to keep track of the game using the provided
+	 * state.
+	 *
+	 * @param state where each player's current room is kept
+	 */
+	public AdventureServlet(AdventureState state) {
+		this(state, AdventureMap.DEFAULT);
+	}
+
+	/**
+	 * Initializes the servlet to play on the provided map.
+	 *
+	 * @param state where each player's current room is kept
+	 * @param map the rooms and how they connect
+	 */
+	public AdventureServlet(AdventureState state, AdventureMap map) {
+		this.state = state;
+		this.map = map;
+	}
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		HttpSession session = request.getSession(true);
-
 		// tracks current game state
-		AdventureRoom room = null;
+		int room = -1;
 		Direction direction = null;
 
 		// replacement values for template
@@ -58,7 +90,7 @@ public class AdventureServlet extends HttpServlet {
 
 		// try to get current game state
 		try {
-			room = (AdventureRoom) session.getAttribute("room");
+			room = state.getRoom(request);
 			direction = Direction.valueOf(request.getParameter("direction"));
 		}
 		catch (Exception e) {
@@ -66,33 +98,30 @@ public class AdventureServlet extends HttpServlet {
 		}
 
 		// make sure values are valid
-		if (room == null || direction == null) {
-			log.info("Starting new game for session " + session.getId());
-			room = AdventureRoom.START_ROOM;
+		if (room < 0 || room >= map.size() || direction == null) {
+			room = map.getStart();
 			direction = Direction.EAST;
+			log.info("Starting new game.");
 		}
 		else {
-			int old = room.ordinal();
-			room = room.moveRoom(direction);
-			log.info("Session " + session.getId() + " moved from " + old + " to " + room.ordinal());
+			int old = room;
+			room = map.move(room, direction);
+			log.info("Game " + state.getId(request) + " moved from " + old + " to " + room);
 		}
 
 		// add room information to template values
-		values.put("room", Integer.toString(room.ordinal()));
-		values.put("message", room.toString());
+		Direction hint = map.getHint(room);
+		values.put("room", Integer.toString(room));
+		values.put("message", map.getClue(room));
 		values.put("direction", direction.name());
-
+		values.put("hint", hint == null ? "none" : hint.name() + " (" + map.getDistance(room) + " moves)");
 		values.put("action", response.encodeURL("/"));
-		values.put("session", session.getId());
 
-		// save the updated room value in the session
-		session.setAttribute("room", room);
-		
-		if (room.done()) {
+		if (map.isDone(room)) {
 			// game won or lost
-			log.info("Game finished for session " + session.getId());
-			session.setAttribute("room", AdventureRoom.START_ROOM);
-			session.invalidate();
+			log.info("Game " + state.getId(request) + " finished.");
+			values.put("session", state.getId(request));
+			state.endGame(request, response);
 
 			// make all of the direction buttons disabled
 			values.put("west", "disabled");
@@ -101,23 +130,23 @@ public class AdventureServlet extends HttpServlet {
 			values.put("south", "disabled");
 		}
 		else {
+			// save the updated room value
+			state.setRoom(request, response, room);
+			values.put("session", state.getId(request));
+
 			// calculate which buttons to disable
-			values.put("west", room.canMove(Direction.WEST) ? "" : "disabled");
-			values.put("east", room.canMove(Direction.EAST) ? "" : "disabled");
-			values.put("north", room.canMove(Direction.NORTH) ? "" : "disabled");
-			values.put("south", room.canMove(Direction.SOUTH) ? "" : "disabled");
+			values.put("west", map.canMove(room, Direction.WEST) ? "" : "disabled");
+			values.put("east", map.canMove(room, Direction.EAST) ? "" : "disabled");
+			values.put("north", map.canMove(room, Direction.NORTH) ? "" : "disabled");
+			values.put("south", map.canMove(room, Direction.SOUTH) ? "" : "disabled");
 		}
 
-		// setup template using commons-text
-		String template = Files.readString(TEMPLATE_PATH, StandardCharsets.UTF_8);
-
-		// generate html from template
-		StringSubstitutor replacer = new StringSubstitutor(values);
-		String html = replacer.replace(template);
+		// the form sends this back with the next move
+		values.put("step", state.getStep(request));
 
-		// write resulting html to response
+		// write html generated from the compiled template straight to response
 		PrintWriter writer = response.getWriter();
-		writer.write(html);
+		TEMPLATE.get().render(writer, values);
 
 		// finish up response
 		response.setContentType("text/html");
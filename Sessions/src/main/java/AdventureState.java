@@ -0,0 +1,61 @@
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Where the adventure game keeps track of which room each player is in. The
+ * state may be kept on the server (like in a session) or sent back and forth
+ * with the client (like in a signed cookie).
+ *
+ * @see AdventureServlet
+ * @see SessionAdventureState
+ * @see TokenAdventureState
+ */
+public interface AdventureState {
+
+	/**
+	 * Returns the room the player is currently in.
+	 *
+	 * @param request the http servlet request
+	 * @return the current room, or -1 if there is no valid game in progress
+	 *
+	 * @see AdventureMap
+	 */
+	public int getRoom(HttpServletRequest request);
+
+	/**
+	 * Saves the room the player moved to.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 * @param room the room the player is now in
+	 */
+	public void setRoom(HttpServletRequest request, HttpServletResponse response, int room);
+
+	/**
+	 * Ends the current game, so the next request starts a new one.
+	 *
+	 * @param request the http servlet request
+	 * @param response the http servlet response
+	 */
+	public void endGame(HttpServletRequest request, HttpServletResponse response);
+
+	/**
+	 * Returns an identifier for the current game, used for logging and debug
+	 * output.
+	 *
+	 * @param request the http servlet request
+	 * @return the game identifier
+	 */
+	public String getId(HttpServletRequest request);
+
+	/**
+	 * Returns a value the game form should submit back with the next move, or
+	 * an empty string if not needed.
+	 *
+	 * @param request the http servlet request
+	 * @return the value for the form to submit
+	 */
+	public default String getStep(HttpServletRequest request) {
+		return "";
+	}
+}
@@ -1,7 +1,5 @@
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -11,7 +9,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -34,6 +31,9 @@ public class CookieLandingServlet extends HttpServlet {
 	/** Location of the HTML template for this servlet. */
 	private static final Path TEMPLATE_PATH = Path.of("html", "cookie_landing.html");
 
+	/** The compiled HTML template, only read again if the file changes. */
+	private static final TemplateFile TEMPLATE = new TemplateFile(TEMPLATE_PATH);
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		log.info("GET " + request.getRequestURL().toString());
@@ -51,13 +51,9 @@ public class CookieLandingServlet extends HttpServlet {
 		values.put("method", "POST");
 		values.put("action", "/visits");
 
-		// generate html
-		String template = Files.readString(TEMPLATE_PATH, StandardCharsets.UTF_8);
-		StringSubstitutor replacer = new StringSubstitutor(values);
-
-		// output html
+		// output html generated from the compiled template
 		PrintWriter out = response.getWriter();
-		out.write(replacer.replace(template));
+		TEMPLATE.get().render(out, values);
 
 		// finish up response
 		response.setContentType("text/html");
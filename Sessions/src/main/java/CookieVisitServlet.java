@@ -3,7 +3,6 @@ import java.io.PrintWriter;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -15,7 +14,6 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -47,9 +45,15 @@ public class CookieVisitServlet extends HttpServlet {
 	/** Used to format date/time output. */
 	private static final String DATE_FORMAT = "hh:mm a 'on' EEEE, MMMM dd yyyy";
 
+	/** Formats the date/time output, only once per minute. */
+	private static final CachedDateFormat DATE_FORMATTER = new CachedDateFormat(DATE_FORMAT);
+
 	/** Location of the HTML template for this servlet. */
 	private static final Path TEMPLATE_PATH = Path.of("html", "cookie_visits.html");
 
+	/** The compiled HTML template, only read again if the file changes. */
+	private static final TemplateFile TEMPLATE = new TemplateFile(TEMPLATE_PATH);
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		log.info("GET " + request.getRequestURL().toString());
@@ -110,7 +114,7 @@ public class CookieVisitServlet extends HttpServlet {
 			response.addCookie(new Cookie(VISIT_COUNT, Integer.toString(count)));
 
 			// set current date and time
-			String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern(DATE_FORMAT));
+			String today = DATE_FORMATTER.format();
 
 			// check for existing date
 			if (cookies.containsKey(VISIT_DATE)) {
@@ -137,13 +141,9 @@ public class CookieVisitServlet extends HttpServlet {
 			values.put("disable_on", "disabled");
 		}
 
-		// generate html
-		String template = Files.readString(TEMPLATE_PATH, StandardCharsets.UTF_8);
-		StringSubstitutor replacer = new StringSubstitutor(values);
-
-		// output html
+		// output html generated from the compiled template
 		PrintWriter out = response.getWriter();
-		out.write(replacer.replace(template));
+		TEMPLATE.get().render(out, values);
 
 		// finish up response
 		response.setContentType("text/html");
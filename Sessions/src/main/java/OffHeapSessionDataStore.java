@@ -0,0 +1,738 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
+import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * Stores serialized sessions outside of the Java heap, either in a direct
+ * buffer or in a memory-mapped file. Use with a
+ * {@link org.eclipse.jetty.server.session.NullSessionCache} so sessions are
+ * only kept on the heap while a request is using them.
+ *
+ * <p>
+ * The region is split into fixed-size slots, and each session uses a chain of
+ * as many slots as it needs. All bookkeeping is kept in a few primitive arrays
+ * allocated up front, so the heap does not grow (and the garbage collector has
+ * nothing extra to trace) as sessions are added. When the maximum number of
+ * sessions is reached or there are not enough free slots, the least recently
+ * used sessions are evicted. A background sweeper frees expired sessions.
+ *
+ * <p>
+ * All operations share one lock. Each operation only copies bytes in or out
+ * of the region; serialization happens outside of the lock.
+ *
+ * @see AdventureServer
+ */
+public class OffHeapSessionDataStore extends AbstractSessionDataStore {
+
+	/** The Jetty logger for this class (not log4j2) */
+	private static Logger log = Log.getRootLogger();
+
+	/** The default maximum number of sessions. */
+	public static final int DEFAULT_MAX_SESSIONS = 100_000;
+
+	/** The default maximum bytes of session data. */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	/** The default bytes per slot. */
+	public static final int DEFAULT_SLOT_SIZE = 512;
+
+	/** The default seconds between sweeps for expired sessions. */
+	public static final int DEFAULT_SWEEP_INTERVAL = 60;
+
+	/** Number of slots checked by the sweeper each time it takes the lock. */
+	private static final int SWEEP_BATCH = 16 * 1024;
+
+	/** Marks the end of a chain or list. */
+	private static final int NONE = -1;
+
+	/** The region with the serialized sessions. */
+	private final ByteBuffer region;
+
+	/** Bytes per slot. */
+	private final int slotSize;
+
+	/** Total number of slots in the region. */
+	private final int slots;
+
+	/** Maximum number of sessions. */
+	private final int maxSessions;
+
+	/** The next slot in the chain, or {@link #NONE} for the last slot. */
+	private final int[] next;
+
+	/** Bytes of serialized data for the first slot of a session, otherwise 0. */
+	private final int[] length;
+
+	/** Hash of the session id for the first slot of a session. */
+	private final int[] hash;
+
+	/** Expiry time for the first slot of a session (0 means never). */
+	private final long[] expiry;
+
+	/** The next more recently used session. */
+	private final int[] newer;
+
+	/** The next less recently used session. */
+	private final int[] older;
+
+	/** Free slots, used as a stack. */
+	private final int[] free;
+
+	/** Open-addressing hash table of first slots plus 1 (0 means empty). */
+	private final int[] table;
+
+	/** Number of free slots. */
+	private int freeCount;
+
+	/** Number of sessions stored. */
+	private int size;
+
+	/** The most recently used session, or {@link #NONE}. */
+	private int newest;
+
+	/** The least recently used session, or {@link #NONE}. */
+	private int oldest;
+
+	/** Number of sessions evicted to make room. */
+	private long evictions;
+
+	/** Number of expired sessions freed by the sweeper. */
+	private long swept;
+
+	/** Seconds between sweeps for expired sessions. */
+	private int sweepInterval;
+
+	/** Runs the sweeper, or null when not started. */
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * Initializes a store in a direct buffer with the default limits.
+	 */
+	public OffHeapSessionDataStore() {
+		this(DEFAULT_MAX_SESSIONS, DEFAULT_MAX_BYTES, DEFAULT_SLOT_SIZE, null);
+	}
+
+	/**
+	 * Initializes a store.
+	 *
+	 * @param maxSessions the maximum number of sessions
+	 * @param maxBytes the maximum bytes of session data
+	 * @param slotSize bytes per slot (at least 256)
+	 * @param file the file to map (only used as memory, sessions are not kept
+	 *        after a restart), or null to use a direct buffer
+	 */
+	public OffHeapSessionDataStore(int maxSessions, long maxBytes, int slotSize, Path file) {
+		if (maxSessions < 1 || slotSize < 256 || maxBytes < slotSize) {
+			throw new IllegalArgumentException("Invalid session store limits.");
+		}
+
+		if (maxBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("At most " + Integer.MAX_VALUE + " bytes are supported.");
+		}
+
+		this.slotSize = slotSize;
+		this.slots = (int) (maxBytes / slotSize);
+		this.maxSessions = Math.min(maxSessions, slots);
+		this.region = file == null ? ByteBuffer.allocateDirect(slots * slotSize) : map(file, slots * slotSize);
+
+		this.next = new int[slots];
+		this.length = new int[slots];
+		this.hash = new int[slots];
+		this.expiry = new long[slots];
+		this.newer = new int[slots];
+		this.older = new int[slots];
+		this.free = new int[slots];
+
+		// keep the table at most half full so probes stay short
+		int capacity = Integer.highestOneBit(this.maxSessions) << 2;
+		this.table = new int[capacity];
+
+		// pop the lowest slots first
+		for (int i = 0; i < slots; i++) {
+			free[i] = slots - 1 - i;
+		}
+
+		this.freeCount = slots;
+		this.size = 0;
+		this.newest = NONE;
+		this.oldest = NONE;
+		this.sweepInterval = DEFAULT_SWEEP_INTERVAL;
+	}
+
+	/**
+	 * Maps a file into memory, creating or resizing it as needed.
+	 *
+	 * @param file the file to map
+	 * @param bytes the size of the mapping
+	 * @return the mapped region
+	 */
+	private static ByteBuffer map(Path file, int bytes) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to map " + file + ".", e);
+		}
+	}
+
+	/**
+	 * Sets the seconds between sweeps for expired sessions. Must be set before
+	 * the store is started.
+	 *
+	 * @param seconds seconds between sweeps (0 or less disables the sweeper)
+	 */
+	public void setSweepInterval(int seconds) {
+		this.sweepInterval = seconds;
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+		super.doStart();
+
+		if (sweepInterval > 0) {
+			sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "session-sweeper");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+			sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+			sweeper = null;
+		}
+
+		super.doStop();
+	}
+
+	@Override
+	public boolean isPassivating() {
+		return true;
+	}
+
+	@Override
+	public void doStore(String id, SessionData data, long lastSaveTime) throws Exception {
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = serialize(key, data);
+		int needed = (bytes.length + slotSize - 1) / slotSize;
+
+		if (needed > slots) {
+			throw new IllegalStateException("Session " + id + " needs " + bytes.length + " bytes.");
+		}
+
+		synchronized (this) {
+			int index = find(key, hashOf(key));
+
+			if (index >= 0) {
+				remove(index);
+			}
+
+			// evict the least recently used sessions until there is room
+			while (size >= maxSessions || freeCount < needed) {
+				log.debug("Evicting least recently used session.");
+				remove(find(oldest));
+				evictions++;
+			}
+
+			int first = write(bytes);
+			hash[first] = hashOf(key);
+			length[first] = bytes.length;
+			expiry[first] = data.getExpiry();
+			insert(first);
+			link(first);
+			size++;
+		}
+	}
+
+	@Override
+	public SessionData doLoad(String id) throws Exception {
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+		byte[] bytes;
+
+		synchronized (this) {
+			int index = find(key, hashOf(key));
+
+			if (index < 0) {
+				return null;
+			}
+
+			int first = table[index] - 1;
+			bytes = read(first);
+
+			// move to the most recently used end
+			unlink(first);
+			link(first);
+		}
+
+		return deserialize(bytes);
+	}
+
+	@Override
+	public boolean exists(String id) throws Exception {
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+
+		synchronized (this) {
+			int index = find(key, hashOf(key));
+			return index >= 0 && !isExpired(table[index] - 1, System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public boolean delete(String id) throws Exception {
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+
+		synchronized (this) {
+			int index = find(key, hashOf(key));
+
+			if (index < 0) {
+				return false;
+			}
+
+			remove(index);
+			return true;
+		}
+	}
+
+	@Override
+	public Set<String> doGetExpired(Set<String> candidates) {
+		long now = System.currentTimeMillis();
+		Set<String> expired = new HashSet<>();
+
+		for (String id : candidates) {
+			byte[] key = id.getBytes(StandardCharsets.UTF_8);
+
+			synchronized (this) {
+				int index = find(key, hashOf(key));
+
+				// sessions that are gone were evicted or swept, so are expired too
+				if (index < 0 || isExpired(table[index] - 1, now)) {
+					expired.add(id);
+				}
+			}
+		}
+
+		return expired;
+	}
+
+	/**
+	 * Frees every expired session. Only holds the lock for a batch of slots at a
+	 * time so requests are not blocked for the whole sweep.
+	 *
+	 * @return number of sessions freed
+	 */
+	public int sweep() {
+		long now = System.currentTimeMillis();
+		int count = 0;
+
+		for (int start = 0; start < slots; start += SWEEP_BATCH) {
+			int end = Math.min(slots, start + SWEEP_BATCH);
+
+			synchronized (this) {
+				int batch = 0;
+
+				for (int slot = start; slot < end; slot++) {
+					if (length[slot] > 0 && isExpired(slot, now)) {
+						remove(find(slot));
+						batch++;
+					}
+				}
+
+				swept += batch;
+				count += batch;
+			}
+		}
+
+		if (count > 0) {
+			log.info("Swept " + count + " expired sessions.");
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the number of sessions stored.
+	 *
+	 * @return number of sessions
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the bytes of the region in use, rounded up to whole slots.
+	 *
+	 * @return bytes in use
+	 */
+	public synchronized long getUsedBytes() {
+		return (long) (slots - freeCount) * slotSize;
+	}
+
+	/**
+	 * Returns the number of sessions evicted to make room for others.
+	 *
+	 * @return number of evicted sessions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of expired sessions freed by the sweeper.
+	 *
+	 * @return number of swept sessions
+	 */
+	public synchronized long getSwept() {
+		return swept;
+	}
+
+	/**
+	 * Checks whether the session starting at a slot is expired.
+	 *
+	 * @param first the first slot of the session
+	 * @param now the current time
+	 * @return true if the session is expired
+	 */
+	private boolean isExpired(int first, long now) {
+		return expiry[first] > 0 && expiry[first] <= now;
+	}
+
+	/**
+	 * Hashes a session id, spreading the bits so similar ids do not cluster.
+	 *
+	 * @param key the session id bytes
+	 * @return the hash
+	 */
+	private static int hashOf(byte[] key) {
+		int h = Arrays.hashCode(key);
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Finds the table index for a session id.
+	 *
+	 * @param key the session id bytes
+	 * @param h the hash of the session id
+	 * @return the table index, or -1 if not found
+	 */
+	private int find(byte[] key, int h) {
+		int mask = table.length - 1;
+
+		for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+			int first = table[i] - 1;
+
+			if (hash[first] == h && matches(first, key)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the table index for a session already known to be stored.
+	 *
+	 * @param first the first slot of the session
+	 * @return the table index
+	 */
+	private int find(int first) {
+		int mask = table.length - 1;
+		int i = hash[first] & mask;
+
+		while (table[i] != first + 1) {
+			i = (i + 1) & mask;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Checks whether the session starting at a slot has the given id. The id is
+	 * always stored at the start of the first slot.
+	 *
+	 * @param first the first slot of the session
+	 * @param key the session id bytes
+	 * @return true if the ids match
+	 */
+	private boolean matches(int first, byte[] key) {
+		int offset = first * slotSize;
+
+		if (region.getShort(offset) != key.length) {
+			return false;
+		}
+
+		for (int i = 0; i < key.length; i++) {
+			if (region.get(offset + Short.BYTES + i) != key[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds a session to the hash table.
+	 *
+	 * @param first the first slot of the session
+	 */
+	private void insert(int first) {
+		int mask = table.length - 1;
+		int i = hash[first] & mask;
+
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+
+		table[i] = first + 1;
+	}
+
+	/**
+	 * Removes a session from the hash table, the recently used list, and the
+	 * region.
+	 *
+	 * @param index the table index of the session
+	 */
+	private void remove(int index) {
+		int first = table[index] - 1;
+		int mask = table.length - 1;
+
+		// shift later entries back so lookups do not stop at the gap
+		int gap = index;
+		table[gap] = 0;
+
+		for (int i = (gap + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+			int home = hash[table[i] - 1] & mask;
+
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				table[gap] = table[i];
+				table[i] = 0;
+				gap = i;
+			}
+		}
+
+		unlink(first);
+		length[first] = 0;
+		size--;
+
+		for (int slot = first; slot != NONE; slot = next[slot]) {
+			free[freeCount++] = slot;
+		}
+	}
+
+	/**
+	 * Makes a session the most recently used.
+	 *
+	 * @param first the first slot of the session
+	 */
+	private void link(int first) {
+		older[first] = newest;
+		newer[first] = NONE;
+
+		if (newest != NONE) {
+			newer[newest] = first;
+		}
+
+		newest = first;
+
+		if (oldest == NONE) {
+			oldest = first;
+		}
+	}
+
+	/**
+	 * Removes a session from the recently used list.
+	 *
+	 * @param first the first slot of the session
+	 */
+	private void unlink(int first) {
+		if (newer[first] != NONE) {
+			older[newer[first]] = older[first];
+		}
+		else {
+			newest = older[first];
+		}
+
+		if (older[first] != NONE) {
+			newer[older[first]] = newer[first];
+		}
+		else {
+			oldest = newer[first];
+		}
+	}
+
+	/**
+	 * Copies bytes into a chain of free slots. The region position is shared,
+	 * so must be called while holding the lock.
+	 *
+	 * @param bytes the bytes to copy
+	 * @return the first slot of the chain
+	 */
+	private int write(byte[] bytes) {
+		int first = NONE;
+		int previous = NONE;
+
+		for (int offset = 0; offset < bytes.length; offset += slotSize) {
+			int slot = free[--freeCount];
+			int count = Math.min(slotSize, bytes.length - offset);
+
+			region.position(slot * slotSize);
+			region.put(bytes, offset, count);
+			next[slot] = NONE;
+
+			if (previous == NONE) {
+				first = slot;
+			}
+			else {
+				next[previous] = slot;
+			}
+
+			previous = slot;
+		}
+
+		return first;
+	}
+
+	/**
+	 * Copies the bytes of a session out of its chain of slots.
+	 *
+	 * @param first the first slot of the session
+	 * @return the stored bytes
+	 */
+	private byte[] read(int first) {
+		byte[] bytes = new byte[length[first]];
+		int slot = first;
+
+		for (int offset = 0; offset < bytes.length; offset += slotSize) {
+			region.position(slot * slotSize);
+			region.get(bytes, offset, Math.min(slotSize, bytes.length - offset));
+			slot = next[slot];
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Serializes a session, starting with its id so lookups can compare ids
+	 * without reading the rest.
+	 *
+	 * @param key the session id bytes
+	 * @param data the session data
+	 * @return the serialized bytes
+	 * @throws IOException if unable to serialize an attribute
+	 */
+	private static byte[] serialize(byte[] key, SessionData data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeShort(key.length);
+		out.write(key);
+		writeText(out, data.getContextPath());
+		writeText(out, data.getVhost());
+		writeText(out, data.getLastNode());
+		out.writeLong(data.getCreated());
+		out.writeLong(data.getAccessed());
+		out.writeLong(data.getLastAccessed());
+		out.writeLong(data.getCookieSet());
+		out.writeLong(data.getExpiry());
+		out.writeLong(data.getMaxInactiveMs());
+
+		try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+			SessionData.serializeAttributes(data, objects);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Deserializes a session.
+	 *
+	 * @param bytes the serialized bytes
+	 * @return the session data
+	 * @throws Exception if unable to deserialize an attribute
+	 */
+	private static SessionData deserialize(byte[] bytes) throws Exception {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+		byte[] key = new byte[in.readShort()];
+		in.readFully(key);
+
+		String id = new String(key, StandardCharsets.UTF_8);
+		String contextPath = readText(in);
+		String vhost = readText(in);
+		String lastNode = readText(in);
+		long created = in.readLong();
+		long accessed = in.readLong();
+		long lastAccessed = in.readLong();
+		long cookieSet = in.readLong();
+		long expiry = in.readLong();
+		long maxInactive = in.readLong();
+
+		SessionData data = new SessionData(id, contextPath, vhost, created, accessed, lastAccessed, maxInactive);
+		data.setLastNode(lastNode);
+		data.setCookieSet(cookieSet);
+		data.setExpiry(expiry);
+
+		try (ClassLoadingObjectInputStream objects = new ClassLoadingObjectInputStream(in)) {
+			SessionData.deserializeAttributes(data, objects);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Writes text that may be null.
+	 *
+	 * @param out the output to write to
+	 * @param text the text or null
+	 * @throws IOException if unable to write
+	 */
+	private static void writeText(DataOutputStream out, String text) throws IOException {
+		out.writeBoolean(text != null);
+
+		if (text != null) {
+			out.writeUTF(text);
+		}
+	}
+
+	/**
+	 * Reads text that may be null.
+	 *
+	 * @param in the input to read from
+	 * @return the text or null
+	 * @throws IOException if unable to read
+	 */
+	private static String readText(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[size=%d, used=%d, slots=%d, evictions=%d]", getClass().getSimpleName(),
+				getSize(), getUsedBytes(), slots, getEvictions());
+	}
+}
@@ -0,0 +1,41 @@
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Keeps track of the current room in the Jetty session. Every player uses
+ * server memory until the session expires, and requests must go to the server
+ * with their session.
+ *
+ * @see AdventureState
+ */
+public class SessionAdventureState implements AdventureState {
+
+	/** The session attribute used to store the room. */
+	private static final String ROOM = "room";
+
+	@Override
+	public int getRoom(HttpServletRequest request) {
+		Object room = request.getSession(true).getAttribute(ROOM);
+		return room instanceof Integer ? (Integer) room : -1;
+	}
+
+	@Override
+	public void setRoom(HttpServletRequest request, HttpServletResponse response, int room) {
+		request.getSession(true).setAttribute(ROOM, room);
+	}
+
+	@Override
+	public void endGame(HttpServletRequest request, HttpServletResponse response) {
+		HttpSession session = request.getSession(false);
+
+		if (session != null) {
+			session.invalidate();
+		}
+	}
+
+	@Override
+	public String getId(HttpServletRequest request) {
+		return request.getSession(true).getId();
+	}
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+/**
+ * Load tests the {@link OffHeapSessionDataStore}. First a local client starts
+ * many games on an adventure server, each in a new session. Then the store is
+ * filled directly (skipping HTTP, which is too slow for this) with a million
+ * sessions, and the heap used is compared to keeping the same sessions in a
+ * map on the heap.
+ *
+ * <p>
+ * Run with a larger heap (like -Xmx2g) if the map on the heap runs out of
+ * memory.
+ */
+public class SessionLoadTest {
+
+	/** The hard-coded port to run this server. */
+	public static final int PORT = 8081;
+
+	/** Number of clients making requests at the same time. */
+	public static final int CLIENTS = 16;
+
+	/** Number of sessions each client creates over HTTP. */
+	public static final int REQUESTS = 1000;
+
+	/** Number of sessions to create directly in the store. */
+	public static final int SESSIONS = 1_000_000;
+
+	/** Number of sessions between progress reports. */
+	public static final int REPORT = 250_000;
+
+	/** Bytes per slot, enough for one game session. */
+	public static final int SLOT_SIZE = 320;
+
+	/**
+	 * Starts new games from several clients at once, each without a cookie so
+	 * every request creates a new session.
+	 *
+	 * @param store the store used by the server
+	 * @throws Exception if unable to make requests
+	 */
+	private static void http(OffHeapSessionDataStore store) throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		HttpClient client = HttpClient.newHttpClient();
+		URI uri = URI.create("http://localhost:" + PORT + "/");
+
+		LongAdder ok = new LongAdder();
+		LongAdder failed = new LongAdder();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		Instant start = Instant.now();
+
+		for (int i = 0; i < CLIENTS; i++) {
+			futures.add(CompletableFuture.runAsync(() -> {
+				for (int j = 0; j < REQUESTS; j++) {
+					try {
+						HttpRequest request = HttpRequest.newBuilder(uri).build();
+						HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+
+						if (response.statusCode() == 200) {
+							ok.increment();
+						}
+						else {
+							failed.increment();
+						}
+					}
+					catch (IOException | InterruptedException e) {
+						failed.increment();
+					}
+				}
+			}, clients));
+		}
+
+		CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		Duration elapsed = Duration.between(start, Instant.now());
+		clients.shutdown();
+
+		double seconds = elapsed.toMillis() / 1000.0;
+		System.out.printf("HTTP: %d ok, %d failed in %.2f s (%.1f sessions/s)%n",
+				ok.sum(), failed.sum(), seconds, ok.sum() / seconds);
+		System.out.println("HTTP: " + store);
+	}
+
+	/**
+	 * Creates the session data for one game, like the adventure servlet does.
+	 *
+	 * @param i the session number
+	 * @return the session data
+	 */
+	private static SessionData session(int i) {
+		long now = System.currentTimeMillis();
+		String id = String.format("node0%024x.node0", i);
+
+		SessionData data = new SessionData(id, "/", "0.0.0.0", now, now, now, 30 * 60 * 1000);
+		data.setLastNode("node0");
+		data.setExpiry(now + data.getMaxInactiveMs());
+		data.setAttribute("room", i % AdventureMap.DEFAULT.size());
+		return data;
+	}
+
+	/**
+	 * Returns the heap used after a garbage collection.
+	 *
+	 * @return megabytes of heap used
+	 */
+	private static long heapUsed() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+	}
+
+	/**
+	 * Fills the store directly and reports the heap used along the way.
+	 *
+	 * @param store the store to fill
+	 * @throws Exception if unable to store a session
+	 */
+	private static void direct(OffHeapSessionDataStore store) throws Exception {
+		long before = heapUsed();
+		Instant start = Instant.now();
+
+		for (int i = 1; i <= SESSIONS; i++) {
+			SessionData data = session(i);
+			store.doStore(data.getId(), data, 0);
+
+			if (i % REPORT == 0) {
+				System.out.printf("Off-heap: %,9d sessions, %5d MB heap, %5d MB stored%n",
+						i, heapUsed() - before, store.getUsedBytes() / (1024 * 1024));
+			}
+		}
+
+		double seconds = Duration.between(start, Instant.now()).toMillis() / 1000.0;
+		System.out.printf("Off-heap: %.0f stores/s including reports, %s%n", SESSIONS / seconds, store);
+
+		// the first sessions should be evicted, and the latest still there
+		System.out.println("Off-heap: first session loaded: " + (store.doLoad(session(1).getId()) != null));
+		System.out.println("Off-heap: last session loaded:  " + (store.doLoad(session(SESSIONS).getId()) != null));
+	}
+
+	/**
+	 * Fills a map on the heap with the same sessions for comparison.
+	 */
+	private static void heap() {
+		long before = heapUsed();
+		Map<String, SessionData> map = new ConcurrentHashMap<>();
+
+		for (int i = 1; i <= SESSIONS; i++) {
+			SessionData data = session(i);
+			map.put(data.getId(), data);
+
+			if (i % REPORT == 0) {
+				System.out.printf("    Heap: %,9d sessions, %5d MB heap%n", i, heapUsed() - before);
+			}
+		}
+	}
+
+	/**
+	 * Starts the server, runs the load tests, and stops the server.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to start the server or make requests
+	 */
+	public static void main(String[] args) throws Exception {
+		OffHeapSessionDataStore store = new OffHeapSessionDataStore(
+				CLIENTS * REQUESTS, (long) CLIENTS * REQUESTS * SLOT_SIZE, SLOT_SIZE, null);
+
+		ServletContextHandler servletContext = new ServletContextHandler(ServletContextHandler.SESSIONS);
+		servletContext.setContextPath("/");
+		servletContext.addServlet(AdventureServlet.class, "/");
+		AdventureServer.useOffHeapSessions(servletContext.getSessionHandler(), store);
+
+		Server server = new Server(PORT);
+		server.setHandler(servletContext);
+		server.start();
+
+		http(store);
+		server.stop();
+
+		// leave room for only 90% of the sessions so eviction is tested too
+		int max = SESSIONS / 10 * 9;
+		direct(new OffHeapSessionDataStore(max, (long) max * SLOT_SIZE, SLOT_SIZE, null));
+		heap();
+	}
+}
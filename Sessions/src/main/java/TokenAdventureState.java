@@ -0,0 +1,365 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * Keeps track of the current room in a small signed cookie instead of on the
+ * server. Nothing is stored on the server, so no session lookup is needed and
+ * any server with the same key can handle any request.
+ *
+ * <p>
+ * The cookie holds the room, a random game id, the number of moves, and when
+ * the token was issued, followed by an HMAC-SHA256 signature so players cannot
+ * change their room. Tokens are rejected if the signature does not match, if
+ * they are too old, or if they were issued in the future. The game form
+ * submits back a signed tag for the game and move number, and moves without a
+ * tag or with the tag for a different move are rejected, so an old page cannot
+ * be submitted after the game moved on and other sites cannot guess the tag.
+ *
+ * <p>
+ * Without any server state, an old cookie can still be replayed until it
+ * expires. Keep the maximum age short if that matters.
+ *
+ * @see AdventureState
+ */
+public class TokenAdventureState implements AdventureState {
+
+	/** The Jetty logger for this class (not log4j2) */
+	private static Logger log = Log.getRootLogger();
+
+	/** The name of the cookie with the token. */
+	public static final String COOKIE = "adventure";
+
+	/** The form parameter with the signed move number. */
+	public static final String STEP = "step";
+
+	/** The default time before a token expires. */
+	public static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(30);
+
+	/** The token format version, so the format can change later. */
+	private static final byte VERSION = 2;
+
+	/** Bytes in the token before the signature. */
+	private static final int PAYLOAD_BYTES = 1 + Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+	/** Bytes signed for the move tag: a marker, the game id, and the move. */
+	private static final int STEP_BYTES = 1 + Long.BYTES + Integer.BYTES;
+
+	/** Marks move tag payloads, so they can never match a token signature. */
+	private static final byte STEP_MARKER = -VERSION;
+
+	/** Bytes of the signature to keep, which is plenty for this game. */
+	private static final int SIGNATURE_BYTES = 16;
+
+	/** The signature algorithm. */
+	private static final String ALGORITHM = "HmacSHA256";
+
+	/** Request attribute with the token accepted for this request. */
+	private static final String LOADED = TokenAdventureState.class.getName() + ".loaded";
+
+	/** Request attribute with the token saved during this request. */
+	private static final String SAVED = TokenAdventureState.class.getName() + ".saved";
+
+	/** The secret key for signing tokens. */
+	private final SecretKeySpec key;
+
+	/** Seconds before a token expires. */
+	private final long maxAge;
+
+	/** Provides the current time. */
+	private final Clock clock;
+
+	/** Creates random game ids. */
+	private final SecureRandom random;
+
+	/** Computes signatures. Mac objects are not thread-safe, so one per thread. */
+	private final ThreadLocal<Mac> mac;
+
+	/**
+	 * Initializes the token state with a random key, which only works with a
+	 * single server and only until it restarts.
+	 */
+	public TokenAdventureState() {
+		this(randomKey(), DEFAULT_MAX_AGE, Clock.systemUTC());
+	}
+
+	/**
+	 * Initializes the token state. Every server that should accept the same
+	 * tokens must use the same key.
+	 *
+	 * @param key the secret key for signing tokens (at least 32 bytes)
+	 * @param maxAge the time before a token expires
+	 * @param clock provides the current time
+	 */
+	public TokenAdventureState(byte[] key, Duration maxAge, Clock clock) {
+		if (key.length < 32) {
+			throw new IllegalArgumentException("Key must be at least 32 bytes.");
+		}
+
+		this.key = new SecretKeySpec(key, ALGORITHM);
+		this.maxAge = maxAge.toSeconds();
+		this.clock = clock;
+		this.random = new SecureRandom();
+
+		this.mac = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(this.key);
+				return mac;
+			}
+			catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	/**
+	 * Generates a random key.
+	 *
+	 * @return a random 32 byte key
+	 */
+	public static byte[] randomKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return key;
+	}
+
+	@Override
+	public int getRoom(HttpServletRequest request) {
+		Token token = read(request);
+
+		if (token == null) {
+			return -1;
+		}
+
+		// a missing or different move tag means the form is from an old page
+		String step = request.getParameter(STEP);
+
+		if (step == null) {
+			log.info("Rejected token for move " + token.step + " submitted without a move.");
+			return -1;
+		}
+
+		byte[] expected = stepTag(token).getBytes(StandardCharsets.US_ASCII);
+
+		if (!MessageDigest.isEqual(expected, step.getBytes(StandardCharsets.US_ASCII))) {
+			log.info("Rejected token for move " + token.step + " submitted with the tag for another move.");
+			return -1;
+		}
+
+		request.setAttribute(LOADED, token);
+		return token.room;
+	}
+
+	@Override
+	public void setRoom(HttpServletRequest request, HttpServletResponse response, int room) {
+		// continue the game only if its token was accepted, otherwise start over
+		Token previous = (Token) request.getAttribute(LOADED);
+		long game = previous != null ? previous.game : random.nextLong();
+		int step = previous != null ? previous.step + 1 : 0;
+
+		Token token = new Token(room, game, step, clock.instant().getEpochSecond());
+		request.setAttribute(SAVED, token);
+
+		Cookie cookie = new Cookie(COOKIE, encode(token));
+		cookie.setHttpOnly(true);
+		cookie.setPath("/");
+		cookie.setMaxAge((int) maxAge);
+		response.addCookie(cookie);
+	}
+
+	@Override
+	public void endGame(HttpServletRequest request, HttpServletResponse response) {
+		request.removeAttribute(SAVED);
+
+		Cookie cookie = new Cookie(COOKIE, "");
+		cookie.setPath("/");
+		cookie.setMaxAge(0);
+		response.addCookie(cookie);
+	}
+
+	@Override
+	public String getId(HttpServletRequest request) {
+		Token token = current(request);
+		return token == null ? "none" : Long.toHexString(token.game);
+	}
+
+	@Override
+	public String getStep(HttpServletRequest request) {
+		Token token = current(request);
+		return token == null ? "" : stepTag(token);
+	}
+
+	/**
+	 * Returns the signed tag for the game and move number of a token, which the
+	 * game form submits with the next move.
+	 *
+	 * @param token the token
+	 * @return the URL-safe move tag
+	 */
+	private String stepTag(Token token) {
+		ByteBuffer buffer = ByteBuffer.allocate(STEP_BYTES);
+		buffer.put(STEP_MARKER);
+		buffer.putLong(token.game);
+		buffer.putInt(token.step);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(sign(buffer.array(), STEP_BYTES));
+	}
+
+	/**
+	 * Returns the token saved during this request, or the one sent with it.
+	 *
+	 * @param request the http servlet request
+	 * @return the current token or null if none
+	 */
+	private Token current(HttpServletRequest request) {
+		Token saved = (Token) request.getAttribute(SAVED);
+		return saved != null ? saved : read(request);
+	}
+
+	/**
+	 * Reads and verifies the token sent with the request.
+	 *
+	 * @param request the http servlet request
+	 * @return the token or null if missing, invalid, or expired
+	 */
+	private Token read(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+
+		if (cookies == null) {
+			return null;
+		}
+
+		for (Cookie cookie : cookies) {
+			if (COOKIE.equals(cookie.getName())) {
+				return decode(cookie.getValue());
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Encodes and signs the token as URL-safe text.
+	 *
+	 * @param token the token to encode
+	 * @return the encoded token
+	 */
+	private String encode(Token token) {
+		ByteBuffer buffer = ByteBuffer.allocate(PAYLOAD_BYTES + SIGNATURE_BYTES);
+		buffer.put(VERSION);
+		buffer.putInt(token.room);
+		buffer.putLong(token.game);
+		buffer.putInt(token.step);
+		buffer.putLong(token.issued);
+		buffer.put(sign(buffer.array(), PAYLOAD_BYTES));
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+	}
+
+	/**
+	 * Decodes and verifies a token.
+	 *
+	 * @param text the encoded token
+	 * @return the token or null if invalid or expired
+	 */
+	private Token decode(String text) {
+		byte[] bytes;
+
+		try {
+			bytes = Base64.getUrlDecoder().decode(text);
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+
+		if (bytes.length != PAYLOAD_BYTES + SIGNATURE_BYTES || bytes[0] != VERSION) {
+			return null;
+		}
+
+		byte[] expected = sign(bytes, PAYLOAD_BYTES);
+		byte[] actual = Arrays.copyOfRange(bytes, PAYLOAD_BYTES, bytes.length);
+
+		// compare in constant time so the signature cannot be guessed byte by byte
+		if (!MessageDigest.isEqual(expected, actual)) {
+			log.info("Rejected token with an invalid signature.");
+			return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, PAYLOAD_BYTES - 1);
+		int room = buffer.getInt();
+		long game = buffer.getLong();
+		int step = buffer.getInt();
+		long issued = buffer.getLong();
+
+		long now = clock.instant().getEpochSecond();
+
+		if (issued > now + 60 || now - issued > maxAge) {
+			log.info("Rejected expired token for game " + Long.toHexString(game) + ".");
+			return null;
+		}
+
+		if (room < 0) {
+			return null;
+		}
+
+		return new Token(room, game, step, issued);
+	}
+
+	/**
+	 * Signs the payload at the start of the bytes.
+	 *
+	 * @param bytes the bytes, starting with the payload
+	 * @param length the number of payload bytes
+	 * @return the truncated signature
+	 */
+	private byte[] sign(byte[] bytes, int length) {
+		Mac signer = mac.get();
+		signer.update(bytes, 0, length);
+		return Arrays.copyOf(signer.doFinal(), SIGNATURE_BYTES);
+	}
+
+	/**
+	 * The game state stored in a token.
+	 */
+	private static class Token {
+
+		/** The current room. */
+		private final int room;
+
+		/** Random id for the game. */
+		private final long game;
+
+		/** Number of moves made in this game. */
+		private final int step;
+
+		/** Epoch seconds when the token was issued. */
+		private final long issued;
+
+		/**
+		 * Initializes a token.
+		 *
+		 * @param room the current room
+		 * @param game random id for the game
+		 * @param step number of moves made in this game
+		 * @param issued epoch seconds when the token was issued
+		 */
+		private Token(int room, long game, int step, long issued) {
+			this.room = room;
+			this.game = game;
+			this.step = step;
+			this.issued = issued;
+		}
+	}
+}
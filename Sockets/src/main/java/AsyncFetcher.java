@@ -0,0 +1,673 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Fetches many URLs at once without waiting for each one, unlike
+ * {@link HttpsFetcher#fetchURL(URL)}. Every URL gets a
+ * {@link CompletableFuture} that completes with its response. Only a limited
+ * number of fetches run at once overall and for each host; the rest wait in a
+ * queue for their host, like in the crawler {@link Frontier}.
+ *
+ * <p>
+ * Each fetch blocks a thread while it waits on the network. When the JDK has
+ * virtual threads, which are cheap enough to have tens of thousands at once,
+ * each fetch gets its own virtual thread. Otherwise the fetches run on a
+ * bounded pool of ordinary threads, which also limits how many run at once.
+ *
+ * <p>
+ * Every fetch has to finish within a timeout. If asked to fail fast, the first
+ * fetch that fails cancels the rest of its batch, including fetches that are
+ * already running. A response with an error status, like 404, is a result and
+ * not a failure.
+ *
+ * @see HttpsFetcher
+ * @see ResponseStream
+ */
+public class AsyncFetcher implements AutoCloseable {
+
+	/** The most ordinary threads used if virtual threads are not available. */
+	public static final int MAX_PLATFORM_THREADS = 256;
+
+	/** Runs the fetches. */
+	private final ExecutorService executor;
+
+	/** Closes the connections of fetches that take too long. */
+	private final ScheduledExecutorService timer;
+
+	/** Whether the fetches run on virtual threads. */
+	private final boolean virtual;
+
+	/** Maximum number of fetches at once. */
+	private final int maxConcurrent;
+
+	/** Maximum number of fetches at once per host. */
+	private final int maxPerHost;
+
+	/** Milliseconds each fetch may take. */
+	private final int timeout;
+
+	/** Maximum number of body bytes for each response. */
+	private final long maxBytes;
+
+	/** The queue for each host. */
+	private final Map<String, Host> hosts;
+
+	/** Hosts with queued fetches that may start another fetch. */
+	private final ArrayDeque<Host> ready;
+
+	/** Number of fetches running. */
+	private int running;
+
+	/** Most fetches running at once. */
+	private int peak;
+
+	/** The connections of every running fetch. */
+	private final Set<Socket> sockets;
+
+	/** Whether this fetcher has been closed. */
+	private volatile boolean closed;
+
+	/**
+	 * Initializes a fetcher.
+	 *
+	 * @param maxConcurrent maximum number of fetches at once
+	 * @param maxPerHost maximum number of fetches at once per host
+	 * @param timeout milliseconds each fetch may take
+	 * @param maxBytes maximum number of body bytes for each response
+	 */
+	public AsyncFetcher(int maxConcurrent, int maxPerHost, int timeout, long maxBytes) {
+		ExecutorService virtualExecutor = newVirtualExecutor();
+
+		this.virtual = virtualExecutor != null;
+		this.maxConcurrent = virtual ? maxConcurrent : Math.min(maxConcurrent, MAX_PLATFORM_THREADS);
+		this.executor = virtual ? virtualExecutor : Executors.newFixedThreadPool(this.maxConcurrent, runnable -> {
+			Thread thread = new Thread(runnable, "async-fetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "async-fetcher-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.maxPerHost = maxPerHost;
+		this.timeout = timeout;
+		this.maxBytes = maxBytes;
+		this.hosts = new HashMap<>();
+		this.ready = new ArrayDeque<>();
+		this.running = 0;
+		this.peak = 0;
+		this.sockets = ConcurrentHashMap.newKeySet();
+		this.closed = false;
+	}
+
+	/**
+	 * Creates an executor that runs each task on a new virtual thread, if the
+	 * JDK supports them. Uses reflection so this still compiles and runs on
+	 * older JDKs.
+	 *
+	 * @return the executor, or null if virtual threads are not available
+	 */
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			// missing before JDK 19, and a disabled preview feature before JDK 21
+			return null;
+		}
+	}
+
+	/**
+	 * Starts fetching several URLs. See {@link #fetchAll(Collection, boolean)}.
+	 *
+	 * @param urls the urls to fetch
+	 * @return a future for each url, in the same order as the urls
+	 */
+	public List<CompletableFuture<FetchResponse>> fetchAll(Collection<URL> urls) {
+		return fetchAll(urls, false);
+	}
+
+	/**
+	 * Starts fetching several URLs and returns right away. Each future
+	 * completes with the response, or exceptionally if the fetch failed, timed
+	 * out, was cancelled, or the fetcher was closed.
+	 *
+	 * @param urls the urls to fetch
+	 * @param failFast whether the first failed fetch cancels the others
+	 * @return a future for each url, in the same order as the urls
+	 */
+	public List<CompletableFuture<FetchResponse>> fetchAll(Collection<URL> urls, boolean failFast) {
+		Batch batch = new Batch(failFast);
+
+		for (URL url : urls) {
+			batch.jobs.add(new Job(url, batch));
+		}
+
+		boolean queued = false;
+
+		synchronized (this) {
+			if (!closed) {
+				for (Job job : batch.jobs) {
+					Host host = hosts.computeIfAbsent(key(job.url), key -> new Host(key));
+					host.jobs.add(job);
+					markReady(host);
+				}
+
+				queued = true;
+			}
+		}
+
+		if (queued) {
+			dispatch();
+		}
+		else {
+			for (Job job : batch.jobs) {
+				job.closed();
+			}
+		}
+
+		List<CompletableFuture<FetchResponse>> futures = new ArrayList<>(batch.jobs.size());
+
+		for (Job job : batch.jobs) {
+			futures.add(job.future);
+		}
+
+		return futures;
+	}
+
+	/**
+	 * Returns the futures in the order they complete, waiting for each one as
+	 * needed, so results can be handled as soon as they are ready.
+	 *
+	 * @param <T> the type of result
+	 * @param futures the futures
+	 * @return a stream of the same futures, each already completed
+	 */
+	public static <T> Stream<CompletableFuture<T>> inCompletionOrder(List<CompletableFuture<T>> futures) {
+		BlockingQueue<CompletableFuture<T>> completed = new LinkedBlockingQueue<>();
+
+		for (CompletableFuture<T> future : futures) {
+			future.whenComplete((result, error) -> completed.add(future));
+		}
+
+		return Stream.generate(() -> {
+			try {
+				return completed.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+		}).limit(futures.size());
+	}
+
+	/**
+	 * Starts queued fetches until the overall limit is reached or no host may
+	 * start another fetch.
+	 */
+	private void dispatch() {
+		List<Job> started = new ArrayList<>();
+
+		synchronized (this) {
+			while (!closed && running < maxConcurrent && !ready.isEmpty()) {
+				Host host = ready.poll();
+				host.ready = false;
+
+				Job job = host.jobs.poll();
+				host.running++;
+				running++;
+				peak = Math.max(peak, running);
+				started.add(job);
+
+				markReady(host);
+			}
+		}
+
+		for (Job job : started) {
+			try {
+				executor.execute(job);
+			}
+			catch (RejectedExecutionException e) {
+				// closed after the fetch was taken from its queue
+				job.closed();
+			}
+		}
+	}
+
+	/**
+	 * Marks a fetch as finished, so another fetch may start.
+	 *
+	 * @param job the finished fetch
+	 */
+	private void finished(Job job) {
+		synchronized (this) {
+			// closing already forgot every host
+			if (closed) {
+				return;
+			}
+
+			Host host = hosts.get(key(job.url));
+			host.running--;
+			running--;
+			markReady(host);
+
+			// forget hosts with nothing left to do
+			if (host.running == 0 && host.jobs.isEmpty()) {
+				hosts.remove(host.key);
+			}
+		}
+
+		dispatch();
+	}
+
+	/**
+	 * Adds a host to the ready hosts if it has queued fetches and room for
+	 * another one.
+	 *
+	 * @param host the host
+	 */
+	private void markReady(Host host) {
+		if (!host.ready && host.running < maxPerHost && !host.jobs.isEmpty()) {
+			host.ready = true;
+			ready.add(host);
+		}
+	}
+
+	/**
+	 * Returns the key for the host of a URL.
+	 *
+	 * @param url the url
+	 * @return the protocol, host name, and port
+	 */
+	private static String key(URL url) {
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+
+	/**
+	 * Fetches one URL on the current thread, closing the connection if it takes
+	 * longer than the timeout.
+	 *
+	 * @param url the url to fetch
+	 * @param batch the batch of the fetch, to track the open connection
+	 * @return the response
+	 * @throws IOException if unable to fetch the url or it took too long
+	 */
+	private FetchResponse fetch(URL url, Batch batch) throws IOException {
+		try (Socket socket = HttpsFetcher.openConnection(url, timeout)) {
+			AtomicBoolean timedOut = new AtomicBoolean(false);
+			ScheduledFuture<?> watchdog = timer.schedule(() -> {
+				timedOut.set(true);
+				close(socket);
+			}, timeout, TimeUnit.MILLISECONDS);
+			batch.sockets.add(socket);
+			sockets.add(socket);
+
+			try {
+				if (batch.cancelled) {
+					throw new CancellationException();
+				}
+
+				// close() may have missed this socket
+				if (closed) {
+					throw new IOException("Fetcher was closed: " + url);
+				}
+
+				// closing this writer would close the socket, so it is left open
+				PrintWriter request = new PrintWriter(socket.getOutputStream());
+				HttpsFetcher.printGetRequest(request, url);
+
+				BufferedInputStream input = new BufferedInputStream(socket.getInputStream());
+				return ResponseStream.read(input, maxBytes, null).toResponse();
+			}
+			catch (IOException e) {
+				if (timedOut.get() && !batch.cancelled) {
+					throw new SocketTimeoutException("Timed out after " + timeout + " ms: " + url);
+				}
+
+				throw e;
+			}
+			finally {
+				watchdog.cancel(false);
+				batch.sockets.remove(socket);
+				sockets.remove(socket);
+			}
+		}
+	}
+
+	/**
+	 * Closes a socket, ignoring any errors.
+	 *
+	 * @param socket the socket
+	 */
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		}
+		catch (IOException e) {
+			// nothing else to do
+		}
+	}
+
+	/**
+	 * Returns whether fetches run on virtual threads.
+	 *
+	 * @return true if using virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Returns the maximum number of fetches at once, which is lower than asked
+	 * for if virtual threads are not available.
+	 *
+	 * @return maximum number of fetches at once
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * Returns the most fetches that have run at once.
+	 *
+	 * @return most fetches at once
+	 */
+	public synchronized int getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Stops the threads. Fetches still queued fail right away, and fetches
+	 * still running fail once their connections are closed.
+	 */
+	@Override
+	public void close() {
+		List<Job> queued = new ArrayList<>();
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			for (Host host : hosts.values()) {
+				queued.addAll(host.jobs);
+			}
+
+			hosts.clear();
+			ready.clear();
+		}
+
+		for (Job job : queued) {
+			job.closed();
+		}
+
+		// interrupting does not stop a thread blocked on a socket
+		for (Socket socket : sockets) {
+			close(socket);
+		}
+
+		for (Runnable job : executor.shutdownNow()) {
+			((Job) job).closed();
+		}
+
+		timer.shutdownNow();
+	}
+
+	/**
+	 * Compares fetching local URLs one at a time with {@link HttpsFetcher}
+	 * against fetching them all at once, then shows timeouts, failing fast, and
+	 * handling results as they complete.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to fetch urls
+	 */
+	public static void main(String[] args) throws Exception {
+		int count = 20000;
+
+		try (HttpStubServer server = new HttpStubServer(HttpStubServer.PORT)) {
+			List<URL> urls = new ArrayList<>();
+
+			// spread over two host names for the per-host limit
+			for (int i = 0; i < count; i++) {
+				String host = i % 2 == 0 ? "localhost" : "127.0.0.1";
+				urls.add(new URL("http://" + host + ":" + HttpStubServer.PORT + "/page/" + i));
+			}
+
+			long start = System.nanoTime();
+
+			for (URL url : urls.subList(0, 1000)) {
+				HttpsFetcher.fetchURL(url);
+			}
+
+			report("One at a time", start, 1000);
+
+			try (AsyncFetcher fetcher = new AsyncFetcher(10000, 128, 10_000, 1024 * 1024)) {
+				System.out.println("Virtual threads: " + fetcher.isVirtual() + ", at most " + fetcher.getMaxConcurrent() + " at once");
+
+				start = System.nanoTime();
+				List<CompletableFuture<FetchResponse>> futures = fetcher.fetchAll(urls);
+				CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+				report("All at once", start, count);
+				System.out.println("Peak fetches at once: " + fetcher.getPeak());
+
+				for (int i = 0; i < count; i++) {
+					if (!futures.get(i).join().getText().contains(urls.get(i).getPath())) {
+						throw new IllegalStateException("Wrong page for " + urls.get(i));
+					}
+				}
+			}
+
+			try (AsyncFetcher fetcher = new AsyncFetcher(100, 100, 500, 1024 * 1024)) {
+				String base = server.getBase();
+
+				// each slow page takes longer than the timeout
+				start = System.nanoTime();
+				List<CompletableFuture<FetchResponse>> slow = fetcher.fetchAll(List.of(
+						new URL(base + "/slow/2000"), new URL(base + "/slow/3000"), new URL(base + "/page/fast")));
+
+				for (CompletableFuture<FetchResponse> future : slow) {
+					System.out.println("Timeout: " + future.handle((response, error) -> response != null ? response : error).join());
+				}
+
+				report("Timeouts", start, slow.size());
+
+				// the refused connection cancels the slow fetches
+				List<URL> batch = new ArrayList<>();
+
+				for (int i = 0; i < 50; i++) {
+					batch.add(new URL(base + "/slow/" + (400 + i)));
+				}
+
+				batch.add(new URL("http://localhost:1/refused"));
+
+				start = System.nanoTime();
+				List<CompletableFuture<FetchResponse>> failing = fetcher.fetchAll(batch, true);
+				long cancelled = failing.stream()
+						.filter(future -> future.handle((response, error) -> error).join() instanceof CancellationException)
+						.count();
+
+				report("Fail fast", start, batch.size());
+				System.out.println("Cancelled " + cancelled + " of " + batch.size());
+
+				// handle each result as soon as it is ready
+				List<CompletableFuture<FetchResponse>> racing = fetcher.fetchAll(List.of(
+						new URL(base + "/slow/300"), new URL(base + "/slow/100"), new URL(base + "/slow/200")));
+
+				inCompletionOrder(racing).map(CompletableFuture::join).map(FetchResponse::getText)
+						.forEach(text -> System.out.println("Completed: " + text));
+			}
+		}
+	}
+
+	/**
+	 * Outputs the time taken for a run.
+	 *
+	 * @param name the name to output
+	 * @param start the start time in nanoseconds
+	 * @param count the number of fetches
+	 */
+	private static void report(String name, long start, int count) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-14s %6d fetches in %6.3f s, %8.1f fetches/s%n", name, count, seconds, count / seconds);
+	}
+
+	/**
+	 * The fetches started by one call to {@link #fetchAll(Collection, boolean)}.
+	 */
+	private static class Batch {
+
+		/** Whether the first failed fetch cancels the others. */
+		private final boolean failFast;
+
+		/** The fetches in this batch. */
+		private final List<Job> jobs;
+
+		/** The connections of fetches in this batch that are running. */
+		private final Set<Socket> sockets;
+
+		/** Whether this batch was cancelled. */
+		private volatile boolean cancelled;
+
+		/**
+		 * Initializes an empty batch.
+		 *
+		 * @param failFast whether the first failed fetch cancels the others
+		 */
+		private Batch(boolean failFast) {
+			this.failFast = failFast;
+			this.jobs = new ArrayList<>();
+			this.sockets = ConcurrentHashMap.newKeySet();
+			this.cancelled = false;
+		}
+
+		/**
+		 * Cancels every fetch that has not finished, and closes the connections
+		 * of the ones that are running.
+		 */
+		private void cancel() {
+			cancelled = true;
+
+			for (Job job : jobs) {
+				job.future.cancel(false);
+			}
+
+			for (Socket socket : sockets) {
+				close(socket);
+			}
+		}
+	}
+
+	/**
+	 * A fetch of one URL.
+	 */
+	private class Job implements Runnable {
+
+		/** The url to fetch. */
+		private final URL url;
+
+		/** The batch of this fetch. */
+		private final Batch batch;
+
+		/** Completes with the response. */
+		private final CompletableFuture<FetchResponse> future;
+
+		/**
+		 * Initializes a fetch.
+		 *
+		 * @param url the url to fetch
+		 * @param batch the batch of this fetch
+		 */
+		private Job(URL url, Batch batch) {
+			this.url = url;
+			this.batch = batch;
+			this.future = new CompletableFuture<>();
+		}
+
+		/**
+		 * Fails this fetch because the fetcher was closed before it finished.
+		 */
+		private void closed() {
+			future.completeExceptionally(new IOException("Fetcher was closed: " + url));
+		}
+
+		@Override
+		public void run() {
+			try {
+				// skip fetches that were cancelled while queued
+				if (!future.isDone()) {
+					future.complete(fetch(url, batch));
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				if (future.completeExceptionally(e) && batch.failFast) {
+					batch.cancel();
+				}
+			}
+			finally {
+				finished(this);
+			}
+		}
+	}
+
+	/**
+	 * The queue and number of fetches running for one host.
+	 */
+	private static class Host {
+
+		/** The protocol, host name, and port. */
+		private final String key;
+
+		/** The queued fetches for this host. */
+		private final ArrayDeque<Job> jobs;
+
+		/** Number of fetches running for this host. */
+		private int running;
+
+		/** Whether this host is in the ready hosts. */
+		private boolean ready;
+
+		/**
+		 * Initializes an empty host queue.
+		 *
+		 * @param key the protocol, host name, and port
+		 */
+		private Host(String key) {
+			this.key = key;
+			this.jobs = new ArrayDeque<>();
+			this.running = 0;
+			this.ready = false;
+		}
+	}
+}
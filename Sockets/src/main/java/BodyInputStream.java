@@ -0,0 +1,238 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body of one HTTP response from a connection, stopping exactly where
+ * the body ends so the connection can be used for the next response. The end
+ * is found from the Content-Length header, from the chunked transfer encoding,
+ * or when the server closes the connection.
+ *
+ * <p>
+ * Throws an exception once more than a maximum number of bytes are read, so a
+ * huge or endless response cannot fill up the disk or memory of the caller.
+ * Closing this stream does not close the connection.
+ *
+ * @see ResponseStream
+ */
+public class BodyInputStream extends InputStream {
+
+	/** The connection input. */
+	private final InputStream input;
+
+	/** Whether the body is sent in chunks. */
+	private final boolean chunked;
+
+	/** The maximum number of body bytes to read. */
+	private final long maxBytes;
+
+	/**
+	 * The bytes left in the body or current chunk, or -1 if the body ends when
+	 * the connection closes.
+	 */
+	private long remaining;
+
+	/** The number of body bytes read so far. */
+	private long count;
+
+	/** Whether the end of the body was reached. */
+	private boolean finished;
+
+	/** Whether this stream was closed. */
+	private boolean closed;
+
+	/**
+	 * Initializes a body stream.
+	 *
+	 * @param input the connection input
+	 * @param chunked whether the body is sent in chunks
+	 * @param remaining the bytes in the body, 0 for chunked, or -1 if unknown
+	 * @param maxBytes the maximum number of body bytes to read
+	 */
+	private BodyInputStream(InputStream input, boolean chunked, long remaining, long maxBytes) {
+		this.input = input;
+		this.chunked = chunked;
+		this.remaining = remaining;
+		this.maxBytes = maxBytes;
+		this.count = 0;
+		this.finished = !chunked && remaining == 0;
+		this.closed = false;
+	}
+
+	/**
+	 * Creates a stream for a body with a known length.
+	 *
+	 * @param input the connection input
+	 * @param length the number of bytes in the body
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @return the body stream
+	 * @throws IOException if the length is invalid or larger than the maximum
+	 */
+	public static BodyInputStream fixed(InputStream input, long length, long maxBytes) throws IOException {
+		if (length < 0) {
+			throw new IOException("Invalid Content-Length: " + length);
+		}
+
+		if (length > maxBytes) {
+			throw new IOException("Body of " + length + " bytes is larger than " + maxBytes + " bytes.");
+		}
+
+		return new BodyInputStream(input, false, length, maxBytes);
+	}
+
+	/**
+	 * Creates a stream for a body sent with the chunked transfer encoding. The
+	 * trailer headers after the last chunk are skipped.
+	 *
+	 * @param input the connection input
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @return the body stream
+	 */
+	public static BodyInputStream chunked(InputStream input, long maxBytes) {
+		return new BodyInputStream(input, true, 0, maxBytes);
+	}
+
+	/**
+	 * Creates a stream for a body that ends when the connection is closed.
+	 *
+	 * @param input the connection input
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @return the body stream
+	 */
+	public static BodyInputStream untilClosed(InputStream input, long maxBytes) {
+		return new BodyInputStream(input, false, -1, maxBytes);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+
+		if (length == 0) {
+			return 0;
+		}
+
+		if (chunked && remaining == 0 && !finished) {
+			nextChunk();
+		}
+
+		if (finished) {
+			return -1;
+		}
+
+		int wanted = remaining < 0 ? length : (int) Math.min(length, remaining);
+		int read = input.read(bytes, offset, wanted);
+
+		if (read < 0) {
+			if (remaining < 0) {
+				finished = true;
+				return -1;
+			}
+
+			throw new EOFException("Connection closed after " + count + " body bytes.");
+		}
+
+		count += read;
+
+		if (count > maxBytes) {
+			closed = true;
+			throw new IOException("Body is larger than " + maxBytes + " bytes.");
+		}
+
+		if (remaining > 0) {
+			remaining -= read;
+
+			if (remaining == 0) {
+				if (chunked) {
+					// every chunk is followed by a line break
+					if (!"".equals(ResponseStream.readLine(input))) {
+						throw new IOException("Missing line break after chunk.");
+					}
+				}
+				else {
+					finished = true;
+				}
+			}
+		}
+
+		return read;
+	}
+
+	/**
+	 * Reads the size line of the next chunk, and the trailer headers if it is
+	 * the last chunk.
+	 *
+	 * @throws IOException if the chunk size is invalid or the connection closes
+	 */
+	private void nextChunk() throws IOException {
+		String line = ResponseStream.readLine(input);
+
+		if (line == null) {
+			throw new EOFException("Connection closed before last chunk.");
+		}
+
+		// ignore any chunk extensions after the size
+		int end = line.indexOf(';');
+
+		try {
+			remaining = Long.parseLong((end < 0 ? line : line.substring(0, end)).strip(), 16);
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid chunk size: " + line);
+		}
+
+		if (remaining < 0) {
+			throw new IOException("Invalid chunk size: " + line);
+		}
+
+		if (remaining == 0) {
+			ResponseStream.readHeaders(input);
+			finished = true;
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed || finished || (chunked && remaining == 0)) {
+			return 0;
+		}
+
+		int available = input.available();
+		return remaining < 0 ? available : (int) Math.min(available, remaining);
+	}
+
+	/**
+	 * Returns the number of body bytes read so far.
+	 *
+	 * @return number of bytes read
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns whether the whole body was read, so the connection is ready for
+	 * the next response.
+	 *
+	 * @return true if the whole body was read
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Stops reading the body without closing the connection. Any unread part of
+	 * the body is left on the connection.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+}
@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Crawls web pages concurrently using a {@link WorkQueue}. Starting from a
+ * seed URL, every fetched HTML page is searched for links, and each new link
+ * is added to a {@link Frontier} that limits how many fetches run at once for
+ * each host. Connections are kept open and reused with a
+ * {@link KeepAliveFetcher}, which avoids a new handshake for every page.
+ *
+ * <p>
+ * Like the work queue examples, the crawler keeps track of how much work is
+ * pending so it knows when the crawl is finished.
+ *
+ * @see Frontier
+ * @see WorkQueue
+ * @see KeepAliveFetcher
+ */
+public class Crawler {
+
+	/**
+	 * Finds the href value of anchor tags, in the style of the regular
+	 * expression examples. The first group is the link, without any fragment.
+	 */
+	public static final Pattern HREF = Pattern.compile("(?is)<a\\s[^>]*?\\bhref\\s*=\\s*\"([^\"#]*)[^\"]*\"");
+
+	/** The urls found and not fetched yet. */
+	private final Frontier frontier;
+
+	/** Fetches pages over persistent connections. */
+	private final KeepAliveFetcher fetcher;
+
+	/** The work queue that fetches pages. */
+	private final WorkQueue tasks;
+
+	/** The amount of pending (or unfinished) work. */
+	private int pending;
+
+	/** Number of pages fetched. */
+	private int pages;
+
+	/** Number of body bytes fetched. */
+	private long bytes;
+
+	/** Number of fetches that failed. */
+	private int errors;
+
+	/**
+	 * Initializes a crawler.
+	 *
+	 * @param threads number of worker threads
+	 * @param maxPerHost maximum number of fetches at once per host
+	 * @param maxPages maximum number of pages to fetch
+	 */
+	public Crawler(int threads, int maxPerHost, int maxPages) {
+		this.frontier = new Frontier(maxPerHost, maxPages);
+		this.fetcher = new KeepAliveFetcher(1, maxPerHost, KeepAliveFetcher.DEFAULT_TIMEOUT);
+		this.tasks = new WorkQueue(threads);
+		this.pending = 0;
+	}
+
+	/**
+	 * Crawls from a seed URL until there are no new links or the page limit is
+	 * reached.
+	 *
+	 * @param seed the url to start from
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void crawl(URL seed) throws InterruptedException {
+		frontier.add(seed);
+		dispatch();
+		join();
+	}
+
+	/**
+	 * Gives every URL that may be fetched now to the work queue.
+	 */
+	private void dispatch() {
+		for (URL url : frontier.take()) {
+			incrementPending();
+			tasks.execute(new Task(url));
+		}
+	}
+
+	/**
+	 * Finds the links in a page.
+	 *
+	 * @param base the url of the page, for relative links
+	 * @param html the page
+	 * @return the http and https links found
+	 */
+	public static List<URL> findLinks(URL base, String html) {
+		List<URL> links = new ArrayList<>();
+		Matcher matcher = HREF.matcher(html);
+
+		while (matcher.find()) {
+			try {
+				URL link = new URL(base, matcher.group(1).strip());
+				String protocol = link.getProtocol();
+
+				if (protocol.equals("http") || protocol.equals("https")) {
+					links.add(link);
+				}
+			}
+			catch (MalformedURLException e) {
+				// skip links that are not valid
+			}
+		}
+
+		return links;
+	}
+
+	/**
+	 * Fetches one page and adds its links to the frontier.
+	 */
+	private class Task implements Runnable {
+
+		/** The url to fetch. */
+		private final URL url;
+
+		/**
+		 * Initializes this task.
+		 *
+		 * @param url the url to fetch
+		 */
+		public Task(URL url) {
+			this.url = url;
+		}
+
+		@Override
+		public void run() {
+			try {
+				FetchResponse response = fetcher.fetch(url);
+				String type = response.getHeader("Content-Type");
+				String location = response.getHeader("Location");
+
+				// the fetch succeeded even if its links turn out to be invalid
+				fetched(response.getBody().length);
+
+				if (response.getStatus() == 200 && type != null && type.startsWith("text/html")) {
+					for (URL link : findLinks(url, response.getText())) {
+						frontier.add(link);
+					}
+				}
+				else if (response.getStatus() / 100 == 3 && location != null) {
+					try {
+						frontier.add(new URL(url, location));
+					}
+					catch (MalformedURLException e) {
+						// skip redirects to invalid urls
+					}
+				}
+			}
+			catch (IOException e) {
+				failed();
+			}
+			finally {
+				frontier.done(url);
+				dispatch();
+				decrementPending();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all pending work is completed.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private synchronized void join() throws InterruptedException {
+		while (pending > 0) {
+			this.wait();
+		}
+	}
+
+	/**
+	 * Safely increments the shared pending variable.
+	 */
+	private synchronized void incrementPending() {
+		pending++;
+	}
+
+	/**
+	 * Safely decrements the shared pending variable, and wakes up any threads
+	 * waiting for work to be completed.
+	 */
+	private synchronized void decrementPending() {
+		assert pending > 0;
+		pending--;
+
+		if (pending == 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Safely counts a fetched page.
+	 *
+	 * @param length the number of body bytes
+	 */
+	private synchronized void fetched(int length) {
+		pages++;
+		bytes += length;
+	}
+
+	/**
+	 * Safely counts a failed fetch.
+	 */
+	private synchronized void failed() {
+		errors++;
+	}
+
+	/**
+	 * Returns the number of pages fetched.
+	 *
+	 * @return number of pages
+	 */
+	public synchronized int getPages() {
+		return pages;
+	}
+
+	/**
+	 * Returns the number of body bytes fetched.
+	 *
+	 * @return number of bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of fetches that failed.
+	 *
+	 * @return number of errors
+	 */
+	public synchronized int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the frontier, for its statistics.
+	 *
+	 * @return the frontier
+	 */
+	public Frontier getFrontier() {
+		return frontier;
+	}
+
+	/**
+	 * Stops the worker threads and closes idle connections.
+	 */
+	public void shutdown() {
+		tasks.shutdown();
+		fetcher.close();
+	}
+}
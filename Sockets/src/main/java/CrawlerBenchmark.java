@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Crawls a synthetic site served by a local Jetty server, and measures pages
+ * per second and the memory used per queued URL. The site is served under two
+ * host names (localhost and 127.0.0.1) so the crawler has two hosts to be
+ * polite to.
+ *
+ * <p>
+ * Every page links to the next page, so every page can be reached, and to
+ * several other pages using absolute, relative, and fragment links. Every page
+ * also links to a binary file. The crawler should find every page and file
+ * exactly once.
+ *
+ * @see Crawler
+ */
+public class CrawlerBenchmark {
+
+	/** The port for the synthetic site. */
+	public static final int PORT = 8082;
+
+	/** Number of pages on the site. */
+	public static final int PAGES = 5000;
+
+	/** Number of links to other pages on each page. */
+	public static final int LINKS = 10;
+
+	/** Number of URLs queued to measure memory. */
+	public static final int QUEUED = 1_000_000;
+
+	/**
+	 * Serves the synthetic site.
+	 */
+	private static class SiteHandler extends AbstractHandler {
+
+		@Override
+		public void handle(String target, Request baseRequest, HttpServletRequest request,
+				HttpServletResponse response) throws IOException {
+			baseRequest.setHandled(true);
+			String[] parts = target.split("/");
+
+			if (parts.length == 3 && parts[1].equals("page")) {
+				int page = Integer.parseInt(parts[2]);
+				byte[] html = page(page).getBytes(StandardCharsets.UTF_8);
+
+				response.setContentType("text/html; charset=utf-8");
+				response.setContentLength(html.length);
+				response.getOutputStream().write(html);
+			}
+			else if (parts.length == 3 && parts[1].equals("files")) {
+				response.setContentType("application/octet-stream");
+				response.setContentLength(1024);
+				response.getOutputStream().write(new byte[1024]);
+			}
+			else {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			}
+		}
+	}
+
+	/**
+	 * Returns the host a page is always linked with.
+	 *
+	 * @param page the page number
+	 * @return the host and port
+	 */
+	private static String host(int page) {
+		return (page % 2 == 0 ? "localhost" : "127.0.0.1") + ":" + PORT;
+	}
+
+	/**
+	 * Generates the html for a page.
+	 *
+	 * @param page the page number
+	 * @return the html
+	 */
+	private static String page(int page) {
+		StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Page ").append(page).append("</title></head><body>\n");
+		html.append("<p>Some text about page ").append(page).append(".</p>\n");
+
+		// relative link to a file on the same host
+		html.append("<p><a href=\"/files/").append(page).append(".bin\">download</a></p>\n<ul>\n");
+
+		for (int i = 0; i < LINKS; i++) {
+			int target = i == 0 ? (page + 1) % PAGES : (int) ((page * 7L + i * 131L) % PAGES);
+			String link = "http://" + host(target) + "/page/" + target;
+
+			// use relative and fragment links where they resolve to the same url
+			if (i % 3 == 1 && host(target).equals(host(page))) {
+				link = "/page/" + target;
+			}
+			else if (i % 3 == 2) {
+				link += "#section" + i;
+			}
+
+			html.append("<li><a class=\"link\" href=\"").append(link).append("\">Page ").append(target).append("</a></li>\n");
+		}
+
+		html.append("</ul>\n</body></html>\n");
+		return html.toString();
+	}
+
+	/**
+	 * Crawls the site and outputs the results.
+	 *
+	 * @param threads number of worker threads
+	 * @param maxPerHost maximum number of fetches at once per host
+	 * @throws Exception if unable to crawl
+	 */
+	private static void crawl(int threads, int maxPerHost) throws Exception {
+		Crawler crawler = new Crawler(threads, maxPerHost, PAGES * 2);
+		long start = System.nanoTime();
+
+		crawler.crawl(new URL("http://" + host(0) + "/page/0"));
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		crawler.shutdown();
+
+		Frontier frontier = crawler.getFrontier();
+		System.out.printf("%2d threads, %d per host: %d fetched (%d expected), %d errors, %d hosts, %.0f pages/s%n",
+				threads, maxPerHost, crawler.getPages(), PAGES * 2, crawler.getErrors(), frontier.getHosts(),
+				crawler.getPages() / seconds);
+	}
+
+	/**
+	 * Measures the heap used per queued URL.
+	 *
+	 * @throws Exception if unable to create a url
+	 */
+	private static void memory() throws Exception {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long before = runtime.totalMemory() - runtime.freeMemory();
+
+		Frontier frontier = new Frontier(1, QUEUED);
+
+		for (int i = 0; i < QUEUED; i++) {
+			frontier.add(new URL("http", "host" + i % 1000 + ".example.com", 80, "/path/to/page/" + i + ".html"));
+		}
+
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+		System.out.printf("Frontier: %d queued urls on %d hosts, %.0f bytes per url%n",
+				frontier.getQueued(), frontier.getHosts(), (after - before) / (double) QUEUED);
+	}
+
+	/**
+	 * Starts the site, runs the crawls, and stops the site.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to run the server or crawl
+	 */
+	public static void main(String[] args) throws Exception {
+		Server server = new Server(PORT);
+		server.setHandler(new SiteHandler());
+		server.start();
+
+		// warm up
+		crawl(4, 4);
+
+		for (int threads : new int[] { 1, 4, 16 }) {
+			crawl(threads, Math.max(1, threads / 2));
+		}
+
+		server.stop();
+		memory();
+	}
+}
@@ -0,0 +1,140 @@
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The status, headers, and raw bytes of the body of an HTTP response. The body
+ * is only decoded into text if asked for, so binary content is not mangled.
+ *
+ * @see KeepAliveFetcher
+ */
+public class FetchResponse {
+
+	/** The status line, like "HTTP/1.1 200 OK". */
+	private final String statusLine;
+
+	/** The status code, like 200. */
+	private final int status;
+
+	/** The header fields, with case-insensitive names. */
+	private final Map<String, List<String>> headers;
+
+	/** The body of the response. */
+	private final byte[] body;
+
+	/**
+	 * Initializes a response.
+	 *
+	 * @param statusLine the status line
+	 * @param status the status code
+	 * @param headers the header fields, with case-insensitive names
+	 * @param body the body of the response
+	 */
+	public FetchResponse(String statusLine, int status, Map<String, List<String>> headers, byte[] body) {
+		this.statusLine = statusLine;
+		this.status = status;
+		this.headers = Collections.unmodifiableMap(headers);
+		this.body = body;
+	}
+
+	/**
+	 * Returns the status line, like "HTTP/1.1 200 OK".
+	 *
+	 * @return the status line
+	 */
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	/**
+	 * Returns the status code, like 200.
+	 *
+	 * @return the status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns all of the header fields. Header names are case-insensitive.
+	 *
+	 * @return an unmodifiable map of header names to values
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the first value of a header field.
+	 *
+	 * @param name the case-insensitive header name
+	 * @return the first value, or null if the header is not present
+	 */
+	public String getHeader(String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * Returns the raw bytes of the body. The array is not copied, so should not
+	 * be modified.
+	 *
+	 * @return the body bytes
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Decodes the body as text, using the charset from the Content-Type header
+	 * or UTF-8 if none is given.
+	 *
+	 * @return the body as text
+	 */
+	public String getText() {
+		return new String(body, getCharset());
+	}
+
+	/**
+	 * Returns the charset from the Content-Type header.
+	 *
+	 * @return the charset, or UTF-8 if none or not supported
+	 */
+	public Charset getCharset() {
+		return charset(getHeader("Content-Type"));
+	}
+
+	/**
+	 * Returns the charset from the value of a Content-Type header.
+	 *
+	 * @param type the header value, like "text/html; charset=utf-8", or null
+	 * @return the charset, or UTF-8 if none or not supported
+	 */
+	public static Charset charset(String type) {
+		if (type != null) {
+			for (String part : type.split(";")) {
+				String[] pair = part.strip().split("=", 2);
+
+				if (pair.length == 2 && pair[0].equalsIgnoreCase("charset")) {
+					try {
+						return Charset.forName(pair[1].replace("\"", ""));
+					}
+					catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+						break;
+					}
+				}
+			}
+		}
+
+		return StandardCharsets.UTF_8;
+	}
+
+	@Override
+	public String toString() {
+		return statusLine + " (" + body.length + " bytes)";
+	}
+}
@@ -0,0 +1,204 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The URLs a crawler has found but not fetched yet. Each host has its own
+ * queue, and only a limited number of URLs per host are handed out at once so
+ * no single server is flooded with requests. Every URL is only ever added
+ * once, and no more URLs are added after the limit is reached.
+ *
+ * <p>
+ * Queued URLs are kept as strings, which is much smaller than keeping
+ * {@link URL} objects, and only turned back into URLs when handed out.
+ *
+ * @see Crawler
+ */
+public class Frontier {
+
+	/** Maximum number of URLs handed out per host at once. */
+	private final int maxPerHost;
+
+	/** Maximum number of URLs to add. */
+	private final int maxUrls;
+
+	/** Every URL added so far. */
+	private final Set<String> seen;
+
+	/** The queue for each host. */
+	private final Map<String, Host> hosts;
+
+	/** Hosts with queued URLs that may start another fetch. */
+	private final ArrayDeque<Host> ready;
+
+	/** Number of URLs queued but not handed out. */
+	private int queued;
+
+	/**
+	 * Initializes an empty frontier.
+	 *
+	 * @param maxPerHost maximum number of URLs handed out per host at once
+	 * @param maxUrls maximum number of URLs to add
+	 */
+	public Frontier(int maxPerHost, int maxUrls) {
+		this.maxPerHost = maxPerHost;
+		this.maxUrls = maxUrls;
+		this.seen = new HashSet<>();
+		this.hosts = new HashMap<>();
+		this.ready = new ArrayDeque<>();
+		this.queued = 0;
+	}
+
+	/**
+	 * Adds a URL unless it was already added or the limit was reached. The
+	 * fragment is ignored, since it refers to the same page.
+	 *
+	 * @param url the url to add
+	 * @return true if the url was added
+	 */
+	public synchronized boolean add(URL url) {
+		if (seen.size() >= maxUrls) {
+			return false;
+		}
+
+		String text = url.toString();
+		int fragment = text.indexOf('#');
+
+		if (fragment >= 0) {
+			text = text.substring(0, fragment);
+		}
+
+		if (!seen.add(text)) {
+			return false;
+		}
+
+		Host queue = hosts.computeIfAbsent(key(url), key -> new Host());
+		queue.urls.add(text);
+		queued++;
+		markReady(queue);
+		return true;
+	}
+
+	/**
+	 * Hands out every queued URL that may be fetched now without going over
+	 * the per-host limit.
+	 *
+	 * @return the urls to fetch now, which may be empty
+	 */
+	public synchronized List<URL> take() {
+		List<URL> urls = new ArrayList<>();
+
+		while (!ready.isEmpty()) {
+			Host host = ready.poll();
+			host.ready = false;
+
+			while (host.inflight < maxPerHost && !host.urls.isEmpty()) {
+				String text = host.urls.poll();
+				queued--;
+
+				try {
+					urls.add(new URL(text));
+					host.inflight++;
+				}
+				catch (MalformedURLException e) {
+					// cannot happen since the text came from a url
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+
+		return urls;
+	}
+
+	/**
+	 * Marks a URL handed out by {@link #take()} as finished, so another URL from
+	 * the same host may be handed out.
+	 *
+	 * @param url the finished url
+	 */
+	public synchronized void done(URL url) {
+		Host host = hosts.get(key(url));
+		host.inflight--;
+		markReady(host);
+	}
+
+	/**
+	 * Returns the key for the host of a URL.
+	 *
+	 * @param url the url
+	 * @return the host name and port
+	 */
+	private static String key(URL url) {
+		return url.getHost().toLowerCase() + ":" + url.getPort();
+	}
+
+	/**
+	 * Adds a host to the ready hosts if it has queued URLs and room for another
+	 * fetch.
+	 *
+	 * @param host the host
+	 */
+	private void markReady(Host host) {
+		if (!host.ready && host.inflight < maxPerHost && !host.urls.isEmpty()) {
+			host.ready = true;
+			ready.add(host);
+		}
+	}
+
+	/**
+	 * Returns the number of URLs queued but not handed out.
+	 *
+	 * @return number of queued urls
+	 */
+	public synchronized int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * Returns the number of URLs added so far.
+	 *
+	 * @return number of urls added
+	 */
+	public synchronized int getSeen() {
+		return seen.size();
+	}
+
+	/**
+	 * Returns the number of hosts seen so far.
+	 *
+	 * @return number of hosts
+	 */
+	public synchronized int getHosts() {
+		return hosts.size();
+	}
+
+	/**
+	 * The queue and number of fetches in progress for one host.
+	 */
+	private static class Host {
+
+		/** The queued urls for this host. */
+		private final ArrayDeque<String> urls;
+
+		/** Number of urls handed out and not finished yet. */
+		private int inflight;
+
+		/** Whether this host is in the ready hosts. */
+		private boolean ready;
+
+		/**
+		 * Initializes an empty host queue.
+		 */
+		private Host() {
+			this.urls = new ArrayDeque<>();
+			this.inflight = 0;
+			this.ready = false;
+		}
+	}
+}
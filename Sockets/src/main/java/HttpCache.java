@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fetches URLs with {@link URLFetcher}, following redirects and keeping
+ * responses in memory so repeat fetches can skip the network. Follows the
+ * Cache-Control, Expires, ETag, and Last-Modified headers: a response is
+ * reused as is while it is fresh, and once it is stale the server is asked
+ * whether it changed with a conditional request. If the server answers "304
+ * Not Modified", the cached body is reused without being sent again.
+ *
+ * <p>
+ * Redirects are followed one at a time, and each response is kept by the URL
+ * that returned it. Redirects themselves are never kept, so a redirect that
+ * changes is noticed, and a page reached by a redirect is revalidated with its
+ * own URL. The least recently used responses are removed once the total size
+ * goes over a budget. Only successful responses are kept, and never ones
+ * marked no-store or larger than the whole budget.
+ *
+ * @see URLFetcher#openStream(URL, long, int, Map)
+ */
+public class HttpCache {
+
+	/** The default budget of bytes to keep. */
+	public static final long DEFAULT_BUDGET = 64 * 1024 * 1024;
+
+	/** The longest a response is guessed to stay fresh from Last-Modified. */
+	private static final long MAX_HEURISTIC = 24 * 60 * 60 * 1000;
+
+	/** The cached responses by URL, from least to most recently used. */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/** The maximum bytes of responses to keep. */
+	private final long budget;
+
+	/** The maximum number of redirects to follow. */
+	private final int maxRedirects;
+
+	/** Bytes of responses kept. */
+	private long used;
+
+	/** Number of fresh responses reused without a request. */
+	private int hits;
+
+	/** Number of stale responses reused after the server said not modified. */
+	private int revalidated;
+
+	/** Number of responses fetched from the server. */
+	private int misses;
+
+	/** Number of responses removed to stay within the budget. */
+	private int evictions;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param budget the maximum bytes of responses to keep
+	 * @param maxRedirects the maximum number of redirects to follow
+	 */
+	public HttpCache(long budget, int maxRedirects) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.budget = budget;
+		this.maxRedirects = maxRedirects;
+		this.used = 0;
+	}
+
+	/**
+	 * Initializes an empty cache with the default budget and redirect limit.
+	 */
+	public HttpCache() {
+		this(DEFAULT_BUDGET, URLFetcher.MAX_REDIRECTS);
+	}
+
+	/**
+	 * Fetches a URL, following redirects and reusing the cached response of
+	 * each hop if it is fresh or the server says it has not been modified.
+	 *
+	 * @param url the url to fetch
+	 * @return the response, which may be shared so should not be modified
+	 * @throws IOException if unable to fetch the url, there are too many
+	 *         redirects, or the redirects loop
+	 */
+	public FetchResponse fetch(URL url) throws IOException {
+		Set<String> visited = new HashSet<>();
+		visited.add(url.toString());
+
+		for (int redirects = 0; ; redirects++) {
+			FetchResponse response = fetchOnce(url);
+			String location = response.getHeader("Location");
+			int status = response.getStatus();
+
+			if (maxRedirects <= 0 || location == null || status / 100 != 3 || status == 304) {
+				return response;
+			}
+
+			if (redirects >= maxRedirects) {
+				throw new IOException("More than " + maxRedirects + " redirects at: " + url);
+			}
+
+			url = new URL(url, location);
+
+			if (!visited.add(url.toString())) {
+				throw new IOException("Redirect loop at: " + url);
+			}
+		}
+	}
+
+	/**
+	 * Fetches a URL without following redirects, reusing the cached response
+	 * if it is fresh or the server says it has not been modified.
+	 *
+	 * @param url the url to fetch
+	 * @return the response, which may be shared so should not be modified
+	 * @throws IOException if unable to fetch the url
+	 */
+	private FetchResponse fetchOnce(URL url) throws IOException {
+		String key = url.toString();
+		long now = System.currentTimeMillis();
+		Entry entry = get(key);
+
+		if (entry != null && now < entry.expires) {
+			count(1, 0, 0);
+			return entry.response;
+		}
+
+		// ask the server whether the cached response changed
+		Map<String, String> properties = new HashMap<>();
+
+		if (entry != null) {
+			String etag = entry.response.getHeader("ETag");
+			String modified = entry.response.getHeader("Last-Modified");
+
+			if (etag != null) {
+				properties.put("If-None-Match", etag);
+			}
+
+			if (modified != null) {
+				properties.put("If-Modified-Since", modified);
+			}
+		}
+
+		try (ResponseStream stream = URLFetcher.openStream(url, ResponseStream.UNLIMITED, 0, properties)) {
+			if (entry != null && stream.getStatus() == 304) {
+				// new freshness information replaces the old
+				Map<String, List<String>> headers = stream.getHeader("Cache-Control") != null
+						|| stream.getHeader("Expires") != null ? stream.getHeaders() : entry.response.getHeaders();
+
+				refresh(entry, now + Math.max(0, lifetime(headers, now)));
+				count(0, 1, 0);
+				return entry.response;
+			}
+
+			FetchResponse response = stream.toResponse();
+			count(0, 0, 1);
+
+			if (response.getStatus() == 200) {
+				long lifetime = lifetime(response.getHeaders(), now);
+				boolean validator = response.getHeader("ETag") != null || response.getHeader("Last-Modified") != null;
+
+				Entry fresh = new Entry(response, now + lifetime);
+
+				// a response larger than the budget would push out everything else
+				if ((lifetime > 0 || (lifetime == 0 && validator)) && fresh.size <= budget) {
+					put(key, fresh);
+				}
+				else {
+					remove(key);
+				}
+			}
+
+			return response;
+		}
+	}
+
+	/**
+	 * Returns how long a response stays fresh, from its Cache-Control or
+	 * Expires headers, or guessed from how long ago it was last modified.
+	 *
+	 * @param headers the response headers
+	 * @param now the time of the response in milliseconds
+	 * @return milliseconds the response is fresh, 0 if it must be revalidated,
+	 *         or -1 if it must not be stored
+	 */
+	public static long lifetime(Map<String, List<String>> headers, long now) {
+		long age = seconds(first(headers, "Age"), 0) * 1000;
+		List<String> control = headers.get("Cache-Control");
+
+		if (control != null) {
+			for (String value : control) {
+				for (String directive : value.toLowerCase().split(",")) {
+					directive = directive.strip();
+
+					if (directive.equals("no-store")) {
+						return -1;
+					}
+
+					if (directive.equals("no-cache")) {
+						return 0;
+					}
+
+					if (directive.startsWith("max-age=")) {
+						long maxAge = seconds(directive.substring(8), -1);
+
+						if (maxAge >= 0) {
+							return Math.max(0, maxAge * 1000 - age);
+						}
+					}
+				}
+			}
+		}
+
+		long date = date(first(headers, "Date"), now);
+		String expires = first(headers, "Expires");
+
+		if (expires != null) {
+			// an invalid date means already expired
+			return Math.max(0, date(expires, date) - date - age);
+		}
+
+		long modified = date(first(headers, "Last-Modified"), date);
+		return Math.min(MAX_HEURISTIC, (date - modified) / 10);
+	}
+
+	/**
+	 * Parses a number of seconds.
+	 *
+	 * @param text the text to parse, or null
+	 * @param missing the value if missing or invalid
+	 * @return the number of seconds
+	 */
+	private static long seconds(String text, long missing) {
+		try {
+			return text == null ? missing : Long.parseLong(text.replace("\"", "").strip());
+		}
+		catch (NumberFormatException e) {
+			return missing;
+		}
+	}
+
+	/**
+	 * Parses an HTTP date, like "Thu, 01 Oct 2020 00:00:00 GMT".
+	 *
+	 * @param text the text to parse, or null
+	 * @param missing the value if missing or invalid
+	 * @return the date in milliseconds
+	 */
+	private static long date(String text, long missing) {
+		try {
+			return text == null ? missing
+					: ZonedDateTime.parse(text.strip(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch (DateTimeParseException e) {
+			return missing;
+		}
+	}
+
+	/**
+	 * Returns the first value of a header.
+	 *
+	 * @param headers the header fields
+	 * @param name the header name
+	 * @return the first value, or null if not present
+	 */
+	private static String first(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * Safely looks up a cached response, marking it as most recently used.
+	 *
+	 * @param key the url
+	 * @return the cached response, or null if there is none
+	 */
+	private synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Safely updates when a cached response expires.
+	 *
+	 * @param entry the cached response
+	 * @param expires the new expiration time in milliseconds
+	 */
+	private synchronized void refresh(Entry entry, long expires) {
+		entry.expires = expires;
+	}
+
+	/**
+	 * Safely adds a response, then removes the least recently used responses
+	 * until the cache is within its budget.
+	 *
+	 * @param key the url
+	 * @param entry the response to add
+	 */
+	private synchronized void put(String key, Entry entry) {
+		Entry old = entries.put(key, entry);
+		used += entry.size - (old == null ? 0 : old.size);
+
+		Iterator<Entry> iterator = entries.values().iterator();
+
+		while (used > budget && iterator.hasNext()) {
+			used -= iterator.next().size;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Safely removes a response.
+	 *
+	 * @param key the url
+	 */
+	private synchronized void remove(String key) {
+		Entry old = entries.remove(key);
+
+		if (old != null) {
+			used -= old.size;
+		}
+	}
+
+	/**
+	 * Safely updates the statistics.
+	 *
+	 * @param hit number of fresh responses reused
+	 * @param revalidate number of revalidated responses reused
+	 * @param miss number of responses fetched
+	 */
+	private synchronized void count(int hit, int revalidate, int miss) {
+		hits += hit;
+		revalidated += revalidate;
+		misses += miss;
+	}
+
+	/**
+	 * Returns the number of fresh responses reused without a request.
+	 *
+	 * @return number of hits
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of stale responses reused after the server said they
+	 * were not modified.
+	 *
+	 * @return number of revalidated responses
+	 */
+	public synchronized int getRevalidated() {
+		return revalidated;
+	}
+
+	/**
+	 * Returns the number of responses fetched from the server.
+	 *
+	 * @return number of misses
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of responses removed to stay within the budget.
+	 *
+	 * @return number of evictions
+	 */
+	public synchronized int getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the bytes of responses kept.
+	 *
+	 * @return bytes used
+	 */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/**
+	 * Returns the number of responses kept.
+	 *
+	 * @return number of responses
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d responses, %d bytes, %d hits, %d revalidated, %d misses, %d evictions",
+				entries.size(), used, hits, revalidated, misses, evictions);
+	}
+
+	/**
+	 * A cached response and when it stops being fresh.
+	 */
+	private static class Entry {
+
+		/** The response. */
+		private final FetchResponse response;
+
+		/** The approximate bytes used by the response. */
+		private final long size;
+
+		/** When the response stops being fresh in milliseconds. */
+		private volatile long expires;
+
+		/**
+		 * Initializes a cached response.
+		 *
+		 * @param response the response
+		 * @param expires when the response stops being fresh in milliseconds
+		 */
+		private Entry(FetchResponse response, long expires) {
+			this.response = response;
+			this.expires = expires;
+
+			long size = response.getBody().length + response.getStatusLine().length();
+
+			for (var header : response.getHeaders().entrySet()) {
+				size += header.getKey().length() + header.getValue().toString().length();
+			}
+
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Demonstrates following redirects and reusing cached responses from a
+	 * local {@link HttpStubServer}.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to fetch urls
+	 */
+	public static void main(String[] args) throws Exception {
+		try (HttpStubServer server = new HttpStubServer(HttpStubServer.PORT)) {
+			String base = server.getBase();
+			HttpCache cache = new HttpCache(1024 * 1024, URLFetcher.MAX_REDIRECTS);
+
+			FetchResponse redirected = cache.fetch(new URL(base + "/redirect/3"));
+			System.out.println("3 redirects: " + redirected.getText());
+
+			for (String path : new String[] { "/redirect/9", "/loop/1" }) {
+				try {
+					cache.fetch(new URL(base + path));
+				}
+				catch (IOException e) {
+					System.out.println(path + ": " + e.getMessage());
+				}
+			}
+
+			// repeat fetches of each kind of cacheable response
+			int repeats = 500;
+
+			// the redirect is asked again every time, but the page it leads to is cached
+			for (String path : new String[] { "/fresh/100000", "/etag/100000", "/modified/100000", "/bytes/100000",
+					"/moved/100000" }) {
+				URL url = new URL(base + path);
+				HttpCache counted = new HttpCache(1024 * 1024, URLFetcher.MAX_REDIRECTS);
+				int requests = server.getRequests();
+				long start = System.nanoTime();
+
+				for (int i = 0; i < repeats; i++) {
+					if (counted.fetch(url).getBody().length != 100000) {
+						throw new IllegalStateException("Wrong body for " + url);
+					}
+				}
+
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("%-17s %9.1f fetches/s, %3d requests: %s%n", path,
+						repeats / seconds, server.getRequests() - requests, counted);
+			}
+
+			// more than fits in the budget, so the oldest responses are removed
+			for (int i = 0; i < 30; i++) {
+				cache.fetch(new URL(base + "/fresh/" + (100000 + i)));
+			}
+
+			System.out.println("Over budget: " + cache);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tiny local HTTP/1.1 server for trying out HTTP clients without depending
+ * on a real web server. Like {@link SimpleServer}, it reads requests line by
+ * line from a socket, but it keeps each connection open for more requests and
+ * answers requests in order as they arrive, so clients may pipeline them.
+ *
+ * <p>
+ * The response depends on the path:
+ *
+ * <ul>
+ * <li>{@code /bytes/N} returns N bytes of binary data with a Content-Length
+ * <li>{@code /chunked/N} returns N bytes of binary data in chunks
+ * <li>{@code /close/N} returns N bytes and then closes the connection
+ * <li>{@code /redirect/N} redirects N more times before reaching a page
+ * <li>{@code /loop/N} redirects back and forth between two paths forever
+ * <li>{@code /moved/N} redirects to {@code /etag/N}
+ * <li>{@code /fresh/N} returns N bytes that may be cached for a minute
+ * <li>{@code /etag/N} returns N bytes with an ETag that must be revalidated
+ * <li>{@code /modified/N} returns N bytes with a Last-Modified date that must
+ * be revalidated
+ * <li>{@code /slow/N} waits N milliseconds before returning a short HTML page
+ * <li>anything else returns a short HTML page with a Content-Length
+ * </ul>
+ *
+ * @see KeepAliveFetcher
+ */
+public class HttpStubServer implements AutoCloseable {
+
+	/** The default port for this server. */
+	public static final int PORT = 5555;
+
+	/** Bytes per chunk for chunked responses. */
+	private static final int CHUNK = 1000;
+
+	/** Bytes written at once for large responses. */
+	private static final int BLOCK = 64 * 1000;
+
+	/** The ETag for cacheable responses. */
+	private static final String ETAG = "\"stub-1\"";
+
+	/** The Last-Modified date for cacheable responses. */
+	private static final String MODIFIED = "Thu, 01 Oct 2020 00:00:00 GMT";
+
+	/** Accepts connections. */
+	private final ServerSocket server;
+
+	/** Handles each connection on its own thread. */
+	private final ExecutorService threads;
+
+	/** Number of connections accepted. */
+	private final AtomicInteger connections;
+
+	/** Number of requests answered. */
+	private final AtomicInteger requests;
+
+	/**
+	 * Starts the server on a background thread.
+	 *
+	 * @param port the port to listen on
+	 * @throws IOException if unable to listen on the port
+	 */
+	public HttpStubServer(int port) throws IOException {
+		this.server = new ServerSocket(port);
+		this.threads = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "stub-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.connections = new AtomicInteger();
+		this.requests = new AtomicInteger();
+
+		threads.execute(this::accept);
+	}
+
+	/**
+	 * Returns the base URL of this server, like "http://localhost:5555".
+	 *
+	 * @return the base URL
+	 */
+	public String getBase() {
+		return "http://localhost:" + server.getLocalPort();
+	}
+
+	/**
+	 * Returns the number of connections accepted.
+	 *
+	 * @return number of connections
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Returns the number of requests answered.
+	 *
+	 * @return number of requests
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Accepts connections until the server is closed.
+	 */
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				connections.incrementAndGet();
+				threads.execute(() -> serve(socket));
+			}
+			catch (IOException e) {
+				// closed while waiting for a connection
+			}
+		}
+	}
+
+	/**
+	 * Answers requests from one connection until the client closes it.
+	 *
+	 * @param socket the client connection
+	 */
+	private void serve(Socket socket) {
+		try (
+				socket;
+				InputStreamReader input = new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1);
+				BufferedReader reader = new BufferedReader(input);
+				OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+		) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				String path = line.split(" ")[1];
+				Map<String, String> headers = new HashMap<>();
+
+				// keep the request headers with lowercase names
+				while ((line = reader.readLine()) != null && !line.isEmpty()) {
+					String[] split = line.split(":", 2);
+
+					if (split.length == 2) {
+						headers.put(split[0].strip().toLowerCase(), split[1].strip());
+					}
+				}
+
+				boolean close = "close".equalsIgnoreCase(headers.get("connection"));
+				close |= respond(output, path, headers);
+				requests.incrementAndGet();
+
+				if (close) {
+					break;
+				}
+			}
+		}
+		catch (SocketException e) {
+			// client closed the connection
+		}
+		catch (IOException e) {
+			System.err.println("Server: " + e);
+		}
+	}
+
+	/**
+	 * Writes the response for a path.
+	 *
+	 * @param output the socket output
+	 * @param path the requested path
+	 * @param headers the request headers, with lowercase names
+	 * @return true if the connection should be closed after this response
+	 * @throws IOException if unable to write the response
+	 */
+	private static boolean respond(OutputStream output, String path, Map<String, String> headers) throws IOException {
+		String[] parts = path.split("/");
+		int size = parts.length == 3 && parts[2].matches("\\d+") ? Integer.parseInt(parts[2]) : 0;
+		String type = parts.length == 3 ? parts[1] : "";
+
+		switch (type) {
+			case "bytes":
+				write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nContent-Length: " + size + "\r\n\r\n");
+				writeBytes(output, size);
+				break;
+
+			case "chunked":
+				write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nTransfer-Encoding: chunked\r\n\r\n");
+
+				for (int offset = 0; offset < size; offset += CHUNK) {
+					int length = Math.min(CHUNK, size - offset);
+					write(output, Integer.toHexString(length) + "\r\n");
+					output.write(bytes(offset, length));
+					write(output, "\r\n");
+				}
+
+				write(output, "0\r\n\r\n");
+				break;
+
+			case "close":
+				write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nConnection: close\r\n\r\n");
+				writeBytes(output, size);
+				output.flush();
+				return true;
+
+			case "redirect":
+				String next = size > 0 ? "/redirect/" + (size - 1) : "/page/redirected";
+				write(output, "HTTP/1.1 302 Found\r\nLocation: " + next + "\r\nContent-Length: 0\r\n\r\n");
+				break;
+
+			case "loop":
+				String other = "/loop/" + (size % 2 == 0 ? size + 1 : size - 1);
+				write(output, "HTTP/1.1 302 Found\r\nLocation: " + other + "\r\nContent-Length: 0\r\n\r\n");
+				break;
+
+			case "moved":
+				write(output, "HTTP/1.1 302 Found\r\nLocation: /etag/" + size + "\r\nContent-Length: 0\r\n\r\n");
+				break;
+
+			case "fresh":
+				write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nCache-Control: max-age=60\r\nContent-Length: " + size + "\r\n\r\n");
+				writeBytes(output, size);
+				break;
+
+			case "etag":
+				if (ETAG.equals(headers.get("if-none-match"))) {
+					write(output, "HTTP/1.1 304 Not Modified\r\nETag: " + ETAG + "\r\nCache-Control: no-cache\r\n\r\n");
+				}
+				else {
+					write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nETag: " + ETAG + "\r\nCache-Control: no-cache\r\nContent-Length: " + size + "\r\n\r\n");
+					writeBytes(output, size);
+				}
+				break;
+
+			case "modified":
+				if (MODIFIED.equals(headers.get("if-modified-since"))) {
+					write(output, "HTTP/1.1 304 Not Modified\r\nCache-Control: max-age=0\r\n\r\n");
+				}
+				else {
+					write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nLast-Modified: " + MODIFIED + "\r\nCache-Control: max-age=0\r\nContent-Length: " + size + "\r\n\r\n");
+					writeBytes(output, size);
+				}
+				break;
+
+			case "slow":
+				try {
+					Thread.sleep(size);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return true;
+				}
+
+				// then answer like any other page
+				writePage(output, path);
+				break;
+
+			default:
+				writePage(output, path);
+				break;
+		}
+
+		output.flush();
+		return false;
+	}
+
+	/**
+	 * Writes a small html page naming the requested path.
+	 *
+	 * @param output the socket output
+	 * @param path the requested path
+	 * @throws IOException if unable to write
+	 */
+	private static void writePage(OutputStream output, String path) throws IOException {
+		byte[] html = ("<html><body><p>Hello from " + path + "</p></body></html>").getBytes(StandardCharsets.UTF_8);
+		write(output, "HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=utf-8\r\nContent-Length: " + html.length + "\r\n\r\n");
+		output.write(html);
+	}
+
+	/**
+	 * Writes header text to the output.
+	 *
+	 * @param output the socket output
+	 * @param text the text to write
+	 * @throws IOException if unable to write
+	 */
+	private static void write(OutputStream output, String text) throws IOException {
+		output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Writes predictable binary data a block at a time, so large responses do
+	 * not need the whole body in memory.
+	 *
+	 * @param output the socket output
+	 * @param size the number of bytes
+	 * @throws IOException if unable to write
+	 */
+	private static void writeBytes(OutputStream output, int size) throws IOException {
+		for (int offset = 0; offset < size; offset += BLOCK) {
+			output.write(bytes(offset, Math.min(BLOCK, size - offset)));
+		}
+	}
+
+	/**
+	 * Creates predictable binary data, so clients can check what they got.
+	 *
+	 * @param offset the position of the first byte in the body
+	 * @param length the number of bytes
+	 * @return the bytes
+	 */
+	public static byte[] bytes(int offset, int length) {
+		byte[] bytes = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (offset + i);
+		}
+
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		threads.shutdownNow();
+	}
+
+	/**
+	 * Starts this server on {@value #PORT} until the process is stopped.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to start the server
+	 */
+	public static void main(String[] args) throws Exception {
+		HttpStubServer server = new HttpStubServer(PORT);
+		System.out.println("Server: Listening at " + server.getBase());
+		Thread.currentThread().join();
+	}
+}
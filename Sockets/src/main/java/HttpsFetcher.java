@@ -1,7 +1,9 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
@@ -64,6 +66,36 @@ public class HttpsFetcher {
 		return fetchURL(new URL(url));
 	}
 
+	/**
+	 * Fetches the headers for the specified URL, leaving the body to be read
+	 * from the returned response. Unlike {@link #fetchURL(URL)}, the body is not
+	 * read into memory or decoded into lines, so large or binary content can be
+	 * handled in a constant amount of memory. Chunked bodies are put back
+	 * together, and the body stops at the end of the response.
+	 *
+	 * @param url the url to fetch
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @return the response, which must be closed to close the connection
+	 * @throws IOException if unable to fetch the headers
+	 *
+	 * @see ResponseStream
+	 */
+	public static ResponseStream openStream(URL url, long maxBytes) throws IOException {
+		Socket socket = openConnection(url);
+
+		try {
+			// closing this writer would close the socket, so it is left open
+			PrintWriter request = new PrintWriter(socket.getOutputStream());
+			printGetRequest(request, url);
+
+			return ResponseStream.read(new BufferedInputStream(socket.getInputStream()), maxBytes, socket);
+		}
+		catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
 	/**
 	 * Uses a {@link Socket} to open a connection to the web server associated
 	 * with the provided URL. Supports HTTP and HTTPS connections.
@@ -87,6 +119,36 @@ public class HttpsFetcher {
 		return factory.createSocket(host, port);
 	}
 
+	/**
+	 * Opens a connection like {@link #openConnection(URL)}, but gives up if
+	 * connecting or any later read takes longer than a timeout.
+	 *
+	 * @param url the url to connect
+	 * @param timeout the milliseconds to wait to connect and for each read
+	 * @return a socket connection for that url
+	 * @throws IOException if an I/O error occurs when creating the socket or
+	 *         the connection times out
+	 *
+	 * @see #openConnection(URL)
+	 */
+	public static Socket openConnection(URL url, int timeout) throws IOException {
+		boolean https = url.getProtocol().equalsIgnoreCase("https");
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+
+		SocketFactory factory = https ? SSLSocketFactory.getDefault() : SocketFactory.getDefault();
+		Socket socket = factory.createSocket();
+
+		try {
+			socket.connect(new InetSocketAddress(url.getHost(), port), timeout);
+			socket.setSoTimeout(timeout);
+			return socket;
+		}
+		catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
 	/**
 	 * Writes a simple HTTP GET request to the provided socket writer.
 	 *
@@ -140,6 +202,8 @@ public class HttpsFetcher {
 	 * @param response the reader created from a socket connection
 	 * @return a list of lines read from the socket reader
 	 * @throws IOException if unable to read from socket
+	 *
+	 * @see #openStream(URL, long)
 	 */
 	public static List<String> getContent(BufferedReader response) throws IOException {
 		return response.lines().collect(Collectors.toList());
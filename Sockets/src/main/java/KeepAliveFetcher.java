@@ -0,0 +1,482 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches URLs over persistent HTTP/1.1 connections. Instead of opening a new
+ * socket (and for HTTPS, doing a new TLS handshake) for every URL like
+ * {@link HttpsFetcher}, connections are kept open in a pool for each host and
+ * reused. Several requests to the same host can also be pipelined, meaning
+ * they are all sent before waiting for the responses.
+ *
+ * <p>
+ * Keeping a connection open means the end of each response has to be found
+ * from the Content-Length header or the chunked transfer encoding, instead of
+ * reading until the server closes the connection, which is done by
+ * {@link ResponseStream}. Bodies are returned as raw bytes.
+ *
+ * <p>
+ * Requests are only retried on a new connection if a reused connection was
+ * closed by the server before answering, which is safe since only GET
+ * requests are made.
+ *
+ * @see HttpsFetcher
+ * @see FetchResponse
+ */
+public class KeepAliveFetcher implements AutoCloseable {
+
+	/** The default number of requests sent before waiting for a response. */
+	public static final int DEFAULT_DEPTH = 8;
+
+	/** The default number of idle connections kept per host. */
+	public static final int DEFAULT_IDLE = 4;
+
+	/** The default milliseconds to wait for a server to respond. */
+	public static final int DEFAULT_TIMEOUT = 10_000;
+
+	/** Number of requests sent before waiting for a response. */
+	private final int depth;
+
+	/** Number of idle connections kept per host. */
+	private final int maxIdle;
+
+	/** Milliseconds to wait for a server to respond. */
+	private final int timeout;
+
+	/** Idle connections for each host. */
+	private final Map<String, Deque<Connection>> idle;
+
+	/** Number of connections opened. */
+	private int opened;
+
+	/**
+	 * Initializes a fetcher with the default settings.
+	 */
+	public KeepAliveFetcher() {
+		this(DEFAULT_DEPTH, DEFAULT_IDLE, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Initializes a fetcher.
+	 *
+	 * @param depth number of requests sent before waiting for a response (1
+	 *        turns off pipelining)
+	 * @param maxIdle number of idle connections kept per host
+	 * @param timeout milliseconds to wait for a server to respond
+	 */
+	public KeepAliveFetcher(int depth, int maxIdle, int timeout) {
+		this.depth = Math.max(1, depth);
+		this.maxIdle = maxIdle;
+		this.timeout = timeout;
+		this.idle = new HashMap<>();
+		this.opened = 0;
+	}
+
+	/**
+	 * Fetches a URL, reusing an idle connection to the host if there is one.
+	 *
+	 * @param url the url to fetch
+	 * @return the response
+	 * @throws IOException if unable to fetch the url
+	 */
+	public FetchResponse fetch(URL url) throws IOException {
+		return fetchAll(List.of(url)).get(0);
+	}
+
+	/**
+	 * Fetches several URLs, pipelining the requests to each host over one
+	 * connection. The responses are returned in the same order as the URLs.
+	 *
+	 * @param urls the urls to fetch
+	 * @return the responses
+	 * @throws IOException if unable to fetch a url
+	 */
+	public List<FetchResponse> fetchAll(List<URL> urls) throws IOException {
+		FetchResponse[] responses = new FetchResponse[urls.size()];
+		Map<String, Deque<Integer>> hosts = new LinkedHashMap<>();
+
+		for (int i = 0; i < urls.size(); i++) {
+			hosts.computeIfAbsent(key(urls.get(i)), key -> new ArrayDeque<>()).add(i);
+		}
+
+		for (Deque<Integer> pending : hosts.values()) {
+			while (!pending.isEmpty()) {
+				pipeline(urls, pending, responses);
+			}
+		}
+
+		return Arrays.asList(responses);
+	}
+
+	/**
+	 * Sends pending requests over one connection, keeping up to the pipeline
+	 * depth in flight, and reads the responses in order. Stops early if the
+	 * connection is closed, leaving the unanswered requests pending to retry on
+	 * a new connection. Servers may close a connection after a number of
+	 * requests or when idle, so that is only an error if a fresh connection is
+	 * closed before answering any request.
+	 *
+	 * @param urls the urls to fetch
+	 * @param pending indexes of the urls still to fetch, all for the same host
+	 * @param responses where to put the responses
+	 * @throws IOException if unable to fetch a url
+	 */
+	private void pipeline(List<URL> urls, Deque<Integer> pending, FetchResponse[] responses) throws IOException {
+		URL first = urls.get(pending.peek());
+		Connection connection = borrow(first);
+		Deque<Integer> inflight = new ArrayDeque<>();
+
+		try {
+			while (!pending.isEmpty() || !inflight.isEmpty()) {
+				// fill the pipeline before waiting for the next response
+				while (inflight.size() < depth && !pending.isEmpty()) {
+					int index = pending.poll();
+					writeRequest(connection.output, urls.get(index));
+					inflight.add(index);
+				}
+
+				connection.output.flush();
+
+				FetchResponse response = readResponse(connection.input);
+				responses[inflight.poll()] = response;
+				connection.used++;
+
+				if (!isPersistent(response)) {
+					connection.close();
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			connection.close();
+
+			// retry the unanswered requests on another connection, unless a fresh
+			// connection failed before answering anything
+			if (connection.used == 0) {
+				throw e;
+			}
+		}
+		finally {
+			// put unanswered requests back in order
+			while (!inflight.isEmpty()) {
+				pending.addFirst(inflight.pollLast());
+			}
+		}
+
+		release(connection);
+	}
+
+	/**
+	 * Returns the pool key for the host of a URL.
+	 *
+	 * @param url the url
+	 * @return the protocol, host, and port of the url
+	 */
+	private static String key(URL url) {
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+
+	/**
+	 * Takes an idle connection to the host of a URL, or opens a new one.
+	 *
+	 * @param url the url to connect to
+	 * @return the connection
+	 * @throws IOException if unable to open a connection
+	 */
+	private Connection borrow(URL url) throws IOException {
+		String key = key(url);
+
+		synchronized (idle) {
+			Deque<Connection> connections = idle.get(key);
+
+			if (connections != null && !connections.isEmpty()) {
+				return connections.poll();
+			}
+
+			opened++;
+		}
+
+		Socket socket = HttpsFetcher.openConnection(url);
+		socket.setSoTimeout(timeout);
+		return new Connection(key, socket);
+	}
+
+	/**
+	 * Returns a connection to the pool if it is still open and there is room,
+	 * otherwise closes it.
+	 *
+	 * @param connection the connection
+	 */
+	private void release(Connection connection) {
+		if (connection.socket.isClosed()) {
+			return;
+		}
+
+		synchronized (idle) {
+			Deque<Connection> connections = idle.computeIfAbsent(connection.key, key -> new ArrayDeque<>());
+
+			if (connections.size() < maxIdle) {
+				connections.push(connection);
+				return;
+			}
+		}
+
+		connection.close();
+	}
+
+	/**
+	 * Returns the number of connections opened so far.
+	 *
+	 * @return number of connections opened
+	 */
+	public int getOpened() {
+		synchronized (idle) {
+			return opened;
+		}
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	@Override
+	public void close() {
+		synchronized (idle) {
+			for (Deque<Connection> connections : idle.values()) {
+				connections.forEach(Connection::close);
+			}
+
+			idle.clear();
+		}
+	}
+
+	/**
+	 * Writes a GET request that asks to keep the connection open.
+	 *
+	 * @param output the socket output
+	 * @param url the url to fetch
+	 * @throws IOException if unable to write the request
+	 */
+	public static void writeRequest(OutputStream output, URL url) throws IOException {
+		String resource = url.getFile().isEmpty() ? "/" : url.getFile();
+		String host = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+
+		String request = "GET " + resource + " HTTP/1.1\r\n" +
+				"Host: " + host + "\r\n" +
+				"Connection: keep-alive\r\n" +
+				"\r\n";
+
+		output.write(request.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Reads one response, using the headers to find where the body ends so the
+	 * connection can be used for the next response.
+	 *
+	 * @param input the socket input
+	 * @return the response
+	 * @throws IOException if unable to read the response
+	 *
+	 * @see ResponseStream#read(InputStream, long, java.io.Closeable)
+	 */
+	public static FetchResponse readResponse(InputStream input) throws IOException {
+		return ResponseStream.read(input, ResponseStream.UNLIMITED, null).toResponse();
+	}
+
+	/**
+	 * Returns whether the connection can be used again after a response.
+	 *
+	 * @param response the response
+	 * @return true if the connection stays open
+	 */
+	private static boolean isPersistent(FetchResponse response) {
+		String connection = response.getHeader("Connection");
+
+		if (response.getStatusLine().startsWith("HTTP/1.0")) {
+			return connection != null && connection.equalsIgnoreCase("keep-alive");
+		}
+
+		return connection == null || !connection.equalsIgnoreCase("close");
+	}
+
+	/**
+	 * A persistent connection to one host.
+	 */
+	private static class Connection {
+
+		/** The pool key for the host. */
+		private final String key;
+
+		/** The socket. */
+		private final Socket socket;
+
+		/** The buffered socket input. */
+		private final InputStream input;
+
+		/** The buffered socket output. */
+		private final OutputStream output;
+
+		/** Number of responses read from this connection. */
+		private int used;
+
+		/**
+		 * Initializes a connection.
+		 *
+		 * @param key the pool key for the host
+		 * @param socket the connected socket
+		 * @throws IOException if unable to get the socket streams
+		 */
+		private Connection(String key, Socket socket) throws IOException {
+			this.key = key;
+			this.socket = socket;
+			this.input = new BufferedInputStream(socket.getInputStream());
+			this.output = new BufferedOutputStream(socket.getOutputStream());
+			this.used = 0;
+		}
+
+		/**
+		 * Closes the socket, ignoring any errors.
+		 */
+		private void close() {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// nothing else to do
+			}
+		}
+	}
+
+	/**
+	 * Compares fetching local URLs with a new connection each time using
+	 * {@link HttpsFetcher}, with one kept-alive connection, and with
+	 * pipelining.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to fetch urls
+	 */
+	public static void main(String[] args) throws Exception {
+		int count = 2000;
+
+		try (HttpStubServer server = new HttpStubServer(HttpStubServer.PORT)) {
+			List<URL> urls = new ArrayList<>();
+
+			// mix of small pages and binary content with both kinds of framing
+			for (int i = 0; i < count; i++) {
+				switch (i % 3) {
+					case 0:
+						urls.add(new URL(server.getBase() + "/page/" + i));
+						break;
+					case 1:
+						urls.add(new URL(server.getBase() + "/bytes/" + i));
+						break;
+					default:
+						urls.add(new URL(server.getBase() + "/chunked/" + i));
+						break;
+				}
+			}
+
+			// warm up
+			for (int i = 0; i < 200; i++) {
+				HttpsFetcher.fetchURL(urls.get(i));
+			}
+
+			try (KeepAliveFetcher warmup = new KeepAliveFetcher()) {
+				warmup.fetchAll(urls);
+			}
+
+			int connections = server.getConnections();
+			long start = System.nanoTime();
+
+			for (URL url : urls) {
+				HttpsFetcher.fetchURL(url);
+			}
+
+			report("New socket each", start, count, server.getConnections() - connections);
+
+			for (int depth : new int[] { 1, DEFAULT_DEPTH, 64 }) {
+				try (KeepAliveFetcher fetcher = new KeepAliveFetcher(depth, DEFAULT_IDLE, DEFAULT_TIMEOUT)) {
+					connections = server.getConnections();
+					start = System.nanoTime();
+
+					List<FetchResponse> responses = new ArrayList<>();
+
+					// without pipelining, fetch one at a time like a simple crawler would
+					if (depth == 1) {
+						for (URL url : urls) {
+							responses.add(fetcher.fetch(url));
+						}
+					}
+					else {
+						responses = fetcher.fetchAll(urls);
+					}
+
+					report("Keep-alive, depth " + depth, start, count, server.getConnections() - connections);
+					check(urls, responses);
+				}
+			}
+
+			// server closes after this response, so the rest go on a new connection
+			try (KeepAliveFetcher fetcher = new KeepAliveFetcher()) {
+				List<URL> closing = List.of(
+						new URL(server.getBase() + "/bytes/10"),
+						new URL(server.getBase() + "/close/10"),
+						new URL(server.getBase() + "/chunked/2500"),
+						new URL(server.getBase() + "/bytes/10"));
+
+				check(closing, fetcher.fetchAll(closing));
+				System.out.println("Closed connection: " + fetcher.getOpened() + " connections for " + closing.size() + " requests");
+			}
+		}
+	}
+
+	/**
+	 * Outputs the time taken for a run.
+	 *
+	 * @param name the name to output
+	 * @param start the start time in nanoseconds
+	 * @param count the number of requests
+	 * @param connections the number of connections the server accepted
+	 */
+	private static void report(String name, long start, int count, int connections) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-20s %8.1f requests/s, %4d connections%n", name, count / seconds, connections);
+	}
+
+	/**
+	 * Checks that each binary response has the expected bytes.
+	 *
+	 * @param urls the urls fetched
+	 * @param responses the responses in the same order
+	 */
+	private static void check(List<URL> urls, List<FetchResponse> responses) {
+		for (int i = 0; i < urls.size(); i++) {
+			String[] parts = urls.get(i).getPath().split("/");
+			FetchResponse response = responses.get(i);
+
+			if (!parts[1].equals("page")) {
+				byte[] expected = HttpStubServer.bytes(0, Integer.parseInt(parts[2]));
+
+				if (!Arrays.equals(expected, response.getBody())) {
+					throw new IllegalStateException("Wrong body for " + urls.get(i) + ": " + response);
+				}
+			}
+			else if (!response.getText().contains(urls.get(i).getPath())) {
+				throw new IllegalStateException("Wrong page for " + urls.get(i) + ": " + response.getText());
+			}
+		}
+	}
+}
@@ -0,0 +1,350 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * The status and headers of an HTTP response, with a body that has not been
+ * read yet. Unlike {@link FetchResponse}, the body is never held in memory all
+ * at once. It may be read as an {@link InputStream}, as a
+ * {@link ReadableByteChannel}, or handed to a callback one {@link ByteBuffer}
+ * at a time, so even very large downloads use a constant amount of memory. The
+ * body is only decoded into text if the caller asks for a reader.
+ *
+ * <p>
+ * Closing the response closes the connection it came from.
+ *
+ * @see HttpsFetcher#openStream(java.net.URL, long)
+ * @see URLFetcher#openStream(java.net.URL, long)
+ * @see BodyInputStream
+ */
+public class ResponseStream implements AutoCloseable {
+
+	/** The maximum bytes if the body size should not be limited. */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	/** The bytes read at once when handing the body to a callback. */
+	private static final int BUFFER = 64 * 1024;
+
+	/** The maximum bytes in a status or header line. */
+	private static final int MAX_LINE = 8192;
+
+	/** The status line, like "HTTP/1.1 200 OK". */
+	private final String statusLine;
+
+	/** The status code, like 200. */
+	private final int status;
+
+	/** The header fields, with case-insensitive names. */
+	private final Map<String, List<String>> headers;
+
+	/** The body, which has not been read yet. */
+	private final InputStream body;
+
+	/** The connection to close when done, or null if it stays open. */
+	private final Closeable connection;
+
+	/**
+	 * Initializes a response.
+	 *
+	 * @param statusLine the status line
+	 * @param status the status code
+	 * @param headers the header fields, with case-insensitive names
+	 * @param body the body, which should stop at the end of the response
+	 * @param connection the connection to close when done, or null
+	 */
+	public ResponseStream(String statusLine, int status, Map<String, List<String>> headers, InputStream body,
+			Closeable connection) {
+		this.statusLine = statusLine;
+		this.status = status;
+		this.headers = Collections.unmodifiableMap(headers);
+		this.body = body;
+		this.connection = connection;
+	}
+
+	/**
+	 * Reads the status line and headers of one response from a connection, and
+	 * sets up the body to stop where the response ends.
+	 *
+	 * @param input the connection input (should be buffered)
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @param connection the connection to close when done, or null to leave it
+	 *        open for the next response
+	 * @return the response with an unread body
+	 * @throws IOException if unable to read the status line or headers
+	 */
+	public static ResponseStream read(InputStream input, long maxBytes, Closeable connection) throws IOException {
+		String statusLine = readLine(input);
+
+		if (statusLine == null) {
+			throw new EOFException("Connection closed before response.");
+		}
+
+		int status = parseStatus(statusLine);
+		Map<String, List<String>> headers = readHeaders(input);
+
+		// informational responses are followed by the real response
+		if (status >= 100 && status < 200) {
+			return read(input, maxBytes, connection);
+		}
+
+		BodyInputStream body;
+		String encoding = first(headers, "Transfer-Encoding");
+		String length = first(headers, "Content-Length");
+
+		if (status == 204 || status == 304) {
+			body = BodyInputStream.fixed(input, 0, maxBytes);
+		}
+		else if (encoding != null && encoding.toLowerCase().endsWith("chunked")) {
+			body = BodyInputStream.chunked(input, maxBytes);
+		}
+		else if (length != null) {
+			try {
+				body = BodyInputStream.fixed(input, Long.parseLong(length.strip()), maxBytes);
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("Invalid Content-Length: " + length);
+			}
+		}
+		else {
+			// no framing, so the body ends when the server closes the connection
+			body = BodyInputStream.untilClosed(input, maxBytes);
+			headers.put("Connection", List.of("close"));
+		}
+
+		return new ResponseStream(statusLine, status, headers, body, connection);
+	}
+
+	/**
+	 * Returns the status line, like "HTTP/1.1 200 OK".
+	 *
+	 * @return the status line
+	 */
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	/**
+	 * Returns the status code, like 200.
+	 *
+	 * @return the status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns all of the header fields. Header names are case-insensitive.
+	 *
+	 * @return an unmodifiable map of header names to values
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the first value of a header field.
+	 *
+	 * @param name the case-insensitive header name
+	 * @return the first value, or null if the header is not present
+	 */
+	public String getHeader(String name) {
+		return first(headers, name);
+	}
+
+	/**
+	 * Returns the charset from the Content-Type header.
+	 *
+	 * @return the charset, or UTF-8 if none or not supported
+	 */
+	public Charset getCharset() {
+		return FetchResponse.charset(getHeader("Content-Type"));
+	}
+
+	/**
+	 * Returns the raw bytes of the body as a stream. The body may only be read
+	 * once, however it is read.
+	 *
+	 * @return the body stream
+	 */
+	public InputStream getBody() {
+		return body;
+	}
+
+	/**
+	 * Returns the raw bytes of the body as a channel.
+	 *
+	 * @return the body channel
+	 */
+	public ReadableByteChannel getChannel() {
+		return Channels.newChannel(body);
+	}
+
+	/**
+	 * Returns a reader that decodes the body as text, using the charset from the
+	 * Content-Type header or UTF-8 if none is given.
+	 *
+	 * @return the body reader
+	 */
+	public BufferedReader getReader() {
+		return new BufferedReader(new InputStreamReader(body, getCharset()));
+	}
+
+	/**
+	 * Hands the body to a callback one buffer at a time. The same buffer is
+	 * reused for each call, so the callback must copy out anything it wants to
+	 * keep.
+	 *
+	 * @param action called with a buffer ready to be read for each part of the
+	 *        body
+	 * @return the number of body bytes read
+	 * @throws IOException if unable to read the body
+	 */
+	public long forEachBuffer(Consumer<ByteBuffer> action) throws IOException {
+		ReadableByteChannel channel = getChannel();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+		long total = 0;
+		int read;
+
+		while ((read = channel.read(buffer)) >= 0) {
+			if (read > 0) {
+				buffer.flip();
+				action.accept(buffer);
+				buffer.clear();
+				total += read;
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Reads the rest of the body into memory.
+	 *
+	 * @return the response with the whole body
+	 * @throws IOException if unable to read the body
+	 */
+	public FetchResponse toResponse() throws IOException {
+		Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		copy.putAll(headers);
+		return new FetchResponse(statusLine, status, copy, body.readAllBytes());
+	}
+
+	/**
+	 * Closes the connection this response came from, if any.
+	 *
+	 * @throws IOException if unable to close the connection
+	 */
+	@Override
+	public void close() throws IOException {
+		body.close();
+
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return statusLine;
+	}
+
+	/**
+	 * Parses the status code from a status line.
+	 *
+	 * @param statusLine the status line, like "HTTP/1.1 200 OK"
+	 * @return the status code
+	 * @throws IOException if the status line is invalid
+	 */
+	public static int parseStatus(String statusLine) throws IOException {
+		String[] parts = statusLine.split(" ", 3);
+
+		if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+
+		try {
+			return Integer.parseInt(parts[1]);
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+	}
+
+	/**
+	 * Reads header lines until a blank line.
+	 *
+	 * @param input the connection input
+	 * @return the header fields, with case-insensitive names
+	 * @throws IOException if unable to read the headers
+	 */
+	public static Map<String, List<String>> readHeaders(InputStream input) throws IOException {
+		Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		String line;
+
+		while ((line = readLine(input)) != null && !line.isEmpty()) {
+			String[] split = line.split(":", 2);
+
+			if (split.length == 2) {
+				headers.computeIfAbsent(split[0].strip(), name -> new ArrayList<>()).add(split[1].strip());
+			}
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Returns the first value of a header.
+	 *
+	 * @param headers the header fields
+	 * @param name the header name
+	 * @return the first value, or null if not present
+	 */
+	private static String first(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * Reads a line ending in CRLF (or just LF) one byte at a time, so nothing
+	 * past the end of the line is consumed.
+	 *
+	 * @param input the connection input (should be buffered)
+	 * @return the line without the line break, or null if the stream ended
+	 *         before any bytes were read
+	 * @throws IOException if unable to read or the line is too long
+	 */
+	public static String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+
+		while ((b = input.read()) != '\n') {
+			if (b < 0) {
+				return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+			}
+
+			if (line.size() >= MAX_LINE) {
+				throw new IOException("Line too long.");
+			}
+
+			line.write(b);
+		}
+
+		String text = line.toString(StandardCharsets.ISO_8859_1);
+		return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+	}
+}
@@ -0,0 +1,160 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how a {@link SelectorServer} handles thousands of connected clients.
+ * All of the clients connect first and stay connected, then a few threads take
+ * turns sending lines from every client and wait for each echo to measure the
+ * round trip. Finally every client sends {@value SimpleServer#EOT}.
+ *
+ * @see SelectorServer
+ */
+public class SelectorLoadTest {
+
+	/** The port for the server under test. */
+	public static final int PORT = SimpleServer.PORT + 2;
+
+	/** Number of clients connected at the same time. */
+	public static final int CLIENTS = 4000;
+
+	/** Number of threads sending lines from the clients. */
+	public static final int THREADS = 16;
+
+	/** Number of lines each client sends. */
+	public static final int LINES = 25;
+
+	/**
+	 * A connected client, like {@link SimpleClient} but reading the echoes.
+	 */
+	private static class Client implements AutoCloseable {
+
+		/** The socket. */
+		private final Socket socket;
+
+		/** Writes lines to the server. */
+		private final PrintWriter writer;
+
+		/** Reads echoed lines from the server. */
+		private final BufferedReader reader;
+
+		/**
+		 * Connects to the server.
+		 *
+		 * @throws IOException if unable to connect
+		 */
+		private Client() throws IOException {
+			this.socket = new Socket("127.0.0.1", PORT);
+			this.socket.setTcpNoDelay(true);
+			this.writer = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+			this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Sends a line and waits for the echo.
+		 *
+		 * @param line the line to send
+		 * @return nanoseconds until the echo arrived
+		 * @throws IOException if unable to send or the echo is wrong
+		 */
+		private long roundTrip(String line) throws IOException {
+			long start = System.nanoTime();
+			writer.print(line + "\n");
+			writer.flush();
+
+			if (!line.equals(reader.readLine())) {
+				throw new IOException("Unexpected echo.");
+			}
+
+			return System.nanoTime() - start;
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.print(SimpleServer.EOT + "\n");
+			writer.flush();
+			socket.close();
+		}
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to run the test
+	 */
+	public static void main(String[] args) throws Exception {
+		SelectorServer server = new SelectorServer(PORT, false, true);
+		Thread serverThread = new Thread(server, "selector-server");
+		serverThread.start();
+
+		List<Client> clients = new ArrayList<>();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < CLIENTS; i++) {
+			clients.add(new Client());
+		}
+
+		double connectSeconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Connected %d clients in %.2f s%n", clients.size(), connectSeconds);
+
+		// every client sends one line before any client sends another
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		AtomicInteger next = new AtomicInteger();
+		long[] latencies = new long[CLIENTS * LINES];
+		List<Future<?>> futures = new ArrayList<>();
+
+		start = System.nanoTime();
+
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(threads.submit(() -> {
+				int i;
+
+				while ((i = next.getAndIncrement()) < latencies.length) {
+					latencies[i] = clients.get(i % CLIENTS).roundTrip("Line " + i);
+				}
+
+				return null;
+			}));
+		}
+
+		for (Future<?> future : futures) {
+			future.get();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		threads.shutdown();
+
+		System.out.printf("Open connections on server: %d%n", server.getConnections());
+		System.out.printf("%d lines in %.2f s (%.0f lines/s)%n", latencies.length, seconds, latencies.length / seconds);
+
+		Arrays.sort(latencies);
+		System.out.printf("Round trip: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+				latencies[latencies.length / 2] / 1e6,
+				latencies[latencies.length * 99 / 100] / 1e6,
+				latencies[latencies.length - 1] / 1e6);
+
+		for (Client client : clients) {
+			client.close();
+		}
+
+		// wait for the server to see every client leave
+		for (int i = 0; i < 100 && server.getConnections() > 0; i++) {
+			Thread.sleep(50);
+		}
+
+		System.out.printf("Open connections after %s: %d%n", SimpleServer.EOT, server.getConnections());
+		server.close();
+		serverThread.join();
+	}
+}
@@ -0,0 +1,409 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Serves many {@link SimpleClient} connections at once on a single thread,
+ * unlike {@link SimpleServer} which handles one client at a time. Uses a
+ * {@link Selector} to find out which non-blocking connections are ready, so
+ * the thread never waits on any one client.
+ *
+ * <p>
+ * Uses the same protocol as {@link SimpleServer}: clients send lines of text,
+ * {@value SimpleServer#EOT} closes the connection, and
+ * {@value SimpleServer#EXIT} shuts down the server. Optionally, each other
+ * line is also echoed back to the client so clients can measure round trips.
+ * Only turn that on for clients that read their socket, which
+ * {@link SimpleClient} does not.
+ *
+ * <p>
+ * Since a read may return part of a line or several lines at once, each
+ * connection has its own buffer where bytes wait until a full line arrives.
+ *
+ * @see SimpleServer
+ * @see SimpleClient
+ * @see SelectorLoadTest
+ */
+public class SelectorServer implements Runnable, AutoCloseable {
+
+	/** The starting bytes in each connection buffer. */
+	private static final int BUFFER = 1024;
+
+	/** The maximum bytes in a line before the client is disconnected. */
+	public static final int MAX_LINE = 64 * 1024;
+
+	/** The maximum bytes waiting to be sent before the client is disconnected. */
+	public static final int MAX_PENDING = 1024 * 1024;
+
+	/** The end-of-transmission text as bytes. */
+	private static final byte[] EOT = SimpleServer.EOT.getBytes(StandardCharsets.UTF_8);
+
+	/** The shutdown text as bytes. */
+	private static final byte[] EXIT = SimpleServer.EXIT.getBytes(StandardCharsets.UTF_8);
+
+	/** Finds connections that are ready. */
+	private final Selector selector;
+
+	/** Accepts new connections. */
+	private final ServerSocketChannel server;
+
+	/** Whether to output every line received. */
+	private final boolean verbose;
+
+	/** Whether to echo every line back to the client. */
+	private final boolean echo;
+
+	/** Whether the server should keep running. */
+	private volatile boolean running;
+
+	/** Number of connections currently open. */
+	private volatile int connections;
+
+	/** Number of lines received. */
+	private volatile long lines;
+
+	/**
+	 * Opens the server on a port without echoing lines, like
+	 * {@link SimpleServer}. Call {@link #run()} to start serving clients.
+	 *
+	 * @param port the port to listen on
+	 * @param verbose whether to output every line received
+	 * @throws IOException if unable to open the server
+	 */
+	public SelectorServer(int port, boolean verbose) throws IOException {
+		this(port, verbose, false);
+	}
+
+	/**
+	 * Opens the server on a port. Call {@link #run()} to start serving clients.
+	 *
+	 * @param port the port to listen on
+	 * @param verbose whether to output every line received
+	 * @param echo whether to echo every line back to the client
+	 * @throws IOException if unable to open the server
+	 */
+	public SelectorServer(int port, boolean verbose, boolean echo) throws IOException {
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		this.verbose = verbose;
+		this.echo = echo;
+		this.running = true;
+
+		server.bind(new InetSocketAddress(port), 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Serves clients until shut down, then closes every connection.
+	 */
+	@Override
+	public void run() {
+		System.out.println("Server: Waiting for connections...");
+
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+
+						if (key.isAcceptable()) {
+							accept();
+						}
+						else {
+							if (key.isReadable()) {
+								read(key);
+							}
+
+							if (key.isValid() && key.isWritable()) {
+								write(key);
+							}
+						}
+					}
+					catch (IOException e) {
+						if (key.channel() == server) {
+							System.err.println("Server: " + e);
+						}
+						else {
+							disconnect(key);
+						}
+					}
+				}
+			}
+		}
+		catch (IOException | ClosedSelectorException e) {
+			System.err.println("Server: " + e);
+		}
+		finally {
+			shutdown();
+		}
+
+		System.out.println("Server: Shut down.");
+	}
+
+	/**
+	 * Accepts every connection that is waiting.
+	 *
+	 * @throws IOException if unable to accept a connection
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel;
+
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Client());
+			connections++;
+		}
+	}
+
+	/**
+	 * Reads whatever the client sent and handles every complete line.
+	 *
+	 * @param key the selection key for the client
+	 * @throws IOException if unable to read
+	 */
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		Client client = (Client) key.attachment();
+
+		if (channel.read(client.input) < 0) {
+			disconnect(key);
+			return;
+		}
+
+		ByteBuffer input = client.input;
+		input.flip();
+
+		int start = 0;
+
+		for (int i = client.scanned; i < input.limit(); i++) {
+			if (input.get(i) != '\n') {
+				continue;
+			}
+
+			// ignore the carriage return of a CRLF line ending
+			int end = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+			lines++;
+
+			if (verbose) {
+				System.out.println("Server: " + new String(input.array(), start, end - start, StandardCharsets.UTF_8));
+			}
+
+			if (matches(input, start, end, EOT)) {
+				disconnect(key);
+				return;
+			}
+
+			if (matches(input, start, end, EXIT)) {
+				System.out.println("Server: Shutting down.");
+				running = false;
+				disconnect(key);
+				return;
+			}
+
+			if (echo) {
+				client.send(input.array(), start, i + 1 - start);
+			}
+
+			start = i + 1;
+		}
+
+		// keep any partial line, and remember how far it was already scanned
+		input.position(start);
+		input.compact();
+		client.scanned = input.position();
+
+		if (!input.hasRemaining()) {
+			if (input.capacity() >= MAX_LINE) {
+				throw new IOException("Line too long.");
+			}
+
+			client.input = ByteBuffer.allocate(input.capacity() * 2).put(input.flip());
+		}
+
+		if (client.output.position() > 0) {
+			write(key);
+		}
+	}
+
+	/**
+	 * Sends as much pending output as the client will take, and only asks to
+	 * hear about writes while some output is still pending.
+	 *
+	 * @param key the selection key for the client
+	 * @throws IOException if unable to write, or the client is not reading
+	 */
+	private void write(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		Client client = (Client) key.attachment();
+		ByteBuffer output = client.output;
+
+		output.flip();
+		channel.write(output);
+		output.compact();
+
+		int interest = output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+
+		if (key.interestOps() != interest) {
+			key.interestOps(interest);
+		}
+	}
+
+	/**
+	 * Checks whether part of a buffer has the same bytes as the text.
+	 *
+	 * @param buffer the buffer
+	 * @param start the first index
+	 * @param end the index after the last
+	 * @param text the text bytes
+	 * @return true if the bytes match
+	 */
+	private static boolean matches(ByteBuffer buffer, int start, int end, byte[] text) {
+		return end - start == text.length && Arrays.equals(buffer.array(), start, end, text, 0, text.length);
+	}
+
+	/**
+	 * Closes a client connection.
+	 *
+	 * @param key the selection key for the client
+	 */
+	private void disconnect(SelectionKey key) {
+		if (!key.channel().isOpen()) {
+			return;
+		}
+
+		key.cancel();
+
+		try {
+			key.channel().close();
+		}
+		catch (IOException e) {
+			// nothing else to do
+		}
+
+		connections--;
+
+		if (verbose) {
+			System.out.println("Server: Client disconnected.");
+		}
+	}
+
+	/**
+	 * Returns the number of connections currently open.
+	 *
+	 * @return number of connections
+	 */
+	public int getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Returns the number of lines received.
+	 *
+	 * @return number of lines
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * Asks the server to shut down. Safe to call from any thread; the server
+	 * thread closes the connections.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Closes the server and every client connection.
+	 */
+	private void shutdown() {
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+
+			selector.close();
+			server.close();
+			connections = 0;
+		}
+		catch (IOException e) {
+			System.err.println("Server: " + e);
+		}
+	}
+
+	/**
+	 * The buffers for one client connection.
+	 */
+	private static class Client {
+
+		/** Bytes received but not yet handled. */
+		private ByteBuffer input;
+
+		/** Bytes waiting to be sent. */
+		private ByteBuffer output;
+
+		/** Bytes of the input already checked for a line break. */
+		private int scanned;
+
+		/**
+		 * Initializes the buffers.
+		 */
+		private Client() {
+			this.input = ByteBuffer.allocate(BUFFER);
+			this.output = ByteBuffer.allocate(BUFFER);
+			this.scanned = 0;
+		}
+
+		/**
+		 * Adds bytes to the output, growing it if needed.
+		 *
+		 * @param bytes the bytes to add
+		 * @param offset the first byte
+		 * @param length the number of bytes
+		 * @throws IOException if too much output is already waiting
+		 */
+		private void send(byte[] bytes, int offset, int length) throws IOException {
+			if (output.remaining() < length) {
+				int needed = output.position() + length;
+
+				if (needed > MAX_PENDING) {
+					throw new IOException("Client is not reading.");
+				}
+
+				int capacity = Math.max(output.capacity() * 2, Integer.highestOneBit(needed) << 1);
+				output = ByteBuffer.allocate(capacity).put(output.flip());
+			}
+
+			output.put(bytes, offset, length);
+		}
+	}
+
+	/**
+	 * Starts this server on {@value SimpleServer#PORT}.
+	 *
+	 * @param args unused
+	 * @throws IOException if unable to start the server
+	 */
+	public static void main(String[] args) throws IOException {
+		new SelectorServer(SimpleServer.PORT, true).run();
+	}
+}
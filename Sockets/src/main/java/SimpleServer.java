@@ -9,6 +9,7 @@ import java.net.Socket;
  *
  * @see SimpleServer
  * @see SimpleClient
+ * @see SelectorServer
  */
 public class SimpleServer {
 	/** The port for this server. */
@@ -23,10 +24,16 @@ public class SimpleServer {
 	/**
 	 * Starts this server on {@value #PORT}.
 	 *
-	 * @param args unused
+	 * @param args use "nio" to serve many clients at once with a
+	 *        {@link SelectorServer} instead
 	 * @throws IOException if unable to start or run client
 	 */
 	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("nio")) {
+			SelectorServer.main(args);
+			return;
+		}
+
 		String line = null;
 
 		try (ServerSocket server = new ServerSocket(PORT);) {
@@ -0,0 +1,208 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Demonstrates reading large binary responses with a {@link ResponseStream}
+ * instead of collecting every line into a list. Each download is checked byte
+ * by byte against what {@link HttpStubServer} sent, and the heap used is
+ * output afterwards to show it does not grow with the size of the download.
+ * Try running with a small heap, like {@code -Xmx32m}.
+ *
+ * @see ResponseStream
+ * @see HttpsFetcher#openStream(URL, long)
+ * @see URLFetcher#openStream(URL, long)
+ */
+public class StreamingDownload {
+
+	/** Number of bytes in each download. */
+	public static final int SIZE = 256 * 1024 * 1024;
+
+	/**
+	 * Checks that each byte of a download is the one the stub server sent.
+	 */
+	private static class Checker {
+
+		/** Number of bytes checked so far. */
+		private long position = 0;
+
+		/**
+		 * Checks the bytes in a buffer.
+		 *
+		 * @param buffer the buffer, ready to be read
+		 */
+		private void check(ByteBuffer buffer) {
+			while (buffer.hasRemaining()) {
+				check(buffer.get());
+			}
+		}
+
+		/**
+		 * Checks the bytes in an array.
+		 *
+		 * @param bytes the bytes
+		 * @param length the number of bytes to check
+		 */
+		private void check(byte[] bytes, int length) {
+			for (int i = 0; i < length; i++) {
+				check(bytes[i]);
+			}
+		}
+
+		/**
+		 * Checks one byte.
+		 *
+		 * @param b the byte
+		 */
+		private void check(byte b) {
+			if (b != (byte) position) {
+				throw new IllegalStateException("Wrong byte at " + position);
+			}
+
+			position++;
+		}
+	}
+
+	/**
+	 * Reads a body from the stream.
+	 *
+	 * @param response the response
+	 * @return the number of bytes read
+	 * @throws IOException if unable to read the body
+	 */
+	private static long readStream(ResponseStream response) throws IOException {
+		Checker checker = new Checker();
+		InputStream body = response.getBody();
+		byte[] bytes = new byte[8192];
+		int read;
+
+		while ((read = body.read(bytes)) >= 0) {
+			checker.check(bytes, read);
+		}
+
+		return checker.position;
+	}
+
+	/**
+	 * Reads a body from the channel.
+	 *
+	 * @param response the response
+	 * @return the number of bytes read
+	 * @throws IOException if unable to read the body
+	 */
+	private static long readChannel(ResponseStream response) throws IOException {
+		Checker checker = new Checker();
+		ReadableByteChannel channel = response.getChannel();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			checker.check(buffer);
+			buffer.clear();
+		}
+
+		return checker.position;
+	}
+
+	/**
+	 * Reads a body with a callback.
+	 *
+	 * @param response the response
+	 * @return the number of bytes read
+	 * @throws IOException if unable to read the body
+	 */
+	private static long readBuffers(ResponseStream response) throws IOException {
+		Checker checker = new Checker();
+		response.forEachBuffer(checker::check);
+		return checker.position;
+	}
+
+	/**
+	 * Outputs the time taken and heap used for a download.
+	 *
+	 * @param name the name to output
+	 * @param start the start time in nanoseconds
+	 * @param bytes the number of bytes downloaded
+	 */
+	private static void report(String name, long start, long bytes) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+
+		System.out.printf("%-32s %5d MB %8.1f MB/s, %4d MB heap used%n", name, bytes >> 20,
+				bytes / seconds / 1e6, (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+	}
+
+	/**
+	 * Downloads large bodies with each way of reading, then shows the byte
+	 * limit and reading text.
+	 *
+	 * @param args unused
+	 * @throws Exception if unable to download
+	 */
+	public static void main(String[] args) throws Exception {
+		try (HttpStubServer server = new HttpStubServer(HttpStubServer.PORT)) {
+			URL fixed = new URL(server.getBase() + "/bytes/" + SIZE);
+			URL chunked = new URL(server.getBase() + "/chunked/" + SIZE);
+			URL closed = new URL(server.getBase() + "/close/" + SIZE);
+
+			long start = System.nanoTime();
+
+			try (ResponseStream response = HttpsFetcher.openStream(fixed, SIZE)) {
+				report("HttpsFetcher, stream", start, readStream(response));
+			}
+
+			start = System.nanoTime();
+
+			try (ResponseStream response = HttpsFetcher.openStream(chunked, SIZE)) {
+				report("HttpsFetcher, chunked channel", start, readChannel(response));
+			}
+
+			start = System.nanoTime();
+
+			try (ResponseStream response = HttpsFetcher.openStream(closed, SIZE)) {
+				report("HttpsFetcher, closed callback", start, readBuffers(response));
+			}
+
+			start = System.nanoTime();
+
+			try (ResponseStream response = URLFetcher.openStream(fixed, SIZE)) {
+				report("URLFetcher, stream", start, readStream(response));
+			}
+
+			start = System.nanoTime();
+
+			try (ResponseStream response = URLFetcher.openStream(chunked, SIZE)) {
+				report("URLFetcher, chunked callback", start, readBuffers(response));
+			}
+
+			// the limit is checked before reading if the length is known
+			try (ResponseStream response = HttpsFetcher.openStream(fixed, SIZE / 2)) {
+				System.out.println("Limit: Unexpected " + response);
+			}
+			catch (IOException e) {
+				System.out.println("Limit: " + e.getMessage());
+			}
+
+			// otherwise the limit is checked while reading
+			try (ResponseStream response = HttpsFetcher.openStream(chunked, SIZE / 2)) {
+				readStream(response);
+				System.out.println("Limit: Unexpected " + response);
+			}
+			catch (IOException e) {
+				System.out.println("Limit: " + e.getMessage());
+			}
+
+			// only text is decoded
+			try (
+					ResponseStream response = HttpsFetcher.openStream(new URL(server.getBase() + "/hello"), 1024);
+					BufferedReader reader = response.getReader();
+			) {
+				System.out.println("Text (" + response.getCharset() + "): " + reader.readLine());
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -7,8 +9,11 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -20,6 +25,9 @@ public class URLFetcher {
 
 	// https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers
 
+	/** The default maximum number of redirects to follow. */
+	public static final int MAX_REDIRECTS = 5;
+
 	/**
 	 * Fetches the headers and content for the specified URL. The content is
 	 * placed as a list of all the lines fetched under the "Content" key.
@@ -38,7 +46,10 @@ public class URLFetcher {
 		// by default HttpURLConnection will follow redirects (within same protocol)
 		// automatically
 		// this is the connection usually underlying URLConnection
-		HttpURLConnection.setFollowRedirects(false);
+		// only turn this off for this connection, not every connection
+		if (urlConnection instanceof HttpURLConnection) {
+			((HttpURLConnection) urlConnection).setInstanceFollowRedirects(false);
+		}
 
 		// close connection instead of keep-alive
 		urlConnection.setRequestProperty("Connection", "close");
@@ -76,6 +87,157 @@ public class URLFetcher {
 		return fetchURL(new URL(url));
 	}
 
+	/**
+	 * Fetches the headers for the specified URL, leaving the body to be read
+	 * from the returned response. Unlike {@link #fetchURL(URL)}, the body is not
+	 * read into memory or decoded into lines, so large or binary content can be
+	 * handled in a constant amount of memory. Redirects are not followed.
+	 *
+	 * @param url the url to fetch
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @return the response, which must be closed to close the connection
+	 * @throws IOException if unable to fetch the headers
+	 *
+	 * @see ResponseStream
+	 */
+	public static ResponseStream openStream(URL url, long maxBytes) throws IOException {
+		return openStream(url, maxBytes, 0, Collections.emptyMap());
+	}
+
+	/**
+	 * Fetches the headers for the specified URL, following redirects, and leaves
+	 * the body to be read from the returned response. Unlike the redirects
+	 * followed by {@link HttpURLConnection}, redirects from HTTP to HTTPS are
+	 * also followed.
+	 *
+	 * <p>
+	 * Conditional headers like If-None-Match describe a cached copy of the
+	 * original url, so they are not sent after a redirect. None of the extra
+	 * headers are sent once a redirect leads to another host or from HTTPS to
+	 * HTTP, so credentials and cookies only go where they were meant to.
+	 *
+	 * @param url the url to fetch
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @param maxRedirects the maximum number of redirects to follow, or 0 to
+	 *        return redirects instead of following them
+	 * @param properties extra request headers to send
+	 * @return the response, which must be closed to close the connection
+	 * @throws IOException if unable to fetch the headers, there are too many
+	 *         redirects, or the redirects loop
+	 *
+	 * @see #openStream(URL, long)
+	 */
+	public static ResponseStream openStream(URL url, long maxBytes, int maxRedirects, Map<String, String> properties)
+			throws IOException {
+		Set<String> visited = new HashSet<>();
+		visited.add(url.toString());
+
+		for (int redirects = 0; ; redirects++) {
+			ResponseStream response = open(url, maxBytes, properties);
+			String location = response.getHeader("Location");
+			int status = response.getStatus();
+
+			if (maxRedirects <= 0 || location == null || status / 100 != 3 || status == 304) {
+				return response;
+			}
+
+			response.close();
+
+			if (redirects >= maxRedirects) {
+				throw new IOException("More than " + maxRedirects + " redirects at: " + url);
+			}
+
+			URL next = new URL(url, location);
+			boolean downgrade = url.getProtocol().equalsIgnoreCase("https") && next.getProtocol().equalsIgnoreCase("http");
+
+			if (downgrade || !next.getHost().equalsIgnoreCase(url.getHost())) {
+				properties = Collections.emptyMap();
+			}
+			else {
+				properties = unconditional(properties);
+			}
+
+			url = next;
+
+			if (!visited.add(url.toString())) {
+				throw new IOException("Redirect loop at: " + url);
+			}
+		}
+	}
+
+	/**
+	 * Returns the request headers without any conditional headers, which all
+	 * start with "If-".
+	 *
+	 * @param properties the request headers
+	 * @return the request headers that are not conditional
+	 */
+	private static Map<String, String> unconditional(Map<String, String> properties) {
+		Map<String, String> kept = new HashMap<>();
+
+		properties.forEach((key, value) -> {
+			if (!key.toLowerCase().startsWith("if-")) {
+				kept.put(key, value);
+			}
+		});
+
+		return kept;
+	}
+
+	/**
+	 * Opens a single connection without following redirects.
+	 *
+	 * @param url the url to fetch
+	 * @param maxBytes the maximum number of body bytes to read
+	 * @param properties extra request headers to send
+	 * @return the response, which must be closed to close the connection
+	 * @throws IOException if unable to fetch the headers
+	 */
+	private static ResponseStream open(URL url, long maxBytes, Map<String, String> properties) throws IOException {
+		URLConnection urlConnection = url.openConnection();
+		urlConnection.setRequestProperty("Connection", "close");
+		properties.forEach(urlConnection::setRequestProperty);
+
+		if (!(urlConnection instanceof HttpURLConnection)) {
+			throw new IOException("Not an HTTP url: " + url);
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) urlConnection;
+		connection.setInstanceFollowRedirects(false);
+
+		// the status line is placed with a "null" key
+		Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		String statusLine = null;
+
+		for (var entry : connection.getHeaderFields().entrySet()) {
+			if (entry.getKey() == null) {
+				statusLine = entry.getValue().get(0);
+			}
+			else {
+				headers.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		int status = connection.getResponseCode();
+		Closeable close = connection::disconnect;
+
+		try {
+			// error responses have their body in a different stream
+			InputStream input = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			input = input == null ? InputStream.nullInputStream() : input;
+
+			long length = connection.getContentLengthLong();
+			InputStream body = length < 0 ? BodyInputStream.untilClosed(input, maxBytes)
+					: BodyInputStream.fixed(input, length, maxBytes);
+
+			return new ResponseStream(statusLine, status, headers, body, close);
+		}
+		catch (IOException e) {
+			close.close();
+			throw e;
+		}
+	}
+
 	/**
 	 * Demonstrates the {@link #fetchURL(URL)} method.
 	 *
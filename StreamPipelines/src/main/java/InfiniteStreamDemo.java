@@ -1,3 +1,4 @@
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 
 /**
@@ -5,9 +6,23 @@ import java.util.stream.IntStream;
  */
 public class InfiniteStreamDemo {
 
+	/** The reverse of every 4-digit block, including leading zeros. */
+	private static final int[] REVERSED = new int[10000];
+
+	/** Powers of 10 for blocks of up to 4 digits. */
+	private static final int[] POWERS = { 1, 10, 100, 1000, 10000 };
+
+	static {
+		// for example, 12 is 0012 which becomes 2100
+		for (int i = 0; i < REVERSED.length; i++) {
+			REVERSED[i] = (i % 10) * 1000 + (i / 10 % 10) * 100 + (i / 100 % 10) * 10 + i / 1000;
+		}
+	}
+
 	/**
 	 * Reverses the digits provided. For example, 12345 becomes 54321. Works for
-	 * both positive and negative numbers.
+	 * both positive and negative numbers. If the reversed digits are too large
+	 * for a long, the result overflows.
 	 *
 	 * @param digits the digits to reverse
 	 * @return the reversed digits
@@ -22,32 +37,45 @@ public class InfiniteStreamDemo {
 			digits = Math.abs(digits);
 		}
 
-		// keep going while there are digits left
-		while (digits > 0) {
-			// get the last digit
-			long digit = digits % 10;
-			// shift digits already added to left and add new digit
-			reversed = reversed * 10 + digit;
-			// remove last digit
-			digits /= 10;
+		// Long.MIN_VALUE stays negative and has no digits to reverse
+		if (digits < 0) {
+			return 0;
+		}
+
+		// reverse 4 digits at a time using the table instead of 1 at a time
+		while (digits >= 10000) {
+			reversed = reversed * 10000 + REVERSED[(int) (digits % 10000)];
+			digits /= 10000;
 		}
 
+		// the last block may have fewer than 4 digits
+		int last = (int) digits;
+		int length = last >= 1000 ? 4 : last >= 100 ? 3 : last >= 10 ? 2 : 1;
+		reversed = reversed * POWERS[length] + REVERSED[last] / POWERS[4 - length];
+
 		// make number negative if necessary
 		return sign * reversed;
 	}
 
+	/**
+	 * Returns whether the digits are the same forward and backward. Negative
+	 * numbers are never palindromes.
+	 *
+	 * @param digits the digits to test
+	 * @return true if the digits are a palindrome
+	 */
+	public static boolean isPalindrome(long digits) {
+		// an overflowed reverse can never equal the original digits
+		return digits >= 0 && digits == reverse(digits);
+	}
+
 	/**
 	 * Outputs palindromic squares until the results get too large and cause an
 	 * overflow.
 	 *
-	 * @param args unused
 	 * @throws ArithmeticException if an integer overflow occurs
-	 *
-	 * @see <a href="https://en.wikipedia.org/wiki/Palindromic_number">Palindromic
-	 *      Number</a>
-	 * @see <a href="https://oeis.org/A002779">Palindromic squares</a>
 	 */
-	public static void main(String[] args) throws ArithmeticException {
+	public static void overflow() throws ArithmeticException {
 		// use iterate() to generate an unbounded number of long values
 		IntStream.iterate(1, i -> i + 1)
 				// limit it at the start to test
@@ -67,4 +95,42 @@ public class InfiniteStreamDemo {
 		// exceptions (especially checked) and streams do not get along well
 	}
 
+	/**
+	 * Outputs palindromic squares until an overflow, and then searches for the
+	 * palindromic squares up to 10^18 in parallel.
+	 *
+	 * @param args optionally the most palindromic squares to search for
+	 *
+	 * @see <a href="https://en.wikipedia.org/wiki/Palindromic_number">Palindromic
+	 *      Number</a>
+	 * @see <a href="https://oeis.org/A002779">Palindromic squares</a>
+	 */
+	public static void main(String[] args) {
+		try {
+			overflow();
+		}
+		catch (ArithmeticException e) {
+			System.out.println("Overflow: " + e.getMessage());
+		}
+
+		long limit = args.length > 0 ? Long.parseLong(args[0]) : Long.MAX_VALUE;
+		long start = System.nanoTime();
+
+		// search the roots instead, since there are a billion up to 10^18
+		AtomicLong found = new AtomicLong();
+
+		NumberSearch.search(1, 1_000_000_001, i -> isPalindrome(i * i))
+				// end the search early once enough are found
+				.limit(limit)
+				.map(i -> i * i)
+				.forEach(square -> {
+					// counted here, since count() may skip a peek() that prints
+					System.out.println(square);
+					found.incrementAndGet();
+				});
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Found %d palindromic squares up to 10^18 in %.1f seconds on %d processors.%n", found.get(),
+				seconds, Runtime.getRuntime().availableProcessors());
+	}
 }
@@ -0,0 +1,181 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * A single predicate that tests whether a number is a multiple of any of
+ * several values. Combining one predicate per value with
+ * {@link IntPredicate#or(IntPredicate)} means every number goes through a chain
+ * of lambda calls and a modulo for each value. Instead, this works out ahead of
+ * time which numbers match.
+ *
+ * <p>
+ * Whether a number is a multiple repeats every least common multiple (LCM) of
+ * the values. For 3 and 5, the pattern repeats every 15 numbers. When the LCM
+ * is small, this keeps a table (or wheel) of which numbers in one period
+ * match, so testing a number takes one modulo and one lookup. The table also
+ * lists the matching offsets, so {@link #stream(int)} can produce only the
+ * matching numbers without testing the others at all. When the LCM is too
+ * large, this falls back to checking each value in a plain loop.
+ *
+ * @see Problem1Revisited#sumMultiples(int, int[])
+ */
+public class MultiplesFilter implements IntPredicate {
+
+	/** The largest least common multiple to build a table for. */
+	public static final int MAX_WHEEL = 1 << 20;
+
+	/** The values to test, smallest first, none a multiple of another. */
+	private final long[] divisors;
+
+	/** The period of the table, or 0 if there is no table. */
+	private final int period;
+
+	/** Whether each number in one period is a multiple. */
+	private final boolean[] wheel;
+
+	/** The numbers in one period that are multiples, in increasing order. */
+	private final int[] offsets;
+
+	/**
+	 * Initializes the filter. Use {@link #of(int...)} instead.
+	 *
+	 * @param divisors the values, smallest first, none a multiple of another
+	 * @param period the least common multiple, or 0 if too large for a table
+	 */
+	private MultiplesFilter(long[] divisors, int period) {
+		this.divisors = divisors;
+		this.period = period;
+
+		if (period > 0) {
+			wheel = new boolean[period];
+
+			// with a table, every divisor is at most the period
+			for (long divisor : divisors) {
+				for (int i = 0; i < period; i += (int) divisor) {
+					wheel[i] = true;
+				}
+			}
+
+			offsets = IntStream.range(0, period).filter(i -> wheel[i]).toArray();
+		}
+		else {
+			wheel = null;
+			offsets = null;
+		}
+	}
+
+	/**
+	 * Creates a filter for the multiples of any of the values. Zero values are
+	 * ignored, since only zero is a multiple of zero, and negative values are
+	 * treated like positive ones, including {@link Integer#MIN_VALUE}.
+	 *
+	 * @param multiples the values
+	 * @return the filter
+	 */
+	public static MultiplesFilter of(int... multiples) {
+		// widened first, since the absolute value of Integer.MIN_VALUE is too big
+		long[] sorted = Arrays.stream(multiples)
+				.filter(multiple -> multiple != 0)
+				.asLongStream()
+				.map(Math::abs)
+				.sorted()
+				.distinct()
+				.toArray();
+
+		// drop values that are multiples of smaller values
+		long[] divisors = Arrays.stream(sorted)
+				.filter(value -> Arrays.stream(sorted).noneMatch(d -> d < value && value % d == 0))
+				.toArray();
+
+		long period = 1;
+
+		for (long divisor : divisors) {
+			period = period / gcd(period, divisor) * divisor;
+
+			if (period > MAX_WHEEL) {
+				period = 0;
+				break;
+			}
+		}
+
+		return new MultiplesFilter(divisors, (int) period);
+	}
+
+	/**
+	 * Returns the greatest common divisor of two positive values.
+	 *
+	 * @param a the first value
+	 * @param b the second value
+	 * @return the greatest common divisor
+	 */
+	private static long gcd(long a, long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	/**
+	 * Returns whether the value is a multiple of any of the values.
+	 *
+	 * @param value the value to test
+	 * @return true if a multiple of any of the values
+	 */
+	@Override
+	public boolean test(int value) {
+		if (period > 0) {
+			return wheel[Math.floorMod(value, period)];
+		}
+
+		for (long divisor : divisors) {
+			if (value % divisor == 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the period of the table, or 0 if the least common multiple was
+	 * too large for one.
+	 *
+	 * @return the period, or 0 if there is no table
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Returns the multiples of any of the values from 0 up to but not including
+	 * the maximum, in increasing order. With a table, the stream produces the
+	 * k-th multiple directly from the offsets instead of testing every number,
+	 * so the stream has a known size and splits evenly into equal numbers of
+	 * multiples when made {@link IntStream#parallel()}. Without a table, every
+	 * number is tested and the range is split evenly instead.
+	 *
+	 * @param max the maximum value
+	 * @return the multiples less than the maximum
+	 */
+	public IntStream stream(int max) {
+		if (max <= 0) {
+			return IntStream.empty();
+		}
+
+		if (period <= 0) {
+			return IntStream.range(0, max).filter(this);
+		}
+
+		// number of multiples in the full periods and then the partial one
+		int count = offsets.length;
+		int partial = Arrays.binarySearch(offsets, max % period);
+		long total = (long) (max / period) * count + (partial < 0 ? -partial - 1 : partial);
+
+		return IntStream.range(0, (int) total)
+				.map(k -> k / count * period + offsets[k % count]);
+	}
+
+	@Override
+	public String toString() {
+		return "Multiples of " + Arrays.toString(divisors)
+				+ (period > 0 ? ", " + offsets.length + " of every " + period : "");
+	}
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Compares summing multiples with a predicate combined by
+ * {@link IntPredicate#or(IntPredicate)} to summing them with a
+ * {@link MultiplesFilter}, both with one thread and in parallel. The first two
+ * sets of multiples have a small least common multiple so the filter uses a
+ * table, and the last one does not.
+ *
+ * <p>
+ * Like {@link ParallelStreamBenchmark}, this is only a simple benchmark.
+ * Consider using a microbenchmark library like JMH instead.
+ */
+public class MultiplesFilterBenchmark {
+
+	/** The maximum value to sum multiples below. */
+	private static final int MAX = 100_000_000;
+
+	/** Number of warmup rounds. */
+	private static final int WARMUPS = 5;
+
+	/** Number of timed rounds. */
+	private static final int REPEATS = 10;
+
+	/**
+	 * Returns the average milliseconds to sum the multiples, checking each sum.
+	 *
+	 * @param sum the approach to time
+	 * @param expected the expected sum
+	 * @return the average milliseconds
+	 */
+	private static double time(IntSupplier sum, int expected) {
+		for (int i = 0; i < WARMUPS; i++) {
+			if (sum.getAsInt() != expected) {
+				throw new IllegalStateException("Wrong sum.");
+			}
+		}
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < REPEATS; i++) {
+			if (sum.getAsInt() != expected) {
+				throw new IllegalStateException("Wrong sum.");
+			}
+		}
+
+		return (System.nanoTime() - start) / 1e6 / REPEATS;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		int[][] sets = { { 3, 5 }, { 3, 5, 7, 11, 13 }, { 7, 11, 13, 17, 19, 23, 29 } };
+
+		System.out.printf("%d processors; average milliseconds to sum multiples below %,d%n%n",
+				Runtime.getRuntime().availableProcessors(), MAX);
+		System.out.printf("%-28s %9s %9s %9s %9s %9s%n", "Multiples", "Reduce", "Parallel", "Filter", "Stream",
+				"Parallel");
+
+		for (int[] multiples : sets) {
+			IntPredicate predicate = Arrays.stream(multiples)
+					.mapToObj(multiple -> {
+						IntPredicate p = i -> i % multiple == 0;
+						return p;
+					})
+					.reduce(i -> false, IntPredicate::or);
+
+			MultiplesFilter filter = MultiplesFilter.of(multiples);
+
+			// the int sums overflow, but every approach overflows the same way
+			int expected = Problem1Revisited.sumMultiplesReduce(MAX, multiples);
+
+			System.out.printf("%-28s %9.1f %9.1f %9.1f %9.1f %9.1f%n", Arrays.toString(multiples),
+					time(() -> IntStream.range(0, MAX).filter(predicate).sum(), expected),
+					time(() -> IntStream.range(0, MAX).parallel().filter(predicate).sum(), expected),
+					time(() -> IntStream.range(0, MAX).filter(filter).sum(), expected),
+					time(() -> Problem1Revisited.sumMultiples(MAX, multiples), expected),
+					time(() -> Problem1Revisited.sumMultiplesParallel(MAX, multiples), expected));
+		}
+	}
+}
@@ -0,0 +1,135 @@
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Searches a large or unbounded range of {@code long} values for the ones that
+ * match a predicate. The matches come back lazily and in order as a
+ * {@link LongStream}, so the search can end early with operations like
+ * {@link LongStream#limit(long)} or {@link LongStream#takeWhile(LongPredicate)}.
+ *
+ * <p>
+ * An {@link LongStream#iterate(long, java.util.function.LongUnaryOperator)}
+ * stream cannot be split, so making it parallel does not help, and limiting a
+ * parallel ordered stream is expensive. Instead, this searches one chunk of the
+ * range at a time, testing each chunk with a parallel
+ * {@link LongStream#range(long, long)} that splits evenly across every
+ * processor. Chunks start small so the first matches come back quickly, and
+ * double in size up to a limit so later ones keep every processor busy.
+ *
+ * @see InfiniteStreamDemo
+ */
+public class NumberSearch {
+
+	/** The numbers in the first chunk. */
+	public static final long MIN_CHUNK = 1 << 12;
+
+	/** The most numbers in a chunk. */
+	public static final long MAX_CHUNK = 1 << 22;
+
+	/** Prevents instantiating this class. */
+	private NumberSearch() {
+	}
+
+	/**
+	 * Returns the numbers from start up to but not including end that match the
+	 * predicate, in increasing order. Nothing is searched until the stream is
+	 * used, and only as many chunks are searched as needed.
+	 *
+	 * @param start the first number to test
+	 * @param end the number after the last to test
+	 * @param predicate the test, which may be called from several threads
+	 * @return the numbers that match, in increasing order
+	 */
+	public static LongStream search(long start, long end, LongPredicate predicate) {
+		return StreamSupport.longStream(new Chunks(start, end, predicate), false);
+	}
+
+	/**
+	 * Returns the numbers from start on that match the predicate, in increasing
+	 * order, stopping before {@link Long#MAX_VALUE}. The stream should be
+	 * limited, or it may run for a very long time.
+	 *
+	 * @param start the first number to test
+	 * @param predicate the test, which may be called from several threads
+	 * @return the numbers that match, in increasing order
+	 *
+	 * @see #search(long, long, LongPredicate)
+	 */
+	public static LongStream search(long start, LongPredicate predicate) {
+		return search(start, Long.MAX_VALUE, predicate);
+	}
+
+	/**
+	 * Produces the matches by searching one chunk at a time in parallel.
+	 */
+	private static class Chunks extends Spliterators.AbstractLongSpliterator {
+
+		/** The test to use. */
+		private final LongPredicate predicate;
+
+		/** The number after the last to test. */
+		private final long end;
+
+		/** The first number of the next chunk. */
+		private long next;
+
+		/** The numbers in the next chunk. */
+		private long chunk;
+
+		/** The matches found in the last chunk. */
+		private long[] matches;
+
+		/** The index of the next match to produce. */
+		private int index;
+
+		/**
+		 * Initializes the search.
+		 *
+		 * @param start the first number to test
+		 * @param end the number after the last to test
+		 * @param predicate the test to use
+		 */
+		private Chunks(long start, long end, LongPredicate predicate) {
+			// the number of matches is unknown
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+					| Spliterator.NONNULL | Spliterator.IMMUTABLE);
+
+			this.predicate = predicate;
+			this.end = end;
+			this.next = start;
+			this.chunk = MIN_CHUNK;
+			this.matches = new long[0];
+			this.index = 0;
+		}
+
+		@Override
+		public boolean tryAdvance(LongConsumer action) {
+			while (index >= matches.length) {
+				if (next >= end) {
+					return false;
+				}
+
+				long stop = next + Math.min(chunk, end - next);
+				matches = LongStream.range(next, stop).parallel().filter(predicate).toArray();
+				index = 0;
+
+				next = stop;
+				chunk = Math.min(chunk * 2, MAX_CHUNK);
+			}
+
+			action.accept(matches[index++]);
+			return true;
+		}
+
+		@Override
+		public Comparator<? super Long> getComparator() {
+			// sorted in natural order
+			return null;
+		}
+	}
+}
@@ -42,7 +42,11 @@ public class Problem1Revisited {
 
 		// using generic method
 		int[] multiples = { 3, 5 };
+		System.out.println(sumMultiplesReduce(max, multiples));
+
+		// using a compiled filter, one thread and then in parallel
 		System.out.println(sumMultiples(max, multiples));
+		System.out.println(sumMultiplesParallel(max, multiples));
 	}
 
 	/*
@@ -56,8 +60,10 @@ public class Problem1Revisited {
 	 * @param max the maximum value
 	 * @param multiples the multiples
 	 * @return the sum
+	 *
+	 * @see #sumMultiples(int, int[])
 	 */
-	public static int sumMultiples(int max, int[] multiples) {
+	public static int sumMultiplesReduce(int max, int[] multiples) {
 
 		// create one predicate for multiples using streams
 		IntPredicate predicate = Arrays.stream(multiples)
@@ -73,4 +79,37 @@ public class Problem1Revisited {
 		return IntStream.range(0, max).filter(predicate).sum();
 	}
 
+	/*
+	 * The predicate above makes a chain of lambda calls and a modulo for each
+	 * multiple for every number tested. A MultiplesFilter works out which
+	 * numbers match ahead of time, and can skip the ones that do not.
+	 */
+
+	/**
+	 * Returns the sum of multiples less than the max value.
+	 *
+	 * @param max the maximum value
+	 * @param multiples the multiples
+	 * @return the sum
+	 *
+	 * @see MultiplesFilter
+	 */
+	public static int sumMultiples(int max, int[] multiples) {
+		return MultiplesFilter.of(multiples).stream(max).sum();
+	}
+
+	/**
+	 * Returns the sum of multiples less than the max value using a parallel
+	 * stream.
+	 *
+	 * @param max the maximum value
+	 * @param multiples the multiples
+	 * @return the sum
+	 *
+	 * @see MultiplesFilter
+	 */
+	public static int sumMultiplesParallel(int max, int[] multiples) {
+		return MultiplesFilter.of(multiples).stream(max).parallel().sum();
+	}
+
 }